@@ -0,0 +1,93 @@
+package se.walkercrou.composer.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import se.walkercrou.composer.Instrument;
+import se.walkercrou.composer.Layer;
+import se.walkercrou.composer.Measure;
+import se.walkercrou.composer.Note;
+import se.walkercrou.composer.Pitch;
+import se.walkercrou.composer.Score;
+import se.walkercrou.composer.TimeSignature;
+import se.walkercrou.composer.engine.Playback;
+import se.walkercrou.composer.engine.Sequencer;
+import se.walkercrou.composer.engine.SimulatedClock;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a single server tick of steady state playback. Run with the gc profiler to check that a tick does not
+ * allocate.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class PlaybackBenchmark {
+    @Param({ "1", "100", "1000" })
+    public int listeners;
+
+    private SimulatedClock clock;
+    private Sequencer sequencer;
+    private CountingSoundSink sink;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(0);
+        clock = new SimulatedClock();
+        sequencer = new Sequencer(clock);
+        sink = new CountingSoundSink();
+        for (int i = 0; i < listeners; i++) {
+            Score score = createScore(random);
+            loop(score, random.nextInt((int) score.getDuration()));
+        }
+    }
+
+    @Benchmark
+    public long tick() {
+        clock.advance(50);
+        return sink.getNotes();
+    }
+
+    // loop forever so that a song never runs out during a measurement
+    private void loop(Score score, long from) {
+        Playback playback = score.newPlayback(sequencer, sink).onFinish(() -> loop(score, 0));
+        playback.seek(from);
+        playback.play();
+    }
+
+    private static Score createScore(Random random) {
+        Score.Builder builder = new Score.Builder()
+                .title("Benchmark")
+                .artist("Composer")
+                .tempo(120)
+                .time(TimeSignature.COMMON);
+        Instrument[] instruments = Instrument.values();
+        for (int l = 0; l < 4; l++) {
+            Layer.Builder layer = builder.newLayer();
+            for (int m = 0; m < 500; m++) {
+                Note[] notes = new Note[16];
+                for (int n = 0; n < notes.length; n++) {
+                    notes[n] = random.nextInt(3) == 0 ? Note.rest(Note.SIXTEENTH)
+                            : new Note(instruments[random.nextInt(instruments.length)],
+                            Pitch.TWO_OCTAVES[random.nextInt(Pitch.TWO_OCTAVES.length)], Note.SIXTEENTH);
+                }
+                layer.measure(new Measure(notes));
+            }
+            layer.saveLayer();
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,47 @@
+package se.walkercrou.composer.bench;
+
+import se.walkercrou.composer.Instrument;
+import se.walkercrou.composer.engine.SoundSink;
+
+/**
+ * A {@link SoundSink} that stands in for a listening player and only counts the notes it receives.
+ */
+public class CountingSoundSink implements SoundSink {
+    private final Object region;
+    private long notes = 0;
+
+    /**
+     * Creates a new sink that does not belong to any region.
+     */
+    public CountingSoundSink() {
+        this(null);
+    }
+
+    /**
+     * Creates a new sink in the specified region.
+     *
+     * @param region the sink is heard in, like a simulated world
+     */
+    public CountingSoundSink(Object region) {
+        this.region = region;
+    }
+
+    @Override
+    public void playNote(Instrument instrument, double volume, double pitch) {
+        notes++;
+    }
+
+    @Override
+    public Object getRegion() {
+        return region;
+    }
+
+    /**
+     * Returns the amount of notes played to this sink.
+     *
+     * @return amount of notes
+     */
+    public long getNotes() {
+        return notes;
+    }
+}
@@ -0,0 +1,246 @@
+package se.walkercrou.composer.bench;
+
+import se.walkercrou.composer.Timeline;
+import se.walkercrou.composer.engine.Sequencer;
+import se.walkercrou.composer.engine.SimulatedClock;
+import se.walkercrou.composer.nbs.NoteArena;
+import se.walkercrou.composer.nbs.TrackLibrary;
+import se.walkercrou.composer.nbs.TrackLoader;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Plays a folder of tracks to thousands of simulated listeners at simulated time and reports how the engine holds up.
+ * Usage:
+ *
+ * <pre>
+ * LoadTest &lt;tracks dir&gt; [-listeners n] [-seconds n] [-tick millis] [-shuffled fraction] [-seed n]
+ *          [-worlds n] [-shards n] [-arena off|direct|mapped]
+ * </pre>
+ *
+ * Listeners are spread evenly over the simulated worlds, which the sequencer advances in parallel when it has more
+ * than one shard. With an arena the notes of the tracks are packed into it rather than kept on the heap.
+ */
+public final class LoadTest {
+    private final List<SimulatedListener> listeners = new ArrayList<>();
+    private final SimulatedClock clock = new SimulatedClock();
+    private Sequencer sequencer;
+    private ExecutorService shardThreads;
+    private int listenerCount = 1000;
+    private long simulatedSeconds = 300;
+    private long tickMillis = 50;
+    private double shuffled = 0.5;
+    private long seed = System.nanoTime();
+    private int worlds = 1;
+    private int shards = 1;
+    private String arenaMode = "off";
+    private NoteArena arena;
+    private File tracksDir;
+
+    private LoadTest() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        LoadTest test = new LoadTest();
+        try {
+            test.parseArgs(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("usage: LoadTest <tracks dir> [-listeners n] [-seconds n] [-tick millis] "
+                    + "[-shuffled fraction] [-seed n] [-worlds n] [-shards n] [-arena off|direct|mapped]");
+            System.exit(1);
+        }
+        test.run();
+    }
+
+    private void parseArgs(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (!arg.startsWith("-")) {
+                tracksDir = new File(arg);
+                continue;
+            }
+            if (i + 1 == args.length)
+                throw new IllegalArgumentException("missing value for " + arg);
+            String value = args[++i];
+            switch (arg) {
+                case "-listeners":
+                    listenerCount = Integer.parseInt(value);
+                    break;
+                case "-seconds":
+                    simulatedSeconds = Long.parseLong(value);
+                    break;
+                case "-tick":
+                    tickMillis = Long.parseLong(value);
+                    break;
+                case "-shuffled":
+                    shuffled = Double.parseDouble(value);
+                    break;
+                case "-seed":
+                    seed = Long.parseLong(value);
+                    break;
+                case "-worlds":
+                    worlds = Integer.parseInt(value);
+                    break;
+                case "-shards":
+                    shards = Integer.parseInt(value);
+                    break;
+                case "-arena":
+                    arenaMode = value;
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown option " + arg);
+            }
+        }
+        if (tracksDir == null || !tracksDir.isDirectory())
+            throw new IllegalArgumentException("tracks dir is not a directory: " + tracksDir);
+        if (worlds < 1 || shards < 1)
+            throw new IllegalArgumentException("worlds and shards must be at least 1");
+        if (!Arrays.asList("off", "direct", "mapped").contains(arenaMode))
+            throw new IllegalArgumentException("unknown arena " + arenaMode);
+    }
+
+    private void run() throws IOException {
+        TrackLibrary library = loadTracks();
+        if (library.size() == 0) {
+            System.err.println("no tracks could be read from " + tracksDir);
+            return;
+        }
+
+        if (shards > 1) {
+            shardThreads = Executors.newFixedThreadPool(shards - 1, runnable -> {
+                Thread thread = new Thread(runnable, "LoadTest shard");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        sequencer = new Sequencer(clock, Sequencer.DEFAULT_RESOLUTION_MILLIS, shards, shardThreads);
+
+        long heapBefore = usedHeap();
+        Random random = new Random(seed);
+        SimulatedListener.Behaviour behaviour = new SimulatedListener.Behaviour(tickMillis, 90_000, 180_000, 20_000,
+                900_000);
+        for (int i = 0; i < listenerCount; i++) {
+            SimulatedListener listener = new SimulatedListener(library, sequencer, new Random(random.nextLong()),
+                    "world-" + i % worlds);
+            listener.start(random.nextDouble() < shuffled);
+            listeners.add(listener);
+        }
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        long allocatedBefore = allocatedBytes(threads);
+        long gcCountBefore = gcCount(), gcTimeBefore = gcTime();
+        int tickCount = (int) (simulatedSeconds * 1000 / tickMillis);
+        long[] tickNanos = new long[tickCount];
+        long start = System.nanoTime();
+        for (int t = 0; t < tickCount; t++) {
+            long tickStart = System.nanoTime();
+            for (SimulatedListener listener : listeners)
+                listener.act(behaviour);
+            clock.advance(tickMillis);
+            tickNanos[t] = System.nanoTime() - tickStart;
+        }
+        long wallNanos = System.nanoTime() - start;
+        long allocated = allocatedBytes(threads) - allocatedBefore;
+        long gcCount = gcCount() - gcCountBefore, gcTime = gcTime() - gcTimeBefore;
+        long heapAfter = usedHeap();
+
+        long notes = 0;
+        for (SimulatedListener listener : listeners)
+            notes += listener.getSink().getNotes();
+        Arrays.sort(tickNanos);
+        double wallSeconds = wallNanos / 1e9;
+
+        System.out.printf("tracks             %d (%d duplicates folded)%n", library.size(),
+                library.getAliases().size());
+        System.out.printf("listeners          %d (%.0f%% shuffled, seed %d)%n", listenerCount, shuffled * 100, seed);
+        System.out.printf("sharding           %d worlds, %d shards%n", worlds, shards);
+        if (arena != null) {
+            System.out.printf("arena              %s, %d notes in %s%n", arenaMode,
+                    arena.getUsed() / Timeline.PACKED_NOTE_BYTES, megabytes(arena.getCapacity()));
+        }
+        System.out.printf("library heap       %s estimated%n", megabytes(library.getFootprint()));
+        System.out.printf("simulated          %ds in %.2fs wall (%.1fx real time)%n", simulatedSeconds, wallSeconds,
+                simulatedSeconds / wallSeconds);
+        System.out.printf("tick time (%dms)   p50 %s  p90 %s  p99 %s  p99.9 %s  max %s%n", tickMillis,
+                micros(percentile(tickNanos, 0.5)), micros(percentile(tickNanos, 0.9)),
+                micros(percentile(tickNanos, 0.99)), micros(percentile(tickNanos, 0.999)),
+                micros(tickNanos[tickNanos.length - 1]));
+        System.out.printf("notes emitted      %d (%.0f/s simulated)%n", notes, notes / (double) simulatedSeconds);
+        System.out.printf("heap               %s before, %s after, %s growth%n", megabytes(heapBefore),
+                megabytes(heapAfter), megabytes(heapAfter - heapBefore));
+        if (allocated >= 0) {
+            System.out.printf("allocation         %s total, %s/s wall, %d B/tick%n", megabytes(allocated),
+                    megabytes((long) (allocated / wallSeconds)), allocated / Math.max(1, tickCount));
+        } else
+            System.out.println("allocation         not supported by this JVM");
+        System.out.printf("gc                 %d collections, %dms%n", gcCount, gcTime);
+    }
+
+    private TrackLibrary loadTracks() throws IOException {
+        if (arenaMode.equals("direct"))
+            arena = NoteArena.direct();
+        else if (arenaMode.equals("mapped"))
+            arena = NoteArena.mapped(Paths.get(System.getProperty("java.io.tmpdir")));
+        try {
+            return new TrackLibrary(new TrackLoader()
+                    .arena(arena)
+                    .onError((source, e) -> System.err.println("Could not read file (file is likely malformed): "
+                            + source + ": " + e))
+                    .load(tracksDir.toPath()));
+        } finally {
+            if (arena != null)
+                arena.seal();
+        }
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        return sorted[Math.min(sorted.length - 1, (int) (sorted.length * p))];
+    }
+
+    private static String micros(long nanos) {
+        return String.format("%.0fus", nanos / 1e3);
+    }
+
+    private static String megabytes(long bytes) {
+        return String.format("%.1fMB", bytes / (1024d * 1024d));
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++)
+            System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static long allocatedBytes(ThreadMXBean threads) {
+        if (!(threads instanceof com.sun.management.ThreadMXBean))
+            return -1;
+        return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+            count += Math.max(0, gc.getCollectionCount());
+        return count;
+    }
+
+    private static long gcTime() {
+        long time = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+            time += Math.max(0, gc.getCollectionTime());
+        return time;
+    }
+}
@@ -0,0 +1,134 @@
+package se.walkercrou.composer.bench;
+
+import se.walkercrou.composer.engine.Playback;
+import se.walkercrou.composer.engine.Sequencer;
+import se.walkercrou.composer.nbs.PlayQueue;
+import se.walkercrou.composer.nbs.TrackLibrary;
+
+import java.util.Random;
+
+/**
+ * A simulated player listening to music. Mirrors what the plugin's music player does for a real player and randomly
+ * skips, pauses, resumes and shuffles while it listens.
+ */
+public class SimulatedListener {
+    private final TrackLibrary library;
+    private final Sequencer sequencer;
+    private final Random random;
+    private final PlayQueue queue;
+    private final CountingSoundSink sink;
+    private Playback playback;
+
+    /**
+     * Creates a new listener that plays from the specified library.
+     *
+     * @param library to play from
+     * @param sequencer to play on
+     * @param random source of behaviour
+     */
+    public SimulatedListener(TrackLibrary library, Sequencer sequencer, Random random) {
+        this(library, sequencer, random, null);
+    }
+
+    /**
+     * Creates a new listener that plays from the specified library in the specified region.
+     *
+     * @param library to play from
+     * @param sequencer to play on
+     * @param random source of behaviour
+     * @param region the listener is in, like a simulated world
+     */
+    public SimulatedListener(TrackLibrary library, Sequencer sequencer, Random random, Object region) {
+        this.library = library;
+        this.sequencer = sequencer;
+        this.random = random;
+        this.queue = new PlayQueue(library.size(), random);
+        this.sink = new CountingSoundSink(region);
+    }
+
+    /**
+     * Returns the sink this listener hears through.
+     *
+     * @return sound sink
+     */
+    public CountingSoundSink getSink() {
+        return sink;
+    }
+
+    /**
+     * Starts listening, shuffled or in library order.
+     *
+     * @param shuffle true to shuffle first
+     */
+    public void start(boolean shuffle) {
+        if (shuffle)
+            queue.shuffle();
+        play();
+    }
+
+    /**
+     * Gives this listener the chance to do something.
+     *
+     * @param behaviour chances of each action
+     */
+    public void act(Behaviour behaviour) {
+        double roll = random.nextDouble();
+        if (playback == null || !playback.isPlaying()) {
+            if (roll < behaviour.resume)
+                play();
+        } else if ((roll -= behaviour.skip) < 0)
+            next();
+        else if ((roll -= behaviour.pause) < 0)
+            playback.pause();
+        else if (roll - behaviour.shuffle < 0) {
+            queue.shuffle();
+            stop();
+            play();
+        }
+    }
+
+    private void play() {
+        if (playback == null)
+            playback = new Playback(library.get(queue.current()).getTimeline(), sequencer, sink).onFinish(this::next);
+        playback.play();
+    }
+
+    private void next() {
+        stop();
+        if (queue.hasNext())
+            queue.next();
+        else
+            queue.moveTo(0);
+        play();
+    }
+
+    private void stop() {
+        if (playback != null) {
+            playback.stop();
+            playback = null;
+        }
+    }
+
+    /**
+     * The chances of a listener doing something on a single tick.
+     */
+    public static class Behaviour {
+        private final double skip, pause, resume, shuffle;
+
+        /**
+         * Creates new behaviour from the average time between actions.
+         *
+         * @param tickMillis length of a tick
+         * @param skipEvery average millis between skips
+         * @param pauseEvery average millis between pauses
+         * @param pauseFor average millis a pause lasts
+         * @param shuffleEvery average millis between shuffles
+         */
+        public Behaviour(long tickMillis, double skipEvery, double pauseEvery, double pauseFor, double shuffleEvery) {
+            this.skip = tickMillis / skipEvery;
+            this.pause = tickMillis / pauseEvery;
+            this.resume = tickMillis / pauseFor;
+            this.shuffle = tickMillis / shuffleEvery;
+        }
+    }
+}
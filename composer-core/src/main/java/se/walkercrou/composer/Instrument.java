@@ -0,0 +1,43 @@
+package se.walkercrou.composer;
+
+/**
+ * Represents the sound a {@link Note} is played with. These correspond to the sounds a note block makes depending on
+ * the block beneath it.
+ */
+public enum Instrument {
+    /**
+     * Piano (any other block).
+     */
+    HARP(false),
+    /**
+     * Double bass (wood).
+     */
+    BASS(false),
+    /**
+     * Bass drum (stone).
+     */
+    BASEDRUM(true),
+    /**
+     * Snare drum (sand).
+     */
+    SNARE(true),
+    /**
+     * Clicks and sticks (glass).
+     */
+    PLING(true);
+
+    private final boolean drum;
+
+    Instrument(boolean drum) {
+        this.drum = drum;
+    }
+
+    /**
+     * Returns true if this instrument is a percussion sound rather than a pitched one.
+     *
+     * @return true if drum
+     */
+    public boolean isDrum() {
+        return drum;
+    }
+}
@@ -1,9 +1,5 @@
 package se.walkercrou.composer;
 
-import com.flowpowered.math.vector.Vector3d;
-import org.spongepowered.api.effect.Viewer;
-import org.spongepowered.api.entity.living.player.Player;
-
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -29,39 +25,13 @@ public class Layer {
         return measures;
     }
 
-    private int currentBeat = 1;
-    private int currentMeasure = 1;
-    private int hold = 1;
-    private int noteIndex = 0;
-    private boolean finished = false;
-
-    protected boolean onStep(Viewer viewer, Vector3d pos, int currentStep, int stepsPerBeat) {
-        if (finished)
-            return true; // no more measures to play
-
-        if (--hold <= 0) {
-            // play next note
-            Measure measure = measures.get(currentMeasure - 1);
-            Note note = measure.getNotes()[noteIndex++];
-            pos = pos == null && viewer instanceof Player ? ((Player) viewer).getLocation().getPosition() : pos;
-            note.play(viewer, pos);
-            hold = (int) (note.getBeatsForTime(time) * stepsPerBeat);
-        }
-
-        if (currentStep == stepsPerBeat) {
-            if (currentBeat == time.getBeatsPerMeasure()) {
-                currentBeat = 1;
-                if (currentMeasure == measures.size())
-                    finished = true;
-                else {
-                    currentMeasure++;
-                    noteIndex = 0;
-                }
-            } else
-                currentBeat++;
-        }
-
-        return false;
+    /**
+     * Returns the time signature of this Layer.
+     *
+     * @return time signature
+     */
+    public TimeSignature getTime() {
+        return time;
     }
 
     /**
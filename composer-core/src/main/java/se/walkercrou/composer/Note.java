@@ -0,0 +1,181 @@
+package se.walkercrou.composer;
+
+import se.walkercrou.composer.engine.SoundSink;
+
+/**
+ * Represents a single note in a {@link Measure}. The length of a note is kept as a whole number of pulses, where a
+ * quarter note lasts {@link #PPQ} pulses, so that dotted notes and tuplets are exact and lengths add up without
+ * rounding.
+ */
+public class Note {
+    /**
+     * Pulses per quarter note, the resolution every note length is measured in. Divisible by powers of two down to
+     * sixty-fourth notes and by three for triplets.
+     */
+    public static final int PPQ = 960;
+
+    public static final int WHOLE = 1;
+    public static final int HALF = 2;
+    public static final int QUARTER = 4;
+    public static final int EIGHTH = 8;
+    public static final int SIXTEENTH = 16;
+    public static final int THIRTY_SECOND = 32;
+    public static final int SIXTY_FOURTH = 64;
+
+    private final Instrument instrument;
+    private final double pitch;
+    private final int pulses;
+    private final double volume;
+
+    private Note(int pulses, Instrument instrument, double pitch, double volume) {
+        if (pulses <= 0)
+            throw new IllegalArgumentException("note must last at least one pulse: " + pulses);
+        this.instrument = instrument;
+        this.pitch = pitch;
+        this.pulses = pulses;
+        this.volume = volume;
+    }
+
+    /**
+     * Creates new Note with the specified {@link Pitch} value and type. The note type is the lower number of the
+     * fraction of a whole note it lasts. For instance, a quarter note has type 4.
+     *
+     * @param instrument of note
+     * @param pitch of note
+     * @param type of note
+     * @param volume of note 1 is full volume
+     */
+    public Note(Instrument instrument, double pitch, int type, double volume) {
+        this(pulsesOf(type), instrument, pitch, volume);
+    }
+
+    public Note(double pitch, int type, double volume) {
+        this(Instrument.HARP, pitch, type, volume);
+    }
+
+    public Note(Instrument instrument, double pitch, int type) {
+        this(instrument, pitch, type, 1);
+    }
+
+    public Note(double pitch, int type) {
+        this(pitch, type, 1);
+    }
+
+    /**
+     * Returns the {@link Instrument} this note is played with.
+     *
+     * @return instrument, or null if this is a rest
+     */
+    public Instrument getInstrument() {
+        return instrument;
+    }
+
+    /**
+     * Returns the volume of this note where 1 is full volume.
+     *
+     * @return volume
+     */
+    public double getVolume() {
+        return volume;
+    }
+
+    /**
+     * Returns the "Minecraft" pitch of this note.
+     *
+     * @return pitch
+     * @see Pitch
+     */
+    public double getPitch() {
+        return pitch;
+    }
+
+    /**
+     * Returns how long this note lasts in pulses.
+     *
+     * @return length in pulses
+     * @see #PPQ
+     */
+    public int getPulses() {
+        return pulses;
+    }
+
+    /**
+     * Returns a copy of this note that lasts half again as long.
+     *
+     * @return dotted note
+     */
+    public Note dotted() {
+        return withPulses(pulses + pulses / 2, pulses % 2 == 0);
+    }
+
+    /**
+     * Returns a copy of this note as part of a triplet, lasting two thirds as long.
+     *
+     * @return triplet note
+     */
+    public Note triplet() {
+        return tuplet(3, 2);
+    }
+
+    /**
+     * Returns a copy of this note as part of a tuplet of the specified amount of notes played in the space of the
+     * specified amount of notes.
+     *
+     * @param notes amount of notes in the tuplet
+     * @param inSpaceOf amount of regular notes the tuplet lasts
+     * @return tuplet note
+     */
+    public Note tuplet(int notes, int inSpaceOf) {
+        if (notes <= 0 || inSpaceOf <= 0)
+            throw new IllegalArgumentException("invalid tuplet " + notes + ":" + inSpaceOf);
+        return withPulses(pulses * inSpaceOf / notes, pulses * inSpaceOf % notes == 0);
+    }
+
+    private Note withPulses(int newPulses, boolean exact) {
+        if (!exact)
+            throw new IllegalArgumentException("length is not a whole number of pulses");
+        return new Note(newPulses, instrument, pitch, volume);
+    }
+
+    /**
+     * Returns true if this note makes no sound, such as a rest.
+     *
+     * @return true if rest
+     */
+    public boolean isRest() {
+        return volume == 0;
+    }
+
+    /**
+     * Plays this note to the specified {@link SoundSink}.
+     *
+     * @param sink to play to
+     */
+    public void play(SoundSink sink) {
+        if (volume == 0)
+            return;
+        sink.playNote(instrument, volume * 2, pitch);
+    }
+
+    /**
+     * Creates a new "rest" note.
+     *
+     * @param type of rest
+     * @return new note
+     */
+    public static Note rest(int type) {
+        return new Note(null, -1, type, 0);
+    }
+
+    /**
+     * Returns the length in pulses of the specified note type.
+     *
+     * @param type of note, a power of two up to {@link #SIXTY_FOURTH}
+     * @return length in pulses
+     */
+    public static int pulsesOf(int type) {
+        if (type <= 0 || PPQ * 4 % type != 0)
+            throw new IllegalArgumentException("unsupported note type: " + type);
+        return PPQ * 4 / type;
+    }
+}
@@ -1,9 +1,7 @@
 package se.walkercrou.composer;
 
-import org.spongepowered.api.effect.sound.SoundType;
-
 /**
- * Represents a pitch value for a {@link SoundType}. Minecraft's accepted pitches span two octaves from F#0 to F#2.
+ * Represents a pitch value for an {@link Instrument}. Minecraft's accepted pitches span two octaves from F#0 to F#2.
  */
 public final class Pitch {
     public static final double FSHARP0 = 0;
@@ -48,6 +46,15 @@ public final class Pitch {
     public static final double FFLAT2 = E2;
     public static final double GFLAT2 = FSHARP2;
 
+    /**
+     * The lowest pitch Minecraft will play.
+     */
+    public static final double MIN = 0.5;
+    /**
+     * The highest pitch Minecraft will play.
+     */
+    public static final double MAX = 2;
+
     public static final double[] TWO_OCTAVES = {
             FSHARP0, G0, GSHARP0, A0, ASHARP0, B0, C1, CSHARP1, D1, DSHARP1, E1, F1, FSHARP1, G1, GSHARP1, A1, ASHARP1,
             B1, C2, CSHARP2, D2, DSHARP2, E2, F2, FSHARP2
@@ -55,4 +62,29 @@ public final class Pitch {
 
     private Pitch() {
     }
+
+    /**
+     * Returns the pitch of the specified piano key, where key 0 is the lowest A on a piano as in Note Block Studio.
+     * Keys outside of the two octaves Minecraft can play are moved by whole octaves until they fit.
+     *
+     * @param key piano key
+     * @return pitch
+     */
+    public static double ofKey(int key) {
+        while (key < 33)
+            key += 12;
+        while (key > 57)
+            key -= 12;
+        return TWO_OCTAVES[key - 33];
+    }
+
+    /**
+     * Returns the factor to multiply a pitch by to move it the specified amount of semitones.
+     *
+     * @param semitones to move, negative to move down
+     * @return pitch factor
+     */
+    public static double transposeFactor(int semitones) {
+        return Math.pow(2, semitones / 12d);
+    }
 }
@@ -1,14 +1,11 @@
 package se.walkercrou.composer;
 
-import com.flowpowered.math.vector.Vector3d;
-import org.spongepowered.api.Sponge;
-import org.spongepowered.api.effect.Viewer;
-import org.spongepowered.api.entity.living.player.Player;
-import org.spongepowered.api.scheduler.Task;
+import se.walkercrou.composer.engine.Playback;
+import se.walkercrou.composer.engine.Sequencer;
+import se.walkercrou.composer.engine.SoundSink;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.TimeUnit;
 
 /**
  * Represents a musical score to be played in game.
@@ -18,14 +15,16 @@ public class Score {
     private final int tempoBmp;
     private final TimeSignature time;
     private final List<Layer> layers;
-    private Runnable onFinish;
+    private Timeline timeline;
 
-    private Score(String title, String artist, int tempoBmp, TimeSignature time, List<Layer> layers) {
+    private Score(String title, String artist, int tempoBmp, TimeSignature time, List<Layer> layers,
+                  Timeline timeline) {
         this.title = title;
         this.artist = artist;
         this.tempoBmp = tempoBmp;
         this.time = time;
         this.layers = layers;
+        this.timeline = timeline;
     }
 
     /**
@@ -73,91 +72,50 @@ public class Score {
         return layers;
     }
 
-    public Score onFinish(Runnable onFinish) {
-        this.onFinish = onFinish;
-        return this;
-    }
-
     /**
-     * Plays this score for the specified {@link Viewer} at the specified {@link Vector3d} position.
+     * Creates a new idle {@link Playback} session of this score to the specified {@link SoundSink}, advanced by the
+     * specified {@link Sequencer}. Any amount of sessions may play the same score.
      *
-     * @param context plugin
-     * @param viewer to play for
-     * @param pos position to play at
+     * @param sequencer to be advanced by
+     * @param sink to play to
+     * @return new playback session
      */
-    public void play(Object context, Viewer viewer, Vector3d pos) {
-        // get the shortest note in score, these will be used to determine how often we "step"
-        // for example, if the shortest note is a sixteenth note in common time, we need to step 4 times per beat
-        Note shortestNote = null;
-        for (Layer layer : layers) {
-            for (Measure measure : layer.getMeasures()) {
-                for (Note note : measure.getNotes()) {
-                    int type = note.getType();
-                    if (shortestNote == null || type > shortestNote.getType())
-                        shortestNote = note;
-                }
-            }
-        }
-
-        if (shortestNote == null)
-            return;
-
-        // i.e. in common time: a sixteenth note would be a 1/4 beat long
-        double millisPerBeat = 60 / (double) tempoBmp * 1000;
-        double millisPerStep = millisPerBeat * shortestNote.getBeatsForTime(time);
-        long delay = (long) millisPerStep;
-
-        stepsPerBeat = shortestNote.getType() / time.getSingleBeatNote();
-
-        task = Sponge.getScheduler().createTaskBuilder().async()
-                .execute(() -> nextStep(viewer, pos))
-                .name("\"" + title + "\" by " + artist)
-                .delay(delay, TimeUnit.MILLISECONDS)
-                .interval(delay, TimeUnit.MILLISECONDS)
-                .submit(context);
+    public Playback newPlayback(Sequencer sequencer, SoundSink sink) {
+        return new Playback(getTimeline(), sequencer, sink);
     }
 
     /**
-     * Plays the score for the specified {@link Player} and uses their current location for each note.
+     * Plays this score to the specified {@link SoundSink}, advanced by the specified {@link Sequencer}.
      *
-     * @param context plugin
-     * @param viewer player
+     * @param sequencer to be advanced by
+     * @param sink to play to
+     * @return playback session
      */
-    public void play(Object context, Player viewer) {
-        play(context, viewer, null);
+    public Playback play(Sequencer sequencer, SoundSink sink) {
+        Playback playback = newPlayback(sequencer, sink);
+        playback.play();
+        return playback;
     }
 
     /**
-     * Pauses the song.
+     * Returns how long this score lasts.
+     *
+     * @return duration in milliseconds
      */
-    public void pause() {
-        if (task != null)
-            task.cancel();
+    public long getDuration() {
+        Timeline timeline = getTimeline();
+        return timeline.getMillisAt(timeline.getLength());
     }
 
     /**
-     * Stops the song.
+     * Returns the notes of this score laid out on a {@link Timeline}.
+     *
+     * @return timeline of score
      */
-    public void finish() {
-        pause();
-        if (onFinish != null)
-            onFinish.run();
-    }
-
-    private Task task;
-    private int stepsPerBeat;
-    private int currentStep = 1;
-
-    private void nextStep(Viewer viewer, Vector3d pos) {
-        boolean finished = true;
-        for (Layer layer : layers)
-            finished &= layer.onStep(viewer, pos, currentStep, stepsPerBeat);
-        if (currentStep == stepsPerBeat)
-            currentStep = 1;
-        else
-            currentStep++;
-        if (finished)
-            finish();
+    public synchronized Timeline getTimeline() {
+        if (timeline == null)
+            timeline = Timeline.of(this);
+        return timeline;
     }
 
     /**
@@ -167,6 +125,7 @@ public class Score {
         private String title, artist;
         private int tempoBmp;
         private TimeSignature time;
+        private Timeline timeline;
         protected final List<Layer> layers = new ArrayList<>();
 
         /**
@@ -209,6 +168,19 @@ public class Score {
             return this;
         }
 
+        /**
+         * Sets an already laid out {@link Timeline} to play instead of one laid out from the layers. Used by
+         * importers that produce notes with their timing directly.
+         *
+         * @see Score#getTimeline()
+         * @param timeline to play
+         * @return this
+         */
+        public Builder timeline(Timeline timeline) {
+            this.timeline = timeline;
+            return this;
+        }
+
         /**
          * Creates a new {@link Layer.Builder}.
          *
@@ -224,7 +196,7 @@ public class Score {
          * @return new score
          */
         public Score build() {
-            return new Score(title, artist, tempoBmp, time, layers);
+            return new Score(title, artist, tempoBmp, time, layers, timeline);
         }
     }
 }
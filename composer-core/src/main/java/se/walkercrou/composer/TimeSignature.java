@@ -14,6 +14,7 @@ public class TimeSignature {
     public static final TimeSignature CUT = new TimeSignature(2, 2);
 
     private final int beatsPerMeasure, singleBeatNote;
+    private final int pulsesPerBeat;
 
     /**
      * Creates a new TimeSignature. The first parameter represents the upper number in a traditional key signature
@@ -26,6 +27,7 @@ public class TimeSignature {
     public TimeSignature(int beatsPerMeasure, int singleBeatNote) {
         this.beatsPerMeasure = beatsPerMeasure;
         this.singleBeatNote = singleBeatNote;
+        this.pulsesPerBeat = Note.pulsesOf(singleBeatNote);
     }
 
     /**
@@ -46,4 +48,23 @@ public class TimeSignature {
     public int getSingleBeatNote() {
         return singleBeatNote;
     }
+
+    /**
+     * Returns how long a single beat lasts in pulses.
+     *
+     * @return pulses per beat
+     * @see Note#PPQ
+     */
+    public int getPulsesPerBeat() {
+        return pulsesPerBeat;
+    }
+
+    /**
+     * Returns how long a single measure lasts in pulses.
+     *
+     * @return pulses per measure
+     */
+    public int getPulsesPerMeasure() {
+        return beatsPerMeasure * pulsesPerBeat;
+    }
 }
@@ -0,0 +1,411 @@
+package se.walkercrou.composer;
+
+import se.walkercrou.composer.engine.SoundSink;
+import se.walkercrou.composer.util.Footprint;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The notes of a {@link Score} laid out on a single timeline of "steps", sorted by the step they are played at. A step
+ * is the longest length that every note in the score is a whole number of. Because the timeline is sorted, the note
+ * to continue from at any point in the score is found with a binary search rather than by stepping through the score
+ * up to that point. Notes are kept as primitive columns so that playing through the timeline does not allocate, or
+ * read from fixed size records in a buffer that may live off the heap, see {@link #packed}.
+ */
+public class Timeline {
+    /**
+     * Size of a note in the packed form: the step as an int, the index of its volume as a short, then the ordinal of
+     * its {@link Instrument} and its key (see {@link Pitch#ofKey(int)}) as bytes, in native byte order.
+     */
+    public static final int PACKED_NOTE_BYTES = 8;
+
+    private static final Instrument[] INSTRUMENTS = Instrument.values();
+    private static final float[] KEY_PITCHES = new float[256]; // by key as an unsigned byte
+
+    static {
+        for (int key = Byte.MIN_VALUE; key <= Byte.MAX_VALUE; key++)
+            KEY_PITCHES[key & 0xFF] = (float) Pitch.ofKey(key);
+    }
+
+    private final int stepsPerBeat;
+    private final double millisPerStep;
+    private final int length;
+    private final int size;
+    // columns, null when packed
+    private final int[] steps;
+    private final byte[] instruments;
+    private final float[] pitches;
+    private final float[] volumes;
+    // packed records and the volumes they refer to, null when in columns
+    private final ByteBuffer packed;
+    private final float[] packedVolumes;
+
+    private Timeline(int stepsPerBeat, double millisPerStep, int length, int[] steps, byte[] instruments,
+                     float[] pitches, float[] volumes) {
+        this.stepsPerBeat = stepsPerBeat;
+        this.millisPerStep = millisPerStep;
+        this.length = length;
+        this.size = steps.length;
+        this.steps = steps;
+        this.instruments = instruments;
+        this.pitches = pitches;
+        this.volumes = volumes;
+        this.packed = null;
+        this.packedVolumes = null;
+    }
+
+    private Timeline(int stepsPerBeat, double millisPerStep, int length, int size, ByteBuffer packed,
+                     float[] packedVolumes) {
+        this.stepsPerBeat = stepsPerBeat;
+        this.millisPerStep = millisPerStep;
+        this.length = length;
+        this.size = size;
+        this.steps = null;
+        this.instruments = null;
+        this.pitches = null;
+        this.volumes = null;
+        this.packed = packed;
+        this.packedVolumes = packedVolumes;
+    }
+
+    /**
+     * Creates a timeline that reads its notes straight from the specified buffer of {@link #PACKED_NOTE_BYTES}
+     * records, starting at index zero of the buffer. Nothing is copied, the buffer must not change while the timeline
+     * is in use, and its notes must be sorted by step.
+     *
+     * @param packed records of notes
+     * @param size amount of notes
+     * @param volumes of notes by the volume index in their record, 1 is full volume
+     * @param stepsPerBeat steps in a single beat
+     * @param millisPerStep length of a step in milliseconds
+     * @param length amount of steps in the timeline
+     * @return new timeline
+     */
+    public static Timeline packed(ByteBuffer packed, int size, float[] volumes, int stepsPerBeat,
+                                  double millisPerStep, int length) {
+        if (size < 0 || (long) size * PACKED_NOTE_BYTES > packed.limit())
+            throw new IllegalArgumentException("buffer holds fewer than " + size + " notes");
+        return new Timeline(stepsPerBeat, millisPerStep, length, size,
+                packed.duplicate().order(ByteOrder.nativeOrder()), volumes);
+    }
+
+    /**
+     * Lays out the notes of the specified score.
+     *
+     * @param score to lay out
+     * @return timeline of score
+     */
+    public static Timeline of(Score score) {
+        TimeSignature time = score.getTime();
+        List<Layer> layers = score.getLayers();
+        int pulsesPerBeat = time.getPulsesPerBeat();
+        int pulsesPerMeasure = time.getPulsesPerMeasure();
+
+        // a step is the longest length that a beat and every note in the score are a whole number of, so every note
+        // starts exactly on a step. For example, if the shortest note is a sixteenth note in common time, we need to
+        // step 4 times per beat, and eighth note triplets make it 3 times per beat
+        int pulsesPerStep = pulsesPerBeat;
+        for (Layer layer : layers) {
+            for (Measure measure : layer.getMeasures()) {
+                for (Note note : measure.getNotes())
+                    pulsesPerStep = gcd(pulsesPerStep, note.getPulses());
+            }
+        }
+
+        int stepsPerBeat = pulsesPerBeat / pulsesPerStep;
+        double millisPerBeat = 60 / (double) score.getTempo() * 1000;
+
+        // place each note at the step it starts at, layer by layer so that notes on the same step keep that order
+        int stepsPerMeasure = pulsesPerMeasure / pulsesPerStep;
+        Builder builder = new Builder();
+        int length = 0;
+        for (Layer layer : layers) {
+            List<Measure> measures = layer.getMeasures();
+            for (int m = 0; m < measures.size(); m++) {
+                int offset = 0;
+                for (Note note : measures.get(m).getNotes()) {
+                    if (offset >= pulsesPerMeasure)
+                        break; // notes overflowing the measure are never reached
+                    if (!note.isRest())
+                        builder.note(m * stepsPerMeasure + offset / pulsesPerStep, note.getInstrument(),
+                                note.getPitch(), note.getVolume());
+                    offset += note.getPulses();
+                }
+            }
+            length = Math.max(length, measures.size() * stepsPerMeasure);
+        }
+
+        return builder.build(stepsPerBeat, millisPerBeat / stepsPerBeat, length);
+    }
+
+    private static int gcd(int a, int b) {
+        while (b != 0) {
+            int t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+
+    /**
+     * Returns the amount of steps in a single beat.
+     *
+     * @return steps per beat
+     */
+    public int getStepsPerBeat() {
+        return stepsPerBeat;
+    }
+
+    /**
+     * Returns how long a single step lasts in milliseconds.
+     *
+     * @return millis per step
+     */
+    public double getMillisPerStep() {
+        return millisPerStep;
+    }
+
+    /**
+     * Returns the amount of steps until the end of the last measure.
+     *
+     * @return length in steps
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Returns the amount of (non-rest) notes on this timeline.
+     *
+     * @return amount of notes
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns true if this timeline reads its notes from packed records.
+     *
+     * @return true if packed
+     * @see #packed
+     */
+    public boolean isPacked() {
+        return packed != null;
+    }
+
+    /**
+     * Returns an estimate of the bytes of heap this timeline holds. Packed records are not counted, nor are the
+     * volumes they refer to, which belong to whoever packed them.
+     *
+     * @return bytes
+     * @see Footprint
+     */
+    public long getFootprint() {
+        long timeline = Footprint.object(4 + 8 + 4 + 4 + 6 * Footprint.REFERENCE);
+        if (packed != null)
+            return timeline + Footprint.object(48); // the view of the records
+        return timeline + Footprint.array(size, 4) + Footprint.array(size, 1) + 2 * Footprint.array(size, 4);
+    }
+
+    /**
+     * Returns the step the note at the specified index is played at.
+     *
+     * @param index of note
+     * @return step of note
+     */
+    public int getStep(int index) {
+        return packed == null ? steps[index] : packed.getInt(index * PACKED_NOTE_BYTES);
+    }
+
+    /**
+     * Returns the {@link Instrument} of the note at the specified index.
+     *
+     * @param index of note
+     * @return instrument
+     */
+    public Instrument getInstrument(int index) {
+        return INSTRUMENTS[instrumentAt(index)];
+    }
+
+    /**
+     * Returns the "Minecraft" pitch of the note at the specified index.
+     *
+     * @param index of note
+     * @return pitch
+     */
+    public double getPitch(int index) {
+        return pitchAt(index);
+    }
+
+    /**
+     * Returns the volume of the note at the specified index where 1 is full volume.
+     *
+     * @param index of note
+     * @return volume
+     */
+    public double getVolume(int index) {
+        return volumeAt(index);
+    }
+
+    /**
+     * Plays the note at the specified index to the specified {@link SoundSink}.
+     *
+     * @param index of note
+     * @param sink to play to
+     * @see Note#play(SoundSink)
+     */
+    public void play(int index, SoundSink sink) {
+        sink.playNote(INSTRUMENTS[instrumentAt(index)], volumeAt(index) * 2d, pitchAt(index));
+    }
+
+    /**
+     * Plays the note at the specified index to the specified {@link SoundSink} with its volume and pitch multiplied by
+     * the specified factors. A transposed pitch is clamped to the range Minecraft can play.
+     *
+     * @param index of note
+     * @param sink to play to
+     * @param volumeFactor to multiply volume by
+     * @param pitchFactor to multiply pitch by
+     * @see Pitch#transposeFactor(int)
+     */
+    public void play(int index, SoundSink sink, double volumeFactor, double pitchFactor) {
+        double pitch = pitchAt(index);
+        if (pitchFactor != 1)
+            pitch = Math.max(Pitch.MIN, Math.min(Pitch.MAX, pitch * pitchFactor));
+        sink.playNote(INSTRUMENTS[instrumentAt(index)], volumeAt(index) * 2d * volumeFactor, pitch);
+    }
+
+    private int instrumentAt(int index) {
+        return packed == null ? instruments[index] : packed.get(index * PACKED_NOTE_BYTES + 6);
+    }
+
+    private float pitchAt(int index) {
+        return packed == null ? pitches[index] : KEY_PITCHES[packed.get(index * PACKED_NOTE_BYTES + 7) & 0xFF];
+    }
+
+    private float volumeAt(int index) {
+        if (packed == null)
+            return volumes[index];
+        return packedVolumes[packed.getShort(index * PACKED_NOTE_BYTES + 4) & 0xFFFF];
+    }
+
+    /**
+     * Returns the index of the first note played at or after the specified step.
+     *
+     * @param step to find
+     * @return index of note, or {@link #size()} if there are no more notes
+     */
+    public int indexOf(int step) {
+        int low = 0, high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (getStep(mid) < step)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+
+    /**
+     * Returns the step playing at the specified time, clamped to the length of the timeline.
+     *
+     * @param millis time from start
+     * @return step
+     */
+    public int getStepAt(long millis) {
+        return (int) Math.max(0, Math.min(length, (long) (millis / millisPerStep)));
+    }
+
+    /**
+     * Returns the time at which the specified step starts.
+     *
+     * @param step to get time of
+     * @return time from start in milliseconds
+     */
+    public long getMillisAt(int step) {
+        return (long) (step * millisPerStep);
+    }
+
+    /**
+     * Builder class for a {@link Timeline}. Notes may be added in any order; notes on the same step keep the order
+     * they were added in.
+     */
+    public static class Builder {
+        private int[] steps = new int[64];
+        private byte[] instruments = new byte[64];
+        private float[] pitches = new float[64];
+        private float[] volumes = new float[64];
+        private int size = 0;
+        private boolean sorted = true;
+
+        /**
+         * Adds a note to the timeline.
+         *
+         * @param step to play note at
+         * @param instrument of note
+         * @param pitch of note
+         * @param volume of note, 1 is full volume
+         * @return this builder
+         */
+        public Builder note(int step, Instrument instrument, double pitch, double volume) {
+            if (size == steps.length) {
+                int capacity = size * 2;
+                steps = Arrays.copyOf(steps, capacity);
+                instruments = Arrays.copyOf(instruments, capacity);
+                pitches = Arrays.copyOf(pitches, capacity);
+                volumes = Arrays.copyOf(volumes, capacity);
+            }
+            if (size > 0 && step < steps[size - 1])
+                sorted = false;
+            steps[size] = step;
+            instruments[size] = (byte) instrument.ordinal();
+            pitches[size] = (float) pitch;
+            volumes[size] = (float) volume;
+            size++;
+            return this;
+        }
+
+        /**
+         * Returns the amount of notes added so far.
+         *
+         * @return amount of notes
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Builds a new Timeline.
+         *
+         * @param stepsPerBeat steps in a single beat
+         * @param millisPerStep length of a step in milliseconds
+         * @param length amount of steps in the timeline
+         * @return new timeline
+         */
+        public Timeline build(int stepsPerBeat, double millisPerStep, int length) {
+            int[] steps = Arrays.copyOf(this.steps, size);
+            byte[] instruments = Arrays.copyOf(this.instruments, size);
+            float[] pitches = Arrays.copyOf(this.pitches, size);
+            float[] volumes = Arrays.copyOf(this.volumes, size);
+            if (!sorted) {
+                // sort by step packed with the order added in, which keeps the sort stable
+                long[] order = new long[size];
+                for (int i = 0; i < size; i++)
+                    order[i] = (long) this.steps[i] << 32 | i;
+                Arrays.sort(order);
+                for (int i = 0; i < size; i++) {
+                    int from = (int) order[i];
+                    steps[i] = this.steps[from];
+                    instruments[i] = this.instruments[from];
+                    pitches[i] = this.pitches[from];
+                    volumes[i] = this.volumes[from];
+                }
+            }
+            return new Timeline(stepsPerBeat, millisPerStep, length, steps, instruments, pitches, volumes);
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package se.walkercrou.composer.engine;
+
+/**
+ * Source of time and repeating tasks for playback. A server implementation runs tasks on its own scheduler while
+ * {@link SimulatedClock} runs them at simulated time.
+ */
+public interface Clock {
+    /**
+     * Returns the current time of this clock.
+     *
+     * @return time in milliseconds
+     */
+    long millis();
+
+    /**
+     * Runs the specified task every interval, starting one interval from now.
+     *
+     * @param task to run
+     * @param intervalMillis time between runs in milliseconds
+     * @param name of task
+     * @return handle to cancel the task with
+     */
+    ScheduledTask schedule(Runnable task, long intervalMillis, String name);
+}
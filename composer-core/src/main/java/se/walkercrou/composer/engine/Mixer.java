@@ -0,0 +1,206 @@
+package se.walkercrou.composer.engine;
+
+import se.walkercrou.composer.Instrument;
+
+/**
+ * A listener's mix of the instruments: a master volume, a gain and mute switch per {@link Instrument} and a switch to
+ * turn off all drums. Mixers are immutable and the whole mix packs into a single long (see {@link #toLong()}) so it
+ * is cheap to keep one per player and to persist.
+ * <p>
+ * The volume of each instrument is worked out once when the mixer is created, so applying a mix to a note is a
+ * single array lookup. Inaudible instruments get a volume of zero and are skipped before they reach a
+ * {@link SoundSink}.
+ */
+public final class Mixer {
+    private static final Instrument[] INSTRUMENTS = Instrument.values();
+
+    // packed layout: master percent in bits 0-7, mute mask in bits 8-15, drums off in bit 16 and a gain percent per
+    // instrument in 8 bits each from bit 24
+    private static final int MUTE_SHIFT = 8;
+    private static final int DRUMS_OFF_BIT = 16;
+    private static final int GAIN_SHIFT = 24;
+    private static final long DEFAULT_BITS;
+
+    /**
+     * The highest master volume or instrument gain in percent.
+     */
+    public static final int MAX_PERCENT = 200;
+
+    static {
+        long bits = 100;
+        for (Instrument instrument : INSTRUMENTS)
+            bits |= 100L << gainShift(instrument);
+        DEFAULT_BITS = bits;
+    }
+
+    /**
+     * Mixer that plays everything as it was written.
+     */
+    public static final Mixer DEFAULT = new Mixer(DEFAULT_BITS);
+
+    private final long bits;
+    private final double[] volumes = new double[INSTRUMENTS.length];
+    private final boolean silent;
+
+    private Mixer(long bits) {
+        this.bits = bits;
+        double master = getMaster() / 100d;
+        boolean silent = true;
+        for (Instrument instrument : INSTRUMENTS) {
+            if (!isMuted(instrument) && !(instrument.isDrum() && isDrumsOff()))
+                volumes[instrument.ordinal()] = master * getGain(instrument) / 100d;
+            silent &= volumes[instrument.ordinal()] == 0;
+        }
+        this.silent = silent;
+    }
+
+    /**
+     * Returns the mixer packed by {@link #toLong()}.
+     *
+     * @param bits packed mixer
+     * @return mixer
+     * @throws IllegalArgumentException if the master volume or a gain is over {@link #MAX_PERCENT}
+     */
+    public static Mixer fromLong(long bits) {
+        if (bits == DEFAULT_BITS)
+            return DEFAULT;
+        checkPercent((int) (bits & 0xFF));
+        for (Instrument instrument : INSTRUMENTS)
+            checkPercent((int) (bits >>> gainShift(instrument) & 0xFF));
+        return new Mixer(bits);
+    }
+
+    /**
+     * Returns this mixer packed into a long.
+     *
+     * @return packed mixer
+     */
+    public long toLong() {
+        return bits;
+    }
+
+    /**
+     * Returns the master volume in percent.
+     *
+     * @return master volume
+     */
+    public int getMaster() {
+        return (int) (bits & 0xFF);
+    }
+
+    /**
+     * Returns a copy of this mixer with the specified master volume.
+     *
+     * @param percent master volume, 0 to {@link #MAX_PERCENT}
+     * @return new mixer
+     */
+    public Mixer withMaster(int percent) {
+        return fromLong(bits & ~0xFFL | checkPercent(percent));
+    }
+
+    /**
+     * Returns the gain of the specified instrument in percent.
+     *
+     * @param instrument to get gain of
+     * @return gain
+     */
+    public int getGain(Instrument instrument) {
+        return (int) (bits >>> gainShift(instrument) & 0xFF);
+    }
+
+    /**
+     * Returns a copy of this mixer with the specified instrument gain.
+     *
+     * @param instrument to set gain of
+     * @param percent gain, 0 to {@link #MAX_PERCENT}
+     * @return new mixer
+     */
+    public Mixer withGain(Instrument instrument, int percent) {
+        int shift = gainShift(instrument);
+        return fromLong(bits & ~(0xFFL << shift) | (long) checkPercent(percent) << shift);
+    }
+
+    /**
+     * Returns true if the specified instrument is muted.
+     *
+     * @param instrument to check
+     * @return true if muted
+     */
+    public boolean isMuted(Instrument instrument) {
+        return (bits & 1L << MUTE_SHIFT + instrument.ordinal()) != 0;
+    }
+
+    /**
+     * Returns a copy of this mixer with the specified instrument muted or unmuted. Muting keeps the instrument's gain.
+     *
+     * @param instrument to mute
+     * @param muted true to mute
+     * @return new mixer
+     */
+    public Mixer withMuted(Instrument instrument, boolean muted) {
+        return fromLong(setBit(MUTE_SHIFT + instrument.ordinal(), muted));
+    }
+
+    /**
+     * Returns true if all drums are off.
+     *
+     * @return true if drums off
+     * @see Instrument#isDrum()
+     */
+    public boolean isDrumsOff() {
+        return (bits & 1L << DRUMS_OFF_BIT) != 0;
+    }
+
+    /**
+     * Returns a copy of this mixer with drums turned on or off.
+     *
+     * @param drumsOff true to turn drums off
+     * @return new mixer
+     */
+    public Mixer withDrumsOff(boolean drumsOff) {
+        return fromLong(setBit(DRUMS_OFF_BIT, drumsOff));
+    }
+
+    /**
+     * Returns the factor to multiply the volume of the specified instrument by, zero if it should not be heard at all.
+     *
+     * @param instrument to get volume of
+     * @return volume factor
+     */
+    public double getVolume(Instrument instrument) {
+        return volumes[instrument.ordinal()];
+    }
+
+    /**
+     * Returns true if no instrument can be heard through this mixer, for example when the master volume is zero.
+     *
+     * @return true if silent
+     */
+    public boolean isSilent() {
+        return silent;
+    }
+
+    private long setBit(int bit, boolean set) {
+        return set ? bits | 1L << bit : bits & ~(1L << bit);
+    }
+
+    private static int gainShift(Instrument instrument) {
+        return GAIN_SHIFT + instrument.ordinal() * 8;
+    }
+
+    private static int checkPercent(int percent) {
+        if (percent < 0 || percent > MAX_PERCENT)
+            throw new IllegalArgumentException("percent out of range: " + percent);
+        return percent;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof Mixer && ((Mixer) obj).bits == bits;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(bits);
+    }
+}
@@ -0,0 +1,403 @@
+package se.walkercrou.composer.engine;
+
+import se.walkercrou.composer.Pitch;
+import se.walkercrou.composer.Timeline;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A single session of playing a {@link Timeline} to a {@link SoundSink}. A session only moves between its
+ * {@link State}s through atomic compare-and-set transitions, so concurrent commands can never have it played twice:
+ *
+ * <pre>
+ * IDLE -- play --&gt; PLAYING -- pause --&gt; PAUSED -- play --&gt; PLAYING
+ * any -- finish / stop --&gt; FINISHED
+ * </pre>
+ *
+ * Sessions are advanced by a {@link Sequencer}, which wakes a session only when its next note is due. Every change
+ * that affects when notes are due (playing, seeking or changing speed) submits the session to the sequencer under a
+ * new generation number. The sequencer drops any entry whose generation has become outdated, so a session is never
+ * advanced by more than one entry.
+ * <p>
+ * The speed, transposition and {@link Mixer} of a session are applied as notes are emitted, so they can be changed at
+ * any time without touching the {@link Timeline}, which may be shared with other sessions.
+ * <p>
+ * A playing session whose {@link SoundSink} has no audience, or whose mixer is silent, is suspended: it plays no notes
+ * and is only woken every {@link #AUDIENCE_CHECK_MILLIS} to see if anyone is listening again. What happens to its
+ * position in the meantime is up to its {@link Unheard} policy.
+ */
+public class Playback {
+    /**
+     * How often a suspended session checks whether it has an audience again.
+     */
+    public static final long AUDIENCE_CHECK_MILLIS = 1000;
+
+    /**
+     * The states a playback session can be in.
+     */
+    public enum State {
+        IDLE, PLAYING, PAUSED, FINISHED
+    }
+
+    /**
+     * What a session does with its position while nobody can hear it.
+     */
+    public enum Unheard {
+        /**
+         * Time keeps running, the notes nobody heard are skipped. Suits music that plays to a place.
+         */
+        SKIP,
+        /**
+         * The position holds where the audience left and continues from there when it is back. Suits music that
+         * plays to a single listener.
+         */
+        HOLD
+    }
+
+    private final Timeline timeline;
+    private final Sequencer sequencer;
+    private final SoundSink sink;
+    private final long duration;
+    private final AtomicReference<State> state = new AtomicReference<>(State.IDLE);
+    private final AtomicInteger generation = new AtomicInteger();
+    private final AtomicLong pendingSeek = new AtomicLong(-1);
+    private volatile Runnable onFinish;
+    private volatile double speed = 1;
+    private volatile int transpose = 0;
+    private volatile double pitchFactor = 1;
+    private volatile Mixer mixer = Mixer.DEFAULT;
+    private volatile Unheard unheard = Unheard.SKIP;
+    private volatile boolean suspended, held;
+    private volatile long resumeFrom = 0; // position to continue from when next (re)started
+    private volatile Anchor anchor;
+    private int noteIndex = 0; // only touched by the sequencer
+
+    /**
+     * Creates a new idle playback session.
+     *
+     * @param timeline to play
+     * @param sequencer to be advanced by
+     * @param sink to play to
+     */
+    public Playback(Timeline timeline, Sequencer sequencer, SoundSink sink) {
+        this.timeline = timeline;
+        this.sequencer = sequencer;
+        this.sink = sink;
+        this.duration = timeline.getMillisAt(timeline.getLength());
+    }
+
+    /**
+     * Sets a callback to run once the end of the timeline is reached or {@link #finish()} is called.
+     *
+     * @param onFinish callback
+     * @return this
+     */
+    public Playback onFinish(Runnable onFinish) {
+        this.onFinish = onFinish;
+        return this;
+    }
+
+    /**
+     * Returns the {@link Timeline} this session plays.
+     *
+     * @return timeline
+     */
+    public Timeline getTimeline() {
+        return timeline;
+    }
+
+    /**
+     * Returns the current state of this session.
+     *
+     * @return state
+     */
+    public State getState() {
+        return state.get();
+    }
+
+    /**
+     * Returns true if this session is currently playing.
+     *
+     * @return true if playing
+     */
+    public boolean isPlaying() {
+        return state.get() == State.PLAYING;
+    }
+
+    /**
+     * Returns the speed of this session where 1 is the tempo of the score.
+     *
+     * @return speed
+     */
+    public double getSpeed() {
+        return speed;
+    }
+
+    /**
+     * Sets the speed of this session where 1 is the tempo of the score. Takes effect immediately when playing.
+     *
+     * @param speed to play at
+     * @return this
+     */
+    public Playback setSpeed(double speed) {
+        if (!(speed > 0) || Double.isInfinite(speed))
+            throw new IllegalArgumentException("speed must be positive: " + speed);
+        long position = getPosition();
+        this.speed = speed;
+        if (state.get() == State.PLAYING) {
+            // continue at the new rate from where we are now
+            resumeFrom = position;
+            wake();
+        }
+        return this;
+    }
+
+    /**
+     * Returns the amount of semitones the notes of this session are moved by.
+     *
+     * @return semitones
+     */
+    public int getTranspose() {
+        return transpose;
+    }
+
+    /**
+     * Moves the notes of this session by the specified amount of semitones. Pitches moved out of the range Minecraft
+     * can play are clamped to it.
+     *
+     * @param semitones to move notes by, negative to move down
+     * @return this
+     */
+    public Playback setTranspose(int semitones) {
+        transpose = semitones;
+        pitchFactor = Pitch.transposeFactor(semitones);
+        return this;
+    }
+
+    /**
+     * Returns the {@link Mixer} notes are played through.
+     *
+     * @return mixer
+     */
+    public Mixer getMixer() {
+        return mixer;
+    }
+
+    /**
+     * Sets the {@link Mixer} notes are played through. Takes effect from the next note.
+     *
+     * @param mixer to play through
+     * @return this
+     */
+    public Playback setMixer(Mixer mixer) {
+        this.mixer = mixer;
+        return this;
+    }
+
+    /**
+     * Returns what this session does while nobody can hear it.
+     *
+     * @return unheard policy
+     */
+    public Unheard getUnheard() {
+        return unheard;
+    }
+
+    /**
+     * Sets what this session does while nobody can hear it. The default is {@link Unheard#SKIP}.
+     *
+     * @param unheard policy
+     * @return this
+     */
+    public Playback setUnheard(Unheard unheard) {
+        this.unheard = unheard;
+        return this;
+    }
+
+    /**
+     * Returns true if this session is playing but suspended because nobody can hear it.
+     *
+     * @return true if suspended
+     */
+    public boolean isSuspended() {
+        return suspended && state.get() == State.PLAYING;
+    }
+
+    /**
+     * Starts or resumes playing. Does nothing if already playing or finished.
+     *
+     * @return true if this call started playback
+     */
+    public boolean play() {
+        if (!state.compareAndSet(State.IDLE, State.PLAYING) && !state.compareAndSet(State.PAUSED, State.PLAYING))
+            return false;
+        wake();
+        return true;
+    }
+
+    /**
+     * Pauses playback at the current position.
+     *
+     * @return true if this call paused playback
+     */
+    public boolean pause() {
+        long position = getPosition();
+        if (!state.compareAndSet(State.PLAYING, State.PAUSED))
+            return false;
+        resumeFrom = position;
+        generation.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Stops playback for good and runs the finish callback.
+     */
+    public void finish() {
+        if (end()) {
+            Runnable callback = onFinish;
+            if (callback != null)
+                callback.run();
+        }
+    }
+
+    /**
+     * Stops playback for good without running the finish callback.
+     */
+    public void stop() {
+        end();
+    }
+
+    /**
+     * Moves playback to the specified time from the start. The position is looked up on the {@link Timeline} so
+     * seeking costs the same anywhere in the score. If paused, the new position takes effect when resumed.
+     *
+     * @param millis time from start
+     */
+    public void seek(long millis) {
+        pendingSeek.set(Math.max(0, Math.min(duration, millis)));
+        if (state.get() == State.PLAYING)
+            wake();
+    }
+
+    /**
+     * Returns the current playback position.
+     *
+     * @return time from start in milliseconds
+     */
+    public long getPosition() {
+        long seek = pendingSeek.get();
+        if (seek >= 0)
+            return seek;
+        Anchor current = anchor;
+        if (held)
+            return resumeFrom;
+        if (state.get() == State.PLAYING && current != null && current.generation == generation.get())
+            return Math.min(duration, (long) current.positionAt(sequencer.getClock().millis()));
+        return resumeFrom;
+    }
+
+    /**
+     * Returns the region of this session's sink, which decides the shard it is advanced in.
+     */
+    Object getRegion() {
+        return sink.getRegion();
+    }
+
+    private void wake() {
+        sequencer.submit(this, generation.incrementAndGet());
+    }
+
+    private boolean end() {
+        if (state.getAndSet(State.FINISHED) == State.FINISHED)
+            return false;
+        generation.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Plays every note that is due by the specified time. Only called by the {@link Sequencer}.
+     *
+     * @param gen generation the sequencer knows this session by
+     * @param now current time
+     * @return time the next note is due, or -1 if the sequencer should drop this session
+     */
+    long advance(int gen, long now) {
+        if (gen != generation.get() || state.get() != State.PLAYING)
+            return -1;
+        Mixer mix = mixer;
+        boolean heard = !mix.isSilent() && sink.hasAudience();
+        Anchor current = anchor;
+        if (current == null || current.generation != gen || held && (heard || unheard != Unheard.HOLD)) {
+            // (re)started, seeked, changed speed or held until now since last advanced
+            long from = resumeFrom;
+            long seek = pendingSeek.getAndSet(-1);
+            if (seek >= 0) {
+                from = seek;
+                noteIndex = timeline.indexOf(timeline.getStepAt(seek));
+            }
+            anchor = current = new Anchor(gen, now, from, speed);
+            held = false;
+        }
+        boolean wasSuspended = suspended;
+        suspended = !heard;
+
+        if (!heard && unheard == Unheard.HOLD) {
+            if (!held) {
+                resumeFrom = Math.min(duration, (long) current.positionAt(now));
+                held = true;
+            }
+            return now + AUDIENCE_CHECK_MILLIS;
+        }
+
+        int step = timeline.getStepAt((long) current.positionAt(now));
+        if (!heard) {
+            // let the notes pass by unplayed, only the end of the timeline or the audience coming back matter
+            noteIndex = Math.max(noteIndex, timeline.indexOf(step + 1));
+            if (step < timeline.getLength())
+                return Math.min(now + AUDIENCE_CHECK_MILLIS, current.timeAt(duration));
+        } else if (wasSuspended)
+            noteIndex = Math.max(noteIndex, timeline.indexOf(step)); // back in earshot, start from what is due now
+        double factor = pitchFactor;
+        while (noteIndex < timeline.size() && timeline.getStep(noteIndex) <= step) {
+            int index = noteIndex++;
+            double volume = mix.getVolume(timeline.getInstrument(index));
+            if (volume > 0)
+                timeline.play(index, sink, volume, factor);
+        }
+
+        if (noteIndex < timeline.size())
+            return current.timeAt(timeline.getMillisAt(timeline.getStep(noteIndex)));
+        if (step < timeline.getLength())
+            return current.timeAt(duration);
+        resumeFrom = duration;
+        finish();
+        return -1;
+    }
+
+    /**
+     * Ties a position in the score to a point in time, from which the session moves at a fixed speed.
+     */
+    private static final class Anchor {
+        private final int generation;
+        private final long millis;
+        private final double position;
+        private final double speed;
+
+        private Anchor(int generation, long millis, double position, double speed) {
+            this.generation = generation;
+            this.millis = millis;
+            this.position = position;
+            this.speed = speed;
+        }
+
+        private double positionAt(long time) {
+            return position + (time - millis) * speed;
+        }
+
+        private long timeAt(double targetPosition) {
+            return millis + (long) Math.ceil((targetPosition - position) / speed);
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package se.walkercrou.composer.engine;
+
+/**
+ * A task scheduled with a {@link Clock}.
+ */
+@FunctionalInterface
+public interface ScheduledTask {
+    /**
+     * Stops the task from running again.
+     */
+    void cancel();
+}
@@ -0,0 +1,359 @@
+package se.walkercrou.composer.engine;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BiConsumer;
+
+/**
+ * Drives any number of {@link Playback} sessions from a single task on a {@link Clock}. Sessions are kept in a
+ * priority queue by the time their next note is due, so a session only does work when it has something to play:
+ * the gaps between notes, however long, cost nothing. The task itself checks the head of the queue every
+ * {@link #getResolutionMillis()} milliseconds.
+ * <p>
+ * Sessions are only ever advanced on the sequencer's task. Changes to a session made from other threads reach the
+ * sequencer through a concurrent inbox and take effect on its next run.
+ * <p>
+ * A sequencer may be split into shards, each with its own queue, by the {@link SoundSink#getRegion() region} the
+ * sessions play in. A region is given to the shard with the fewest regions the first time one of its sessions is seen,
+ * and stays there until its last session is done. Every run advances the shards that have a session due in parallel,
+ * one of them on the task itself and the rest on an executor, and waits for all of them before it returns, so a run
+ * never overlaps the next one.
+ * Within a shard sessions are advanced in the same order as without sharding, and since a listener only hears one
+ * region the notes reaching any listener keep their order.
+ * <p>
+ * A session that throws while it is advanced, for example because its {@link SoundSink} failed, is finished and
+ * reported to the {@link #onError error handler}. The other sessions of the run are advanced as usual.
+ */
+public class Sequencer {
+    /**
+     * The default time between checks for due sessions.
+     */
+    public static final long DEFAULT_RESOLUTION_MILLIS = 5;
+
+    private final Clock clock;
+    private final long resolutionMillis;
+    private final Shard[] shards;
+    // only changed while routing the inbox, before any shard of the run is advanced
+    private final Map<Object, Region> regions = new HashMap<>();
+    private final Executor executor;
+    private final Queue<Entry> inbox = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean started = new AtomicBoolean();
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final AtomicInteger pendingShards = new AtomicInteger();
+    private volatile Thread runner; // waiting for the shards of the current run
+    private volatile ScheduledTask task;
+    private volatile BiConsumer<Playback, RuntimeException> errorHandler = (playback, e) -> {
+    };
+
+    /**
+     * Creates a new sequencer on the specified clock with the default resolution.
+     *
+     * @param clock to run on
+     */
+    public Sequencer(Clock clock) {
+        this(clock, DEFAULT_RESOLUTION_MILLIS);
+    }
+
+    /**
+     * Creates a new sequencer on the specified clock.
+     *
+     * @param clock to run on
+     * @param resolutionMillis time between checks for due sessions
+     */
+    public Sequencer(Clock clock, long resolutionMillis) {
+        this(clock, resolutionMillis, 1, null);
+    }
+
+    /**
+     * Creates a new sequencer on the specified clock that advances its sessions in the specified amount of shards.
+     *
+     * @param clock to run on
+     * @param resolutionMillis time between checks for due sessions
+     * @param shards amount of shards, 1 advances every session on the sequencer's task
+     * @param executor to advance all but one due shard on, only used with more than one shard
+     */
+    public Sequencer(Clock clock, long resolutionMillis, int shards, Executor executor) {
+        if (resolutionMillis <= 0)
+            throw new IllegalArgumentException("resolution must be positive");
+        if (shards < 1)
+            throw new IllegalArgumentException("there must be at least one shard");
+        if (shards > 1 && executor == null)
+            throw new IllegalArgumentException("an executor is required to run more than one shard");
+        this.clock = clock;
+        this.resolutionMillis = resolutionMillis;
+        this.shards = new Shard[shards];
+        for (int i = 0; i < shards; i++)
+            this.shards[i] = new Shard();
+        this.executor = executor;
+    }
+
+    /**
+     * Returns the clock this sequencer runs on.
+     *
+     * @return clock
+     */
+    public Clock getClock() {
+        return clock;
+    }
+
+    /**
+     * Returns the time between checks for due sessions.
+     *
+     * @return resolution in milliseconds
+     */
+    public long getResolutionMillis() {
+        return resolutionMillis;
+    }
+
+    /**
+     * Returns the amount of shards sessions are advanced in.
+     *
+     * @return amount of shards
+     */
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    /**
+     * Sets a handler to call with every session that threw while it was advanced, and the exception it threw. The
+     * session is finished by then. Called on the thread that advanced the session.
+     *
+     * @param errorHandler handler
+     * @return this
+     */
+    public Sequencer onError(BiConsumer<Playback, RuntimeException> errorHandler) {
+        this.errorHandler = errorHandler;
+        return this;
+    }
+
+    /**
+     * Stops this sequencer. Sessions submitted afterwards are not advanced.
+     */
+    public void stop() {
+        started.set(true);
+        ScheduledTask current = task;
+        if (current != null)
+            current.cancel();
+    }
+
+    /**
+     * Has the specified session advanced as soon as possible under the specified generation.
+     */
+    void submit(Playback playback, int generation) {
+        inbox.add(new Entry(playback, generation, clock.millis()));
+        if (started.compareAndSet(false, true))
+            task = clock.schedule(this::run, resolutionMillis, "Composer sequencer");
+    }
+
+    private void run() {
+        if (!running.compareAndSet(false, true))
+            return; // a previous run is still going
+        try {
+            for (Shard shard : shards) {
+                for (Object region : shard.finished)
+                    release(region);
+                shard.finished.clear();
+            }
+            Entry entry;
+            while ((entry = inbox.poll()) != null)
+                assignShard(entry).queue.add(entry);
+            long now = clock.millis();
+            if (shards.length == 1) {
+                shards[0].advance(now);
+                return;
+            }
+
+            // every due shard but the first goes to the executor, the first is advanced here
+            runner = Thread.currentThread();
+            Shard first = null;
+            try {
+                for (Shard shard : shards) {
+                    if (!shard.isDue(now))
+                        continue;
+                    if (first == null) {
+                        first = shard;
+                        continue;
+                    }
+                    shard.now = now;
+                    pendingShards.incrementAndGet();
+                    try {
+                        executor.execute(shard);
+                    } catch (RejectedExecutionException e) {
+                        pendingShards.decrementAndGet();
+                        shard.advance(now);
+                    }
+                }
+                if (first != null)
+                    first.advance(now);
+            } finally {
+                // the barrier: nothing is advanced again until every shard of this run is done
+                while (pendingShards.get() > 0)
+                    LockSupport.park(this);
+            }
+            // only the error handler can fail a shard, every failure of this run is reported together
+            RuntimeException failure = null;
+            for (Shard shard : shards) {
+                if (shard.failure == null)
+                    continue;
+                if (failure == null)
+                    failure = shard.failure;
+                else
+                    failure.addSuppressed(shard.failure);
+                shard.failure = null;
+            }
+            if (failure != null)
+                throw failure;
+        } finally {
+            running.set(false);
+        }
+    }
+
+    // the shard of the session's region, a new region goes to the shard with the fewest so they are spread evenly. The
+    // entry is counted as a session of its region until it is done or moves to another one
+    private Shard assignShard(Entry entry) {
+        if (shards.length == 1)
+            return shards[0];
+        Object region = entry.playback.getRegion();
+        if (entry.region != null && !entry.region.equals(region)) {
+            release(entry.region);
+            entry.region = null;
+        }
+        if (region == null)
+            return shards[0];
+        Region assigned = regions.get(region);
+        if (assigned == null) {
+            Shard shard = shards[0];
+            for (Shard candidate : shards) {
+                if (candidate.regions < shard.regions)
+                    shard = candidate;
+            }
+            shard.regions++;
+            assigned = new Region(shard);
+            regions.put(region, assigned);
+        }
+        if (entry.region == null) {
+            entry.region = region;
+            assigned.sessions++;
+        }
+        return assigned.shard;
+    }
+
+    // forgets a region once its last session is done, so that it no longer counts against its shard
+    private void release(Object region) {
+        Region assigned = regions.get(region);
+        if (--assigned.sessions > 0)
+            return;
+        regions.remove(region);
+        assigned.shard.regions--;
+    }
+
+    // whether the session still plays in the region it is counted in, and so belongs to the shard it is on
+    private boolean isInRegion(Entry entry) {
+        if (shards.length == 1)
+            return true;
+        Object region = entry.playback.getRegion();
+        return region == null ? entry.region == null : region.equals(entry.region);
+    }
+
+    /**
+     * The sessions of the regions assigned to the same shard, ordered by the time their next note is due. A shard is
+     * only touched by one thread at a time.
+     */
+    private final class Shard implements Runnable {
+        private final PriorityQueue<Entry> queue = new PriorityQueue<>((a, b) -> Long.compare(a.due, b.due));
+        private final List<Object> finished = new ArrayList<>(); // regions of the sessions done since the last run
+        private int regions; // assigned to this shard
+        private long now;
+        private RuntimeException failure;
+
+        private boolean isDue(long now) {
+            Entry entry = queue.peek();
+            return entry != null && entry.due <= now;
+        }
+
+        private void advance(long now) {
+            Entry entry;
+            while ((entry = queue.peek()) != null && entry.due <= now) {
+                queue.poll();
+                long next;
+                try {
+                    next = entry.playback.advance(entry.generation, now);
+                } catch (RuntimeException e) {
+                    fail(entry.playback, e);
+                    next = -1;
+                }
+                if (next < 0) {
+                    if (entry.region != null)
+                        finished.add(entry.region); // released by the next run, which may change the regions
+                    continue;
+                }
+                entry.due = Math.max(next, now + 1);
+                if (isInRegion(entry))
+                    queue.add(entry);
+                else
+                    inbox.add(entry); // moved to another region, picked up by the next run
+            }
+        }
+
+        // finishes a session that threw, so that whoever started it moves on rather than waiting for it forever
+        private void fail(Playback playback, RuntimeException e) {
+            try {
+                playback.finish();
+            } catch (RuntimeException callback) {
+                e.addSuppressed(callback);
+            }
+            errorHandler.accept(playback, e);
+        }
+
+        @Override
+        public void run() {
+            try {
+                advance(now);
+            } catch (RuntimeException e) {
+                failure = e;
+            } finally {
+                if (pendingShards.decrementAndGet() == 0)
+                    LockSupport.unpark(runner);
+            }
+        }
+    }
+
+    /**
+     * A region that has sessions, and the shard they are advanced on.
+     */
+    private static final class Region {
+        private final Shard shard;
+        private int sessions;
+
+        private Region(Shard shard) {
+            this.shard = shard;
+        }
+    }
+
+    /**
+     * A session in the queue. Entries are reused while a session plays so that steady state playback does not
+     * allocate.
+     */
+    private static final class Entry {
+        private final Playback playback;
+        private final int generation;
+        private long due;
+        private Object region; // counted in, null when not counted
+
+        private Entry(Playback playback, int generation, long due) {
+            this.playback = playback;
+            this.generation = generation;
+            this.due = due;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package se.walkercrou.composer.engine;
+
+import java.util.PriorityQueue;
+
+/**
+ * A {@link Clock} whose time only moves when {@link #advance(long)} is called. Tasks run on the calling thread in the
+ * order they are due, which makes it possible to drive playback headlessly and much faster than real time.
+ */
+public class SimulatedClock implements Clock {
+    private final PriorityQueue<Entry> queue = new PriorityQueue<>();
+    private long now = 0;
+    private long sequence = 0;
+
+    @Override
+    public long millis() {
+        return now;
+    }
+
+    @Override
+    public ScheduledTask schedule(Runnable task, long intervalMillis, String name) {
+        if (intervalMillis <= 0)
+            throw new IllegalArgumentException("interval must be positive");
+        Entry entry = new Entry(task, intervalMillis, now + intervalMillis, sequence++);
+        queue.add(entry);
+        return () -> entry.cancelled = true;
+    }
+
+    /**
+     * Moves time forward by the specified amount, running every task that becomes due on the way.
+     *
+     * @param millis time to advance by
+     */
+    public void advance(long millis) {
+        long target = now + millis;
+        Entry entry;
+        while ((entry = queue.peek()) != null && entry.next <= target) {
+            queue.poll();
+            if (entry.cancelled)
+                continue;
+            now = entry.next;
+            entry.task.run();
+            if (!entry.cancelled) {
+                entry.next += entry.interval;
+                entry.sequence = sequence++;
+                queue.add(entry);
+            }
+        }
+        now = target;
+    }
+
+    /**
+     * Returns the amount of tasks that are still scheduled.
+     *
+     * @return amount of tasks
+     */
+    public int getTaskCount() {
+        int count = 0;
+        for (Entry entry : queue) {
+            if (!entry.cancelled)
+                count++;
+        }
+        return count;
+    }
+
+    private static class Entry implements Comparable<Entry> {
+        private final Runnable task;
+        private final long interval;
+        private long next;
+        private long sequence;
+        private volatile boolean cancelled;
+
+        private Entry(Runnable task, long interval, long next, long sequence) {
+            this.task = task;
+            this.interval = interval;
+            this.next = next;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            int c = Long.compare(next, other.next);
+            return c != 0 ? c : Long.compare(sequence, other.sequence);
+        }
+    }
+}
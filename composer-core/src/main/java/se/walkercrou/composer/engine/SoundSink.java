@@ -0,0 +1,42 @@
+package se.walkercrou.composer.engine;
+
+import se.walkercrou.composer.Instrument;
+
+/**
+ * Receives the sounds emitted by a playing {@link se.walkercrou.composer.Score}. Implementations decide who hears the
+ * sound and where it is played.
+ */
+public interface SoundSink {
+    /**
+     * Plays the specified sound.
+     *
+     * @param instrument to play
+     * @param volume to play at
+     * @param pitch "Minecraft" pitch to play at
+     * @see se.walkercrou.composer.Pitch
+     */
+    void playNote(Instrument instrument, double volume, double pitch);
+
+    /**
+     * Returns true if anyone can currently hear the sounds played to this sink. A {@link Playback} whose sink has no
+     * audience stops playing notes and only checks back every {@link Playback#AUDIENCE_CHECK_MILLIS}, so this is
+     * called from the {@link Sequencer}'s thread and must be cheap.
+     *
+     * @return true if there is an audience
+     */
+    default boolean hasAudience() {
+        return true;
+    }
+
+    /**
+     * Returns the part of the server the sounds of this sink are heard in, like a world. A {@link Sequencer} with
+     * more than one shard advances sessions of different regions in parallel, so nobody may be able to hear sinks of
+     * two regions at once. This is called from the sequencer's threads every time a session is advanced and must be
+     * cheap.
+     *
+     * @return region, or null if it does not matter
+     */
+    default Object getRegion() {
+        return null;
+    }
+}
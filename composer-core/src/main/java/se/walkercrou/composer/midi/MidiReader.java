@@ -0,0 +1,418 @@
+package se.walkercrou.composer.midi;
+
+import se.walkercrou.composer.Instrument;
+import se.walkercrou.composer.Pitch;
+import se.walkercrou.composer.Score;
+import se.walkercrou.composer.TimeSignature;
+import se.walkercrou.composer.Timeline;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Imports Standard MIDI Files (.mid) as a {@link Score}. The file is memory mapped and its events are streamed straight
+ * into a {@link Timeline}, so no object is created per event. General MIDI programs are mapped onto the note block
+ * {@link Instrument}s, the percussion channel onto the drums, and every key is folded into the two octaves Minecraft
+ * can play.
+ *
+ * @see <a href="https://www.midi.org/specifications">https://www.midi.org/specifications</a>
+ */
+public final class MidiReader {
+    /**
+     * Default length of a step in milliseconds that note timings are rounded to.
+     */
+    public static final int DEFAULT_STEP_MILLIS = 25;
+
+    private static final int MTHD = 0x4d546864;
+    private static final int MTRK = 0x4d54726b;
+    private static final int DRUM_CHANNEL = 9;
+    private static final int DEFAULT_TEMPO = 500_000; // microseconds per quarter note, 120 bpm
+    private static final int MIDI_KEY_A0 = 21;
+    private static final int MAX_TEMPO_CHANGES = 1 << 20;
+
+    private final ByteBuffer buffer;
+    private final long microsPerStep;
+    private final long limitMicros; // events after this are not read, Long.MAX_VALUE to read everything
+    private final Timeline.Builder timeline = new Timeline.Builder();
+    private int division;
+    private String title;
+    private TimeSignature time;
+
+    // tempo map, sorted by tick
+    private long[] tempoTicks = new long[8];
+    private int[] tempos = new int[8];
+    private long[] tempoMicros;
+    private int tempoCount = 0;
+
+    // channel state of the track being read
+    private final int[] programs = new int[16];
+    private final int[] volumes = new int[16];
+    private int lastStep = 0;
+
+    private MidiReader(ByteBuffer buffer, int stepMillis, long limitMicros) {
+        this.buffer = buffer;
+        this.microsPerStep = stepMillis * 1000L;
+        this.limitMicros = limitMicros;
+    }
+
+    /**
+     * Reads the specified MIDI file.
+     *
+     * @param file to read
+     * @return score
+     * @throws IOException if the file could not be read or is not a valid MIDI file
+     */
+    public static Score read(File file) throws IOException {
+        return read(file, DEFAULT_STEP_MILLIS);
+    }
+
+    /**
+     * Reads the specified MIDI file, rounding note timings to steps of the specified length.
+     *
+     * @param file to read
+     * @param stepMillis length of a step in milliseconds
+     * @return score
+     * @throws IOException if the file could not be read or is not a valid MIDI file
+     */
+    public static Score read(File file, int stepMillis) throws IOException {
+        if (!file.exists())
+            throw new FileNotFoundException();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            Score score = read(buffer, stepMillis);
+            if (score.getTitle() != null)
+                return score;
+            String name = file.getName();
+            int dot = name.lastIndexOf('.');
+            return new Score.Builder()
+                    .title(dot == -1 ? name : name.substring(0, dot))
+                    .tempo(score.getTempo())
+                    .time(score.getTime())
+                    .timeline(score.getTimeline())
+                    .build();
+        }
+    }
+
+    /**
+     * Reads MIDI file data from the specified buffer, rounding note timings to steps of the specified length.
+     *
+     * @param buffer MIDI file data
+     * @param stepMillis length of a step in milliseconds
+     * @return score
+     * @throws IOException if the data is not a valid MIDI file
+     */
+    public static Score read(ByteBuffer buffer, int stepMillis) throws IOException {
+        return read(buffer, stepMillis, Long.MAX_VALUE);
+    }
+
+    /**
+     * Reads only the first seconds of MIDI file data from the specified buffer. Every track is left as soon as its
+     * events are past the preview, so a preview costs the same however long the file is. Tempo changes are only
+     * taken from the first track, where format 0 and 1 files keep them.
+     *
+     * @param buffer MIDI file data
+     * @param stepMillis length of a step in milliseconds
+     * @param seconds to read
+     * @return start of score
+     * @throws IOException if the data is not a valid MIDI file
+     */
+    public static Score readPreview(ByteBuffer buffer, int stepMillis, double seconds) throws IOException {
+        if (seconds < 0)
+            throw new IllegalArgumentException("seconds must not be negative");
+        return read(buffer, stepMillis, (long) Math.min(Long.MAX_VALUE - 1, seconds * 1_000_000));
+    }
+
+    private static Score read(ByteBuffer buffer, int stepMillis, long limitMicros) throws IOException {
+        if (stepMillis <= 0)
+            throw new IllegalArgumentException("step must be positive");
+        try {
+            return new MidiReader(buffer.duplicate(), stepMillis, limitMicros).read();
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("Malformed MIDI file", e);
+        }
+    }
+
+    private Score read() throws IOException {
+        if (buffer.remaining() < 14 || buffer.getInt() != MTHD)
+            throw new IOException("Not a MIDI file");
+        int headerLength = buffer.getInt();
+        int headerStart = buffer.position();
+        buffer.getShort(); // format, tracks are merged regardless
+        buffer.getShort(); // track count, chunks are read until the end of the file
+        division = buffer.getShort();
+        if (division == 0)
+            throw new IOException("Invalid time division");
+        buffer.position(headerStart + headerLength);
+        int tracksStart = buffer.position();
+
+        // first pass only picks up the tempo map so that the second can time notes as they are read
+        readTracks(false);
+        buildTempoMap();
+        buffer.position(tracksStart);
+        readTracks(true);
+
+        int tempo = tempoCount == 0 ? DEFAULT_TEMPO : tempos[0];
+        int stepsPerBeat = (int) Math.max(1, Math.round(tempo / (double) microsPerStep));
+        return new Score.Builder()
+                .title(title)
+                .tempo((int) Math.round(60_000_000d / tempo))
+                .time(time == null ? TimeSignature.COMMON : time)
+                .timeline(timeline.build(stepsPerBeat, microsPerStep / 1000d, lastStep + stepsPerBeat))
+                .build();
+    }
+
+    private void readTracks(boolean notes) throws IOException {
+        int track = 0;
+        while (buffer.remaining() >= 8) {
+            int id = buffer.getInt();
+            int length = buffer.getInt();
+            if (length < 0 || length > buffer.remaining())
+                throw new IOException("Chunk extends past the end of the file");
+            int end = buffer.position() + length;
+            if (id == MTRK) {
+                if (notes || limitMicros == Long.MAX_VALUE || track == 0)
+                    readTrack(end, track, notes);
+                track++;
+            }
+            buffer.position(end);
+        }
+    }
+
+    private void readTrack(int end, int track, boolean notes) throws IOException {
+        Arrays.fill(programs, 0);
+        Arrays.fill(volumes, 100);
+        long tick = 0;
+        long micros = 0;
+        int status = 0;
+        while (buffer.position() < end) {
+            int delta = readVarLen();
+            tick += delta;
+            if (limitMicros != Long.MAX_VALUE) {
+                // while the tempo changes are read only the first track is, its changes come in order and the time
+                // is kept as it goes
+                if (notes || division < 0)
+                    micros = ticksToMicros(tick);
+                else
+                    micros += delta * (long) currentTempo() / division;
+                if (micros > limitMicros)
+                    return;
+            }
+            int b = buffer.get() & 0xff;
+
+            if (b == 0xff) {
+                int type = buffer.get() & 0xff;
+                int length = readVarLen();
+                int next = buffer.position() + length;
+                if (next > end)
+                    throw new IOException("Event extends past the end of the track");
+                if (!notes)
+                    readMeta(type, length, tick, track);
+                buffer.position(next);
+                if (type == 0x2f)
+                    return; // end of track
+                continue;
+            } else if (b == 0xf0 || b == 0xf7) {
+                buffer.position(buffer.position() + readVarLen()); // system exclusive
+                continue;
+            } else if (b > 0xf0) {
+                continue; // system common and real time messages carry no data we need
+            }
+
+            int data1;
+            if (b < 0x80) {
+                // running status, the byte read is the first data byte
+                if (status == 0)
+                    throw new IOException("Data byte without status");
+                data1 = b;
+                b = status;
+            } else {
+                status = b;
+                data1 = buffer.get() & 0xff;
+            }
+            int command = b & 0xf0;
+            int channel = b & 0x0f;
+            int data2 = command == 0xc0 || command == 0xd0 ? 0 : buffer.get() & 0xff;
+            if (!notes)
+                continue;
+
+            switch (command) {
+                case 0x90:
+                    if (data2 > 0)
+                        note(tick, channel, data1, data2);
+                    break;
+                case 0xb0:
+                    if (data1 == 7) // channel volume
+                        volumes[channel] = data2;
+                    break;
+                case 0xc0:
+                    programs[channel] = data1;
+                    break;
+            }
+        }
+    }
+
+    private void readMeta(int type, int length, long tick, int track) throws IOException {
+        switch (type) {
+            case 0x03: // sequence / track name
+                if (track == 0 && title == null && length > 0) {
+                    byte[] name = new byte[length];
+                    buffer.get(name);
+                    title = new String(name, StandardCharsets.ISO_8859_1).trim();
+                }
+                break;
+            case 0x51: // set tempo
+                if (length == 3) {
+                    int tempo = (buffer.get() & 0xff) << 16 | (buffer.get() & 0xff) << 8 | buffer.get() & 0xff;
+                    if (tempo > 0)
+                        addTempo(tick, tempo);
+                }
+                break;
+            case 0x58: // time signature
+                if (time == null && length >= 2) {
+                    int numerator = buffer.get() & 0xff;
+                    int denominator = 1 << Math.min(6, buffer.get() & 0xff);
+                    if (numerator > 0)
+                        time = new TimeSignature(numerator, denominator);
+                }
+                break;
+        }
+    }
+
+    private void note(long tick, int channel, int key, int velocity) {
+        int step = (int) Math.min(Integer.MAX_VALUE, ticksToMicros(tick) / microsPerStep);
+        Instrument instrument = channel == DRUM_CHANNEL ? getDrum(key) : getInstrument(programs[channel]);
+        double volume = velocity / 127d * volumes[channel] / 127d;
+        if (volume == 0)
+            return;
+        timeline.note(step, instrument, Pitch.ofKey(key - MIDI_KEY_A0), volume);
+        lastStep = Math.max(lastStep, step);
+    }
+
+    private void addTempo(long tick, int tempo) throws IOException {
+        if (tempoCount == MAX_TEMPO_CHANGES)
+            throw new IOException("Too many tempo changes");
+        if (tempoCount == tempoTicks.length) {
+            tempoTicks = Arrays.copyOf(tempoTicks, tempoCount * 2);
+            tempos = Arrays.copyOf(tempos, tempoCount * 2);
+        }
+        tempoTicks[tempoCount] = tick;
+        tempos[tempoCount++] = tempo;
+    }
+
+    private int currentTempo() {
+        return tempoCount == 0 ? DEFAULT_TEMPO : tempos[tempoCount - 1];
+    }
+
+    private void buildTempoMap() {
+        // tempo changes may come from any track, sort them by tick packed with the order they were read in
+        boolean sorted = true;
+        for (int i = 1; i < tempoCount; i++)
+            sorted &= tempoTicks[i - 1] <= tempoTicks[i];
+        if (!sorted) {
+            long[] order = new long[tempoCount];
+            for (int i = 0; i < tempoCount; i++)
+                order[i] = tempoTicks[i] << 20 | i;
+            Arrays.sort(order);
+            long[] ticks = new long[tempoCount];
+            int[] values = new int[tempoCount];
+            for (int i = 0; i < tempoCount; i++) {
+                int from = (int) (order[i] & 0xfffff);
+                ticks[i] = tempoTicks[from];
+                values[i] = tempos[from];
+            }
+            tempoTicks = ticks;
+            tempos = values;
+        }
+
+        // the time each tempo starts at
+        tempoMicros = new long[tempoCount];
+        for (int i = 1; i < tempoCount; i++) {
+            tempoMicros[i] = tempoMicros[i - 1]
+                    + (tempoTicks[i] - tempoTicks[i - 1]) * tempos[i - 1] / division;
+        }
+    }
+
+    private long ticksToMicros(long tick) {
+        if (division < 0) {
+            // SMPTE time: frames per second in the upper byte, ticks per frame in the lower
+            int framesPerSecond = -(division >> 8);
+            int ticksPerFrame = division & 0xff;
+            return tick * 1_000_000 / Math.max(1, framesPerSecond * ticksPerFrame);
+        }
+
+        // find the last tempo change at or before the tick
+        int low = 0, high = tempoCount - 1, index = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (tempoTicks[mid] <= tick) {
+                index = mid;
+                low = mid + 1;
+            } else
+                high = mid - 1;
+        }
+        if (index == -1)
+            return tick * (tempoCount == 0 ? DEFAULT_TEMPO : tempos[0]) / division;
+        return tempoMicros[index] + (tick - tempoTicks[index]) * tempos[index] / division;
+    }
+
+    private int readVarLen() throws IOException {
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+            int b = buffer.get() & 0xff;
+            value = value << 7 | b & 0x7f;
+            if ((b & 0x80) == 0)
+                return value;
+        }
+        throw new IOException("Variable length quantity longer than four bytes");
+    }
+
+    private static Instrument getInstrument(int program) {
+        if (program >= 32 && program <= 39)
+            return Instrument.BASS; // basses
+        switch (program) {
+            case 43: // contrabass
+            case 58: // tuba
+            case 70: // bassoon
+                return Instrument.BASS;
+            case 115: // woodblock
+                return Instrument.PLING;
+            case 116: // taiko drum
+            case 117: // melodic tom
+                return Instrument.BASEDRUM;
+            case 118: // synth drum
+                return Instrument.SNARE;
+            default:
+                // chromatic percussion (8 - 15) is tuned and plays melodies, so it goes with the pianos rather than
+                // with the drums that can be turned off
+                return Instrument.HARP;
+        }
+    }
+
+    private static Instrument getDrum(int key) {
+        switch (key) {
+            case 35: // acoustic bass drum
+            case 36: // bass drum
+            case 41: // low floor tom
+            case 43: // high floor tom
+            case 45: // low tom
+            case 47: // low-mid tom
+            case 48: // hi-mid tom
+            case 50: // high tom
+                return Instrument.BASEDRUM;
+            case 37: // side stick
+            case 38: // acoustic snare
+            case 39: // hand clap
+            case 40: // electric snare
+                return Instrument.SNARE;
+            default:
+                return Instrument.PLING; // hi-hats, cymbals and the rest of the kit
+        }
+    }
+}
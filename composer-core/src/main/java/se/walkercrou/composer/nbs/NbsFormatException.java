@@ -0,0 +1,70 @@
+package se.walkercrou.composer.nbs;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a .nbs file is malformed or goes over the {@link NbsLimits} it is read with.
+ */
+public class NbsFormatException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * What is wrong with a file.
+     */
+    public enum Problem {
+        /**
+         * The file ends before the song does.
+         */
+        TRUNCATED,
+        /**
+         * The file is larger than allowed.
+         */
+        FILE_TOO_LARGE,
+        /**
+         * The tempo or time signature cannot be played.
+         */
+        INVALID_HEADER,
+        /**
+         * The song has more layers than allowed, or a negative amount.
+         */
+        TOO_MANY_LAYERS,
+        /**
+         * The song is longer than allowed, or has a negative length.
+         */
+        TOO_LONG,
+        /**
+         * The song has more note blocks than allowed.
+         */
+        TOO_MANY_NOTES,
+        /**
+         * A string is longer than allowed, or has a negative length.
+         */
+        STRING_TOO_LONG,
+        /**
+         * A note block is placed outside of the layers or ticks the header declares.
+         */
+        NOTE_OUT_OF_BOUNDS
+    }
+
+    private final Problem problem;
+
+    /**
+     * Creates a new exception.
+     *
+     * @param problem with the file
+     * @param message describing the problem
+     */
+    public NbsFormatException(Problem problem, String message) {
+        super(message);
+        this.problem = problem;
+    }
+
+    /**
+     * Returns what is wrong with the file.
+     *
+     * @return problem
+     */
+    public Problem getProblem() {
+        return problem;
+    }
+}
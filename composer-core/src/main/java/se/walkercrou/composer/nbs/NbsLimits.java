@@ -0,0 +1,119 @@
+package se.walkercrou.composer.nbs;
+
+/**
+ * The largest .nbs file {@link NoteBlockStudioSong} will read. The header of a file decides how much is allocated
+ * for it, so anything it claims is checked against these limits before it is trusted. Limits are immutable, the
+ * {@code with} methods return changed copies.
+ */
+public final class NbsLimits {
+    /**
+     * Limits that comfortably fit any song made in Note Block Studio.
+     */
+    public static final NbsLimits DEFAULT = new NbsLimits(16 * 1024 * 1024, 512, Short.MAX_VALUE, 1000000, 32768);
+
+    private final int maxFileSize;
+    private final int maxLayers;
+    private final int maxTicks;
+    private final int maxNotes;
+    private final int maxStringLength;
+
+    private NbsLimits(int maxFileSize, int maxLayers, int maxTicks, int maxNotes, int maxStringLength) {
+        if (maxFileSize < 0 || maxLayers < 0 || maxTicks < 0 || maxNotes < 0 || maxStringLength < 0)
+            throw new IllegalArgumentException("limits must not be negative");
+        this.maxFileSize = maxFileSize;
+        this.maxLayers = maxLayers;
+        this.maxTicks = maxTicks;
+        this.maxNotes = maxNotes;
+        this.maxStringLength = maxStringLength;
+    }
+
+    /**
+     * Returns the largest file, uncompressed, in bytes.
+     *
+     * @return max file size
+     */
+    public int getMaxFileSize() {
+        return maxFileSize;
+    }
+
+    /**
+     * Returns the most layers a song may have.
+     *
+     * @return max layers
+     */
+    public int getMaxLayers() {
+        return maxLayers;
+    }
+
+    /**
+     * Returns the longest a song may be in ticks.
+     *
+     * @return max ticks
+     */
+    public int getMaxTicks() {
+        return maxTicks;
+    }
+
+    /**
+     * Returns the most note blocks a song may have.
+     *
+     * @return max notes
+     */
+    public int getMaxNotes() {
+        return maxNotes;
+    }
+
+    /**
+     * Returns the longest a string in the file, like the song name, may be.
+     *
+     * @return max string length
+     */
+    public int getMaxStringLength() {
+        return maxStringLength;
+    }
+
+    /**
+     * @see #getMaxFileSize()
+     * @param maxFileSize to set
+     * @return changed limits
+     */
+    public NbsLimits withMaxFileSize(int maxFileSize) {
+        return new NbsLimits(maxFileSize, maxLayers, maxTicks, maxNotes, maxStringLength);
+    }
+
+    /**
+     * @see #getMaxLayers()
+     * @param maxLayers to set
+     * @return changed limits
+     */
+    public NbsLimits withMaxLayers(int maxLayers) {
+        return new NbsLimits(maxFileSize, maxLayers, maxTicks, maxNotes, maxStringLength);
+    }
+
+    /**
+     * @see #getMaxTicks()
+     * @param maxTicks to set
+     * @return changed limits
+     */
+    public NbsLimits withMaxTicks(int maxTicks) {
+        return new NbsLimits(maxFileSize, maxLayers, maxTicks, maxNotes, maxStringLength);
+    }
+
+    /**
+     * @see #getMaxNotes()
+     * @param maxNotes to set
+     * @return changed limits
+     */
+    public NbsLimits withMaxNotes(int maxNotes) {
+        return new NbsLimits(maxFileSize, maxLayers, maxTicks, maxNotes, maxStringLength);
+    }
+
+    /**
+     * @see #getMaxStringLength()
+     * @param maxStringLength to set
+     * @return changed limits
+     */
+    public NbsLimits withMaxStringLength(int maxStringLength) {
+        return new NbsLimits(maxFileSize, maxLayers, maxTicks, maxNotes, maxStringLength);
+    }
+}
@@ -0,0 +1,145 @@
+package se.walkercrou.composer.nbs;
+
+import se.walkercrou.composer.Timeline;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Storage for the notes of many songs outside of the heap, as the fixed size records {@link Timeline#packed} plays
+ * from. Songs read into an arena keep a slice of it in place of their note blocks, so the garbage collector never sees
+ * their notes and the size of a library barely affects collection pauses. The arena is made of large chunks, either
+ * direct buffers or mapped from a file the operating system may page out. An arena only grows: its memory is released
+ * once the arena and every song in it are no longer reachable.
+ */
+public final class NoteArena {
+    private static final int CHUNK_BYTES = 16 * 1024 * 1024;
+
+    private final Path file; // null for direct buffers
+    private final FileChannel channel;
+    private ByteBuffer chunk;
+    private long mapped; // bytes of the file mapped so far
+    private long capacity, used;
+    private int songs;
+    private boolean sealed;
+
+    private NoteArena(Path file, FileChannel channel) {
+        this.file = file;
+        this.channel = channel;
+    }
+
+    /**
+     * Creates a new arena of direct buffers. Direct memory is limited by the JVM, by default to the maximum heap
+     * size.
+     *
+     * @return new arena
+     */
+    public static NoteArena direct() {
+        return new NoteArena(null, null);
+    }
+
+    /**
+     * Creates a new arena mapped from a new temporary file in the specified directory. The file is deleted when the
+     * arena is {@link #seal() sealed}.
+     *
+     * @param dir to create the file in
+     * @return new arena
+     * @throws IOException if the file cannot be created
+     */
+    public static NoteArena mapped(Path dir) throws IOException {
+        Path file = Files.createTempFile(dir, "notes", ".arena");
+        try {
+            return new NoteArena(file, FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE));
+        } catch (IOException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+    }
+
+    /**
+     * Returns true if this arena is mapped from a file rather than made of direct buffers.
+     *
+     * @return true if mapped
+     */
+    public boolean isMapped() {
+        return file != null;
+    }
+
+    /**
+     * Returns the bytes taken up by the chunks of this arena.
+     *
+     * @return capacity in bytes
+     */
+    public synchronized long getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the bytes of this arena taken up by notes.
+     *
+     * @return used bytes
+     */
+    public synchronized long getUsed() {
+        return used;
+    }
+
+    /**
+     * Returns the amount of songs in this arena.
+     *
+     * @return amount of songs
+     */
+    public synchronized int getSongCount() {
+        return songs;
+    }
+
+    /**
+     * Stops this arena from growing. A mapped arena closes and deletes its file, what is already mapped stays
+     * readable. Where the file cannot be deleted while it is mapped it is deleted when the JVM exits.
+     */
+    public synchronized void seal() {
+        sealed = true;
+        if (channel == null || !channel.isOpen())
+            return;
+        try {
+            channel.close();
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            file.toFile().deleteOnExit();
+        }
+    }
+
+    /**
+     * Returns room for the specified amount of notes, in native byte order. Every call returns a separate slice, so
+     * songs may be read into the same arena on several threads at once.
+     */
+    synchronized ByteBuffer allocate(int notes) throws IOException {
+        if (sealed)
+            throw new IOException("note arena is sealed");
+        int bytes = notes * Timeline.PACKED_NOTE_BYTES;
+        if (chunk == null || chunk.remaining() < bytes)
+            chunk = newChunk(Math.max(CHUNK_BYTES, bytes)); // the rest of the old chunk is left unused
+        ByteBuffer slice = chunk.slice();
+        slice.limit(bytes);
+        chunk.position(chunk.position() + bytes);
+        used += bytes;
+        songs++;
+        return slice.order(ByteOrder.nativeOrder());
+    }
+
+    private ByteBuffer newChunk(int bytes) throws IOException {
+        ByteBuffer buffer;
+        if (channel == null)
+            buffer = ByteBuffer.allocateDirect(bytes);
+        else {
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, mapped, bytes);
+            mapped += bytes;
+        }
+        capacity += bytes;
+        return buffer;
+    }
+}
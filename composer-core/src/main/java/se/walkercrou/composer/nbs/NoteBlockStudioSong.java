@@ -0,0 +1,730 @@
+package se.walkercrou.composer.nbs;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import se.walkercrou.composer.Instrument;
+import se.walkercrou.composer.Layer;
+import se.walkercrou.composer.Measure;
+import se.walkercrou.composer.Note;
+import se.walkercrou.composer.Pitch;
+import se.walkercrou.composer.Score;
+import se.walkercrou.composer.TimeSignature;
+import se.walkercrou.composer.Timeline;
+import se.walkercrou.composer.nbs.NbsFormatException.Problem;
+import se.walkercrou.composer.util.Footprint;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+/**
+ * Represents song data imported from the Note Block Studio file format (.nbs). Songs imported from other formats, like
+ * MIDI, are wrapped with {@link #of(Score, String)} so that they can be listed and played with the rest.
+ *
+ * @see <a href="http://www.stuffbydavid.com/mcnbs">http://www.stuffbydavid.com/mcnbs</a>
+ */
+public class NoteBlockStudioSong {
+    // ---- Header ---
+    public short lengthTicks;
+    public short height; // amount of layers
+    public String name;
+    public String author, ogAuthor;
+    public String description;
+    public double tempoTicksPerSecond;
+    public boolean autoSave;
+    public byte autoSaveDuration;
+    public byte timeSignature;
+    public int minutesSpent;
+    public int leftClicks, rightClicks;
+    public int blocksAdded, blocksRemoved;
+    public String importedFileName;
+
+    // ---- Note Blocks ----
+    public NoteBlock[][] noteBlocks; // null when the notes are packed, see isPacked()
+
+    // ---- Layer info ----
+    public LayerInfo[] layerInfo;
+
+    // ---- Stats ----
+    public SongStats stats; // gathered while reading the notes
+    public long footprint; // estimated bytes of heap this song holds, added up while it is read
+
+    // ---- Source ----
+    public String source; // path of the file this song was read from
+
+    // ---- Imported ----
+    private Score score; // the notes of a song imported from another format, null for songs read from .nbs
+
+    // ---- Packed ----
+    private ByteBuffer packedNotes; // every note in the order of the file, which is also the order of the timeline
+    private int packedCount;
+    private Timeline timeline;
+
+    private static final long HASH_SEED = 0xCBF29CE484222325L;
+    private static final NoteBlock[] EMPTY_LAYER = new NoteBlock[0];
+
+    // estimated sizes, see Footprint
+    private static final long SONG_SIZE = Footprint.object(10 * Footprint.REFERENCE + 4 + 8 + 3 + 20 + 8);
+    private static final long NOTE_BLOCK_SIZE = Footprint.object(2);
+    private static final long LAYER_INFO_SIZE = Footprint.object(Footprint.REFERENCE + 1);
+    private static final long STATS_SIZE = Footprint.object(8 + 12 + Footprint.REFERENCE) // stats
+            + Footprint.object(2 * Footprint.REFERENCE + 8) + Footprint.object(Footprint.REFERENCE); // instruments
+    private static final long SCORE_SIZE = Footprint.object(5 * Footprint.REFERENCE + 4) // score
+            + Footprint.object(8) + Footprint.object(Footprint.REFERENCE + 4); // time signature and empty layers
+
+    private NoteBlockStudioSong() {
+    }
+
+    /**
+     * Converts this song into a {@link Score}. A song imported from another format returns the score it was imported
+     * as.
+     *
+     * @return score
+     */
+    public Score toScore() {
+        if (score != null)
+            return score;
+        Score.Builder builder = new Score.Builder()
+                .title(name)
+                .artist(ogAuthor)
+                .tempo(getTempoBpm(tempoTicksPerSecond))
+                .time(new TimeSignature(timeSignature, 4));
+
+        NoteBlock[][] noteBlocks = getNoteBlocks();
+        for (int i = 0; i < noteBlocks.length; i++) {
+            NoteBlock[] layer = noteBlocks[i];
+            Layer.Builder layerBuilder = builder.newLayer();
+            Note[] currentMeasure = new Note[timeSignature];
+            int beat = 1;
+            for (NoteBlock note : layer) {
+                if (note == null)
+                    currentMeasure[beat - 1] = Note.rest(Note.QUARTER);
+                else {
+                    currentMeasure[beat - 1] = new Note(note.getInstrument(), Pitch.ofKey(note.key), Note.QUARTER,
+                            getLayerVolume(i) / 100d);
+                }
+
+                if (beat == timeSignature) {
+                    layerBuilder.measure(new Measure(currentMeasure));
+                    currentMeasure = new Note[timeSignature];
+                    beat = 1;
+                } else
+                    beat++;
+            }
+            layerBuilder.saveLayer();
+        }
+
+        return builder.build();
+    }
+
+    /**
+     * Returns a hash of everything that affects how this song sounds: tempo, time signature, the volumes of the layers
+     * with notes and the place, instrument and key of every note. Songs that are copies of each other under a
+     * different name or with different metadata have the same note hash. Packed notes are hashed where they are, so
+     * a packed song hashes the same as the song read onto the heap. The hash of an imported song covers every note of
+     * its timeline instead.
+     *
+     * @return note hash
+     */
+    public long getNoteHash() {
+        long hash = HASH_SEED;
+        if (score != null) {
+            Timeline timeline = score.getTimeline();
+            hash = mix(hash, Double.doubleToLongBits(timeline.getMillisPerStep()));
+            for (int i = 0; i < timeline.size(); i++) {
+                hash = mix(hash, (long) timeline.getStep(i) << 32 | timeline.getInstrument(i).ordinal());
+                hash = mix(hash, Double.doubleToLongBits(timeline.getPitch(i)));
+                hash = mix(hash, Double.doubleToLongBits(timeline.getVolume(i)));
+            }
+            return hash;
+        }
+        hash = mix(hash, Double.doubleToLongBits(tempoTicksPerSecond));
+        hash = mix(hash, timeSignature);
+        boolean[] used = new boolean[height + 1];
+        NoteCursor notes = new NoteCursor(this);
+        while (notes.next()) {
+            hash = mix(hash, (long) notes.layer << 32 | notes.tick);
+            hash = mix(hash, notes.instrument << 8 | notes.key & 0xFF);
+            used[notes.layer] = true;
+        }
+        for (int layer = 0; layer < used.length; layer++) {
+            if (used[layer])
+                hash = mix(hash, getLayerVolume(layer));
+        }
+        return hash;
+    }
+
+    /**
+     * Returns true if the specified song sounds the same as this one.
+     *
+     * @param other song to compare to
+     * @return true if same notes
+     * @see #getNoteHash()
+     */
+    public boolean hasSameNotes(NoteBlockStudioSong other) {
+        if (score != null || other.score != null)
+            return score != null && other.score != null && hasSameNotes(score.getTimeline(), other.score.getTimeline());
+        if (tempoTicksPerSecond != other.tempoTicksPerSecond || timeSignature != other.timeSignature)
+            return false;
+        boolean[] used = new boolean[Math.max(height, other.height) + 1];
+        NoteCursor notes = new NoteCursor(this), otherNotes = new NoteCursor(other);
+        while (true) {
+            boolean more = notes.next();
+            if (more != otherNotes.next())
+                return false;
+            if (!more)
+                break;
+            if (notes.tick != otherNotes.tick || notes.layer != otherNotes.layer
+                    || notes.instrument != otherNotes.instrument || notes.key != otherNotes.key)
+                return false;
+            used[notes.layer] = true;
+        }
+        for (int layer = 0; layer < used.length; layer++) {
+            if (used[layer] && getLayerVolume(layer) != other.getLayerVolume(layer))
+                return false;
+        }
+        return true;
+    }
+
+    private static boolean hasSameNotes(Timeline timeline, Timeline other) {
+        if (timeline.getMillisPerStep() != other.getMillisPerStep() || timeline.size() != other.size())
+            return false;
+        for (int i = 0; i < timeline.size(); i++) {
+            if (timeline.getStep(i) != other.getStep(i) || timeline.getInstrument(i) != other.getInstrument(i)
+                    || timeline.getPitch(i) != other.getPitch(i) || timeline.getVolume(i) != other.getVolume(i))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns true if the notes of this song were read into a {@link NoteArena} rather than into
+     * {@link #noteBlocks}.
+     *
+     * @return true if packed
+     */
+    public boolean isPacked() {
+        return packedNotes != null;
+    }
+
+    /**
+     * Returns the notes of this song laid out for playing. A packed song returns the same timeline every time, read
+     * straight from its arena, otherwise the song is converted to a {@link Score} first.
+     *
+     * @return timeline of song
+     */
+    public Timeline getTimeline() {
+        return timeline != null ? timeline : toScore().getTimeline();
+    }
+
+    // the note blocks of this song, unpacked into temporary rows if the song is packed. Packed notes only keep the
+    // instrument they play, so an unknown instrument comes back as the harp it plays as
+    private NoteBlock[][] getNoteBlocks() {
+        if (packedNotes == null)
+            return noteBlocks;
+        NoteBlock[][] blocks = new NoteBlock[height + 1][];
+        for (int i = 0; i < packedCount; i++) {
+            int at = i * Timeline.PACKED_NOTE_BYTES;
+            int layer = packedNotes.getShort(at + 4);
+            if (blocks[layer] == null)
+                blocks[layer] = new NoteBlock[lengthTicks + 1];
+            blocks[layer][packedNotes.getInt(at)] = new NoteBlock(packedNotes.get(at + 6), packedNotes.get(at + 7));
+        }
+        for (int layer = 0; layer < blocks.length; layer++) {
+            if (blocks[layer] == null)
+                blocks[layer] = EMPTY_LAYER;
+        }
+        return blocks;
+    }
+
+    private byte getLayerVolume(int layer) {
+        return layer < layerInfo.length && layerInfo[layer] != null ? layerInfo[layer].volume : 100;
+    }
+
+    private static long mix(long hash, long value) {
+        hash ^= value;
+        hash *= 0x9E3779B97F4A7C15L;
+        return hash ^ hash >>> 29;
+    }
+
+    @Override
+    public String toString() {
+        return ToStringBuilder.reflectionToString(this);
+    }
+
+    /**
+     * Wraps a score imported from another format, like a MIDI file, as a song. The song keeps the score as it is, with
+     * its own timing and volumes, and has no note blocks. A score without a title is named after its file. The song is
+     * never packed into a {@link NoteArena}, its score stays on the heap.
+     *
+     * @param score imported score
+     * @param source where the score was read from
+     * @return song of score
+     */
+    public static NoteBlockStudioSong of(Score score, String source) {
+        Timeline timeline = score.getTimeline();
+        NoteBlockStudioSong result = new NoteBlockStudioSong();
+        result.score = score;
+        result.name = score.getTitle();
+        if (result.name == null || result.name.isEmpty()) {
+            String file = new File(source).getName();
+            int dot = file.lastIndexOf('.');
+            result.name = dot < 1 ? file : file.substring(0, dot);
+        }
+        result.author = result.description = result.importedFileName = "";
+        result.ogAuthor = score.getArtist() == null ? "" : score.getArtist();
+        result.tempoTicksPerSecond = 1000 / timeline.getMillisPerStep();
+        result.timeSignature = (byte) score.getTime().getBeatsPerMeasure();
+        result.lengthTicks = (short) Math.min(Short.MAX_VALUE, timeline.getLength());
+        result.noteBlocks = new NoteBlock[0][];
+        result.layerInfo = new LayerInfo[0];
+        result.source = source;
+        SongStats.Collector stats = new SongStats.Collector(result.tempoTicksPerSecond);
+        for (int i = 0; i < timeline.size(); i++) {
+            if (i > 0 && timeline.getStep(i) != timeline.getStep(i - 1))
+                stats.endTick(timeline.getStep(i - 1));
+            stats.note(timeline.getInstrument(i));
+        }
+        if (timeline.size() > 0)
+            stats.endTick(timeline.getStep(timeline.size() - 1));
+        result.stats = stats.build();
+        result.footprint = SONG_SIZE + Footprint.string(result.name) + Footprint.string(result.ogAuthor)
+                + Footprint.string(source) + STATS_SIZE + SCORE_SIZE + timeline.getFootprint();
+        return result;
+    }
+
+    /**
+     * Reads the specified file and extracts the song data.
+     *
+     * @param file to read
+     * @return song data
+     * @throws IOException
+     */
+    public static NoteBlockStudioSong read(File file) throws IOException {
+        if (!file.exists())
+            throw new FileNotFoundException();
+        return read(Files.readAllBytes(file.toPath()), file.getPath());
+    }
+
+    /**
+     * Extracts the song data from the contents of a .nbs file, within the {@link NbsLimits#DEFAULT default limits}.
+     *
+     * @param bytes contents of file
+     * @param source where the contents were read from
+     * @return song data
+     * @throws IOException
+     */
+    public static NoteBlockStudioSong read(byte[] bytes, String source) throws IOException {
+        return read(bytes, source, NbsLimits.DEFAULT);
+    }
+
+    /**
+     * Extracts the song data from the contents of a .nbs file. Everything the file claims is checked against the
+     * specified limits before it is used, so a malformed file fails with a {@link NbsFormatException} before much is
+     * read or allocated.
+     *
+     * @param bytes contents of file
+     * @param source where the contents were read from
+     * @param limits to read within
+     * @return song data
+     * @throws NbsFormatException if the file is malformed or over the limits
+     */
+    public static NoteBlockStudioSong read(byte[] bytes, String source, NbsLimits limits) throws IOException {
+        return read(bytes, source, limits, null);
+    }
+
+    /**
+     * Extracts the song data from the contents of a .nbs file, like {@link #read(byte[], String, NbsLimits)}. If an
+     * arena is specified the notes are packed into it instead of {@link #noteBlocks}, and the song keeps a single
+     * {@link #getTimeline() timeline} reading from the arena.
+     *
+     * @param bytes contents of file
+     * @param source where the contents were read from
+     * @param limits to read within
+     * @param arena to pack the notes into, or null to keep them on the heap
+     * @return song data
+     * @throws NbsFormatException if the file is malformed or over the limits
+     * @throws IOException if the arena cannot hold the notes
+     */
+    public static NoteBlockStudioSong read(byte[] bytes, String source, NbsLimits limits, NoteArena arena)
+            throws IOException {
+        checkFileSize(bytes, limits);
+        NoteBlockStudioSong result = new NoteBlockStudioSong();
+        ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        ByteBuffer records = null;
+        try {
+            readHeader(result, buffer, limits);
+            if (arena == null) {
+                readNoteBlocks(result, buffer, result.lengthTicks, limits, null);
+                readLayerInfo(result, buffer, limits);
+            } else {
+                // the notes are counted and the rest of the file is read first, so the arena only takes songs that
+                // read in full and exactly the room they need, and the notes are written straight into it
+                ByteBuffer notes = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+                int count = countNoteBlocks(result, buffer, limits);
+                readLayerInfo(result, buffer, limits);
+                records = arena.allocate(count);
+                readNoteBlocks(result, notes, result.lengthTicks, limits, records);
+            }
+        } catch (BufferUnderflowException e) {
+            throw truncated();
+        }
+        if (records != null)
+            pack(result, records);
+        result.source = source;
+        result.footprint += Footprint.string(source);
+        return result;
+    }
+
+    /**
+     * Extracts only the start of a song from the contents of a .nbs file, for previewing it. Reading stops at the
+     * first note block after the specified time so the cost is bounded by the preview rather than the song. The layer
+     * info that follows the note blocks is not read, every layer plays at full volume.
+     *
+     * @param bytes contents of file
+     * @param source where the contents were read from
+     * @param seconds of the song to read
+     * @return start of song data
+     * @throws IOException
+     */
+    public static NoteBlockStudioSong readPreview(byte[] bytes, String source, double seconds) throws IOException {
+        return readPreview(bytes, source, seconds, NbsLimits.DEFAULT);
+    }
+
+    /**
+     * Extracts only the start of a song from the contents of a .nbs file, like
+     * {@link #readPreview(byte[], String, double)}, within the specified limits.
+     *
+     * @param bytes contents of file
+     * @param source where the contents were read from
+     * @param seconds of the song to read
+     * @param limits to read within
+     * @return start of song data
+     * @throws NbsFormatException if the file is malformed or over the limits
+     */
+    public static NoteBlockStudioSong readPreview(byte[] bytes, String source, double seconds, NbsLimits limits)
+            throws IOException {
+        checkFileSize(bytes, limits);
+        NoteBlockStudioSong result = new NoteBlockStudioSong();
+        ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            readHeader(result, buffer, limits);
+            int cutoff = (int) Math.min(result.lengthTicks, Math.ceil(seconds * result.tempoTicksPerSecond));
+            readNoteBlocks(result, buffer, cutoff, limits, null);
+            result.lengthTicks = (short) cutoff;
+        } catch (BufferUnderflowException e) {
+            throw truncated();
+        }
+        result.layerInfo = new LayerInfo[result.height + 1];
+        for (int i = 0; i < result.height; i++)
+            result.layerInfo[i] = new LayerInfo("", (byte) 100);
+        result.source = source;
+        return result;
+    }
+
+    // a score's tempo is in whole ticks per minute. Rounding keeps slow and fractional tempos, which truncating the
+    // ticks per second first would turn into zero or a different speed. The header check makes it at least one
+    private static int getTempoBpm(double ticksPerSecond) {
+        return (int) Math.round(ticksPerSecond * 60);
+    }
+
+    private static void checkFileSize(byte[] bytes, NbsLimits limits) throws NbsFormatException {
+        if (bytes.length > limits.getMaxFileSize()) {
+            throw new NbsFormatException(Problem.FILE_TOO_LARGE, "file is " + bytes.length + " bytes, limit is "
+                    + limits.getMaxFileSize());
+        }
+    }
+
+    private static NbsFormatException truncated() {
+        return new NbsFormatException(Problem.TRUNCATED, "file ends before the song does");
+    }
+
+    private static String getString(ByteBuffer in, NbsLimits limits) throws IOException {
+        int len = in.getInt();
+        if (len < 0 || len > limits.getMaxStringLength()) {
+            throw new NbsFormatException(Problem.STRING_TOO_LONG, "string of " + len + " characters, limit is "
+                    + limits.getMaxStringLength());
+        }
+        if (len > in.remaining())
+            throw truncated();
+        char[] chars = new char[len];
+        for (int i = 0; i < len; i++)
+            chars[i] = (char) in.get();
+        return new String(chars);
+    }
+
+    private static void readHeader(NoteBlockStudioSong result, ByteBuffer buffer, NbsLimits limits)
+            throws IOException {
+        result.lengthTicks = buffer.getShort();
+        result.height = buffer.getShort();
+        if (result.lengthTicks < 0 || result.lengthTicks > limits.getMaxTicks()) {
+            throw new NbsFormatException(Problem.TOO_LONG, "song of " + result.lengthTicks + " ticks, limit is "
+                    + limits.getMaxTicks());
+        }
+        if (result.height < 0 || result.height > limits.getMaxLayers()) {
+            throw new NbsFormatException(Problem.TOO_MANY_LAYERS, "song of " + result.height + " layers, limit is "
+                    + limits.getMaxLayers());
+        }
+        result.name = getString(buffer, limits);
+        result.author = getString(buffer, limits);
+        result.ogAuthor = getString(buffer, limits);
+        result.description = getString(buffer, limits);
+        result.tempoTicksPerSecond = buffer.getShort() / 100d;
+        result.autoSave = buffer.get() != 1;
+        result.autoSaveDuration = buffer.get();
+        result.timeSignature = buffer.get();
+        if (getTempoBpm(result.tempoTicksPerSecond) < 1 || result.timeSignature < 1) {
+            throw new NbsFormatException(Problem.INVALID_HEADER, "tempo of " + result.tempoTicksPerSecond
+                    + " ticks per second in " + result.timeSignature + "/4 time");
+        }
+        result.minutesSpent = buffer.getInt();
+        result.leftClicks = buffer.getInt();
+        result.rightClicks = buffer.getInt();
+        result.blocksAdded = buffer.getInt();
+        result.blocksRemoved = buffer.getInt();
+        result.importedFileName = getString(buffer, limits);
+        result.footprint = SONG_SIZE + Footprint.string(result.name) + Footprint.string(result.author)
+                + Footprint.string(result.ogAuthor) + Footprint.string(result.description)
+                + Footprint.string(result.importedFileName);
+    }
+
+    // reads into noteBlocks, or into the specified records if not null
+    private static void readNoteBlocks(NoteBlockStudioSong result, ByteBuffer buffer, int lastTick, NbsLimits limits,
+                                       ByteBuffer records) throws IOException {
+        // a layer is only allocated once it has a note, so a header claiming a large song costs nothing by itself
+        NoteBlock[][] noteBlocks = records == null ? new NoteBlock[result.height + 1][] : null;
+        result.footprint += STATS_SIZE;
+        if (noteBlocks != null)
+            result.footprint += Footprint.array(noteBlocks.length, Footprint.REFERENCE);
+        SongStats.Collector stats = new SongStats.Collector(result.tempoTicksPerSecond);
+        int notes = 0;
+        int tick = -1;
+        short jumps;
+        while (true) {
+            jumps = buffer.getShort();
+            if (jumps == 0)
+                break;
+            tick += jumps;
+            if (jumps < 0 || tick > result.lengthTicks)
+                throw new NbsFormatException(Problem.NOTE_OUT_OF_BOUNDS, "note block past the end of the song");
+            if (tick > lastTick)
+                break; // the rest of the song is not wanted
+            int layer = -1;
+            while (true) {
+                jumps = buffer.getShort();
+                if (jumps == 0)
+                    break;
+                layer += jumps;
+                if (jumps < 0 || layer > result.height)
+                    throw new NbsFormatException(Problem.NOTE_OUT_OF_BOUNDS, "note block outside of the layers");
+                if (++notes > limits.getMaxNotes()) {
+                    throw new NbsFormatException(Problem.TOO_MANY_NOTES, "more than " + limits.getMaxNotes()
+                            + " note blocks");
+                }
+                byte instrument = buffer.get();
+                byte key = buffer.get();
+                if (records != null) {
+                    Instrument played = instrumentOf(instrument);
+                    records.putInt(tick).putShort((short) layer).put((byte) played.ordinal()).put(key);
+                    stats.note(played);
+                    continue;
+                }
+                NoteBlock[] blocks = noteBlocks[layer];
+                if (blocks == null) {
+                    blocks = noteBlocks[layer] = new NoteBlock[lastTick + 1];
+                    result.footprint += Footprint.array(blocks.length, Footprint.REFERENCE);
+                }
+                NoteBlock block = blocks[tick] = new NoteBlock(instrument, key);
+                result.footprint += NOTE_BLOCK_SIZE;
+                stats.note(block.getInstrument());
+            }
+            stats.endTick(tick);
+        }
+        for (int layer = 0; noteBlocks != null && layer < noteBlocks.length; layer++) {
+            if (noteBlocks[layer] == null)
+                noteBlocks[layer] = EMPTY_LAYER;
+        }
+        result.noteBlocks = noteBlocks;
+        result.stats = stats.build();
+    }
+
+    // checks the note blocks like readNoteBlocks does and returns how many there are, without keeping any
+    private static int countNoteBlocks(NoteBlockStudioSong result, ByteBuffer buffer, NbsLimits limits)
+            throws IOException {
+        int notes = 0;
+        int tick = -1;
+        short jumps;
+        while ((jumps = buffer.getShort()) != 0) {
+            tick += jumps;
+            if (jumps < 0 || tick > result.lengthTicks)
+                throw new NbsFormatException(Problem.NOTE_OUT_OF_BOUNDS, "note block past the end of the song");
+            int layer = -1;
+            while ((jumps = buffer.getShort()) != 0) {
+                layer += jumps;
+                if (jumps < 0 || layer > result.height)
+                    throw new NbsFormatException(Problem.NOTE_OUT_OF_BOUNDS, "note block outside of the layers");
+                if (++notes > limits.getMaxNotes()) {
+                    throw new NbsFormatException(Problem.TOO_MANY_NOTES, "more than " + limits.getMaxNotes()
+                            + " note blocks");
+                }
+                buffer.getShort(); // instrument and key
+            }
+        }
+        return notes;
+    }
+
+    // lays out the records like Timeline.of(toScore()) would
+    private static void pack(NoteBlockStudioSong result, ByteBuffer notes) {
+        notes.flip();
+        int count = notes.remaining() / Timeline.PACKED_NOTE_BYTES;
+
+        float[] volumes = new float[result.height + 1];
+        for (int layer = 0; layer < volumes.length; layer++)
+            volumes[layer] = (float) (result.getLayerVolume(layer) / 100d);
+
+        // every layer with a note is lengthTicks + 1 ticks long, and only whole measures are played
+        int length = count == 0 ? 0 : (result.lengthTicks + 1) / result.timeSignature * result.timeSignature;
+        int size = count;
+        while (size > 0 && notes.getInt((size - 1) * Timeline.PACKED_NOTE_BYTES) >= length)
+            size--;
+
+        result.packedNotes = notes;
+        result.packedCount = count;
+        double millisPerTick = 60 / (double) getTempoBpm(result.tempoTicksPerSecond) * 1000;
+        result.timeline = Timeline.packed(notes, size, volumes, 1, millisPerTick, length);
+        result.footprint += Footprint.object(48) + Footprint.array(volumes.length, 4) + result.timeline.getFootprint();
+    }
+
+    private static void readLayerInfo(NoteBlockStudioSong result, ByteBuffer buffer, NbsLimits limits)
+            throws IOException {
+        result.layerInfo = new LayerInfo[result.height + 1];
+        result.footprint += Footprint.array(result.layerInfo.length, Footprint.REFERENCE);
+        for (int i = 0; i < result.height; i++) {
+            LayerInfo info = result.layerInfo[i] = new LayerInfo(getString(buffer, limits), buffer.get());
+            result.footprint += LAYER_INFO_SIZE + Footprint.string(info.name);
+        }
+    }
+
+    /**
+     * Walks the notes of a song by tick and then by layer, the order of the file, whether they are packed or in note
+     * blocks. Instruments are the ordinal of the {@link Instrument} played, as in packed records.
+     */
+    private static final class NoteCursor {
+        private final NoteBlockStudioSong song;
+        private final int[] layers; // that have note blocks, null when packed
+        private final int ticks;
+        private int index = -1; // of the record, or of the tick times the amount of layers plus the layer
+        private int tick, layer;
+        private byte instrument, key;
+
+        private NoteCursor(NoteBlockStudioSong song) {
+            this.song = song;
+            if (song.packedNotes != null) {
+                layers = null;
+                ticks = 0;
+                return;
+            }
+            int count = 0, longest = 0;
+            int[] withNotes = new int[song.noteBlocks.length];
+            for (int i = 0; i < song.noteBlocks.length; i++) {
+                if (song.noteBlocks[i].length > 0) {
+                    withNotes[count++] = i;
+                    longest = Math.max(longest, song.noteBlocks[i].length);
+                }
+            }
+            layers = Arrays.copyOf(withNotes, count);
+            ticks = longest;
+        }
+
+        private boolean next() {
+            if (layers == null) {
+                if (++index >= song.packedCount)
+                    return false;
+                int at = index * Timeline.PACKED_NOTE_BYTES;
+                ByteBuffer notes = song.packedNotes;
+                tick = notes.getInt(at);
+                layer = notes.getShort(at + 4);
+                instrument = notes.get(at + 6);
+                key = notes.get(at + 7);
+                return true;
+            }
+            while (++index < ticks * layers.length) {
+                tick = index / layers.length;
+                layer = layers[index % layers.length];
+                NoteBlock[] blocks = song.noteBlocks[layer];
+                NoteBlock block = tick < blocks.length ? blocks[tick] : null;
+                if (block != null) {
+                    instrument = (byte) block.getInstrument().ordinal();
+                    key = block.key;
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static Instrument instrumentOf(byte instrument) {
+        switch (instrument) {
+            default:
+            case 0:
+                return Instrument.HARP;
+            case 1:
+                return Instrument.BASS;
+            case 2:
+                return Instrument.BASEDRUM;
+            case 3:
+                return Instrument.SNARE;
+            case 4:
+                return Instrument.PLING;
+        }
+    }
+
+    /**
+     * Represents a single note block within the song.
+     */
+    public static class NoteBlock {
+        public final byte instrument;
+        public final byte key;
+
+        private NoteBlock(byte instrument, byte key) {
+            this.instrument = instrument;
+            this.key = key;
+        }
+
+        /**
+         * Returns the {@link Instrument} for this note.
+         *
+         * @return instrument
+         */
+        public Instrument getInstrument() {
+            return instrumentOf(instrument);
+        }
+
+        @Override
+        public String toString() {
+            return ToStringBuilder.reflectionToString(this);
+        }
+    }
+
+    /**
+     * Represents some meta data relating to a layer of the song.
+     */
+    public static class LayerInfo {
+        public final String name;
+        public final byte volume;
+
+        private LayerInfo(String name, byte volume) {
+            this.name = name;
+            this.volume = volume;
+        }
+
+        @Override
+        public String toString() {
+            return ToStringBuilder.reflectionToString(this);
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package se.walkercrou.composer.nbs;
+
+import se.walkercrou.composer.util.Footprint;
+import se.walkercrou.composer.util.IntIntMap;
+
+import java.util.Random;
+
+/**
+ * The play order of a {@link MusicPlayer} over the tracks of a {@link TrackLibrary}. Rather than copying the library,
+ * a queue is a permutation of track indices that starts out as the identity. Shuffling is a lazy Fisher-Yates: a
+ * position is only drawn once the queue reaches it, and only the positions that differ from the identity are stored,
+ * so a queue's memory grows with the amount of tracks played rather than with the size of the library.
+ */
+public class PlayQueue {
+    private static final long QUEUE_SIZE = Footprint.object(3 * Footprint.REFERENCE + 3 * 4 + 1)
+            + Footprint.object(Footprint.REFERENCE + 8 + 1) + Footprint.object(8); // queue, random and its seed
+    private final int size;
+    private final Random random;
+    private final IntIntMap trackAt = new IntIntMap(); // position -> track, identity if absent
+    private final IntIntMap positionOf = new IntIntMap(); // track -> position, identity if absent
+    private boolean shuffled = false;
+    private int drawn; // positions below this are final
+    private int position = 0;
+
+    /**
+     * Creates a new queue that plays the specified amount of tracks in library order.
+     *
+     * @param size amount of tracks
+     */
+    public PlayQueue(int size) {
+        this(size, new Random());
+    }
+
+    /**
+     * Creates a new queue that plays the specified amount of tracks in library order.
+     *
+     * @param size amount of tracks
+     * @param random used for shuffling
+     */
+    public PlayQueue(int size, Random random) {
+        this.size = size;
+        this.random = random;
+        this.drawn = size;
+    }
+
+    /**
+     * Returns the amount of tracks in this queue.
+     *
+     * @return amount of tracks
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns an estimate of the bytes of heap this queue holds. A queue that has not been shuffled holds next to
+     * nothing however many tracks it has.
+     *
+     * @return bytes
+     * @see Footprint
+     */
+    public long getFootprint() {
+        return QUEUE_SIZE + trackAt.getFootprint() + positionOf.getFootprint();
+    }
+
+    /**
+     * Returns true if this queue has been shuffled.
+     *
+     * @return true if shuffled
+     */
+    public boolean isShuffled() {
+        return shuffled;
+    }
+
+    /**
+     * Returns the current position in the queue.
+     *
+     * @return current position
+     */
+    public int getPosition() {
+        return position;
+    }
+
+    /**
+     * Returns the amount of positions, from the first, whose track is final. This is every position in a queue that
+     * has not been shuffled. Drawing the same tracks again with {@link #jumpTo(int)} after a shuffle restores them.
+     *
+     * @return amount of drawn positions
+     */
+    public int getDrawn() {
+        return drawn;
+    }
+
+    /**
+     * Returns the library index of the track at the current position.
+     *
+     * @return current track index
+     */
+    public int current() {
+        return get(position);
+    }
+
+    /**
+     * Returns the library index of the track at the specified position, drawing any positions up to it that have not
+     * been drawn yet.
+     *
+     * @param position in queue
+     * @return track index
+     */
+    public int get(int position) {
+        checkPosition(position);
+        while (drawn <= position) {
+            swap(drawn, drawn + random.nextInt(size - drawn));
+            drawn++;
+        }
+        return trackAt.get(position, position);
+    }
+
+    /**
+     * Returns the library index of the track at the specified position without drawing anything, for looking at the
+     * queue without changing the order it is played in.
+     *
+     * @param position in queue
+     * @return track index, or -1 if the position has not been drawn yet
+     */
+    public int peek(int position) {
+        checkPosition(position);
+        return position < drawn ? trackAt.get(position, position) : -1;
+    }
+
+    /**
+     * Returns true if there is a track after the current position.
+     *
+     * @return true if there is a next track
+     */
+    public boolean hasNext() {
+        return position + 1 < size;
+    }
+
+    /**
+     * Moves to the specified position and returns the library index of the track there.
+     *
+     * @param position to move to
+     * @return track index
+     */
+    public int moveTo(int position) {
+        int track = get(position);
+        this.position = position;
+        return track;
+    }
+
+    /**
+     * Moves to the next position and returns the library index of the track there.
+     *
+     * @return track index
+     */
+    public int next() {
+        return moveTo(position + 1);
+    }
+
+    /**
+     * Moves to the previous position and returns the library index of the track there.
+     *
+     * @return track index
+     */
+    public int previous() {
+        return moveTo(position - 1);
+    }
+
+    /**
+     * Moves to the position of the specified track. If the track has not been drawn yet in a shuffled queue it is
+     * drawn next so that the positions already played stay as they are.
+     *
+     * @param track library index of track
+     */
+    public void jumpTo(int track) {
+        checkPosition(track);
+        int pos = positionOf.get(track, track);
+        if (pos >= drawn) {
+            swap(drawn, pos);
+            pos = drawn++;
+        }
+        position = pos;
+    }
+
+    /**
+     * Shuffles the queue and moves back to the first position.
+     */
+    public void shuffle() {
+        trackAt.clear();
+        positionOf.clear();
+        shuffled = true;
+        drawn = 0;
+        position = 0;
+    }
+
+    private void swap(int a, int b) {
+        if (a == b)
+            return;
+        int trackA = trackAt.get(a, a);
+        int trackB = trackAt.get(b, b);
+        trackAt.put(a, trackB);
+        trackAt.put(b, trackA);
+        positionOf.put(trackB, a);
+        positionOf.put(trackA, b);
+    }
+
+    private void checkPosition(int position) {
+        if (position < 0 || position >= size)
+            throw new IndexOutOfBoundsException("position " + position + " out of bounds for queue of " + size);
+    }
+}
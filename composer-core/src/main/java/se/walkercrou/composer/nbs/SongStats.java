@@ -0,0 +1,149 @@
+package se.walkercrou.composer.nbs;
+
+import se.walkercrou.composer.Instrument;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Facts about a {@link NoteBlockStudioSong} that are gathered while its note blocks are read, so they cost no extra
+ * pass over the song: how long it really lasts, how many notes it has, how many notes it plays at once and within a
+ * second at most, and which instruments it uses.
+ */
+public final class SongStats {
+    private static final Instrument[] INSTRUMENTS = Instrument.values();
+
+    private final long durationMillis;
+    private final int noteCount;
+    private final int peakPolyphony;
+    private final int peakNotesPerSecond;
+    private final Set<Instrument> instruments;
+
+    private SongStats(long durationMillis, int noteCount, int peakPolyphony, int peakNotesPerSecond,
+                      Set<Instrument> instruments) {
+        this.durationMillis = durationMillis;
+        this.noteCount = noteCount;
+        this.peakPolyphony = peakPolyphony;
+        this.peakNotesPerSecond = peakNotesPerSecond;
+        this.instruments = Collections.unmodifiableSet(instruments);
+    }
+
+    /**
+     * Returns how long the song lasts up to and including its last note. This may differ from the length the song
+     * declares.
+     *
+     * @return duration in milliseconds
+     */
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    /**
+     * Returns the amount of notes in the song.
+     *
+     * @return amount of notes
+     */
+    public int getNoteCount() {
+        return noteCount;
+    }
+
+    /**
+     * Returns the most notes the song plays on a single tick.
+     *
+     * @return peak notes per tick
+     */
+    public int getPeakPolyphony() {
+        return peakPolyphony;
+    }
+
+    /**
+     * Returns the most notes the song plays within any one second.
+     *
+     * @return peak notes per second
+     */
+    public int getPeakNotesPerSecond() {
+        return peakNotesPerSecond;
+    }
+
+    /**
+     * Returns the average amount of notes the song plays per second.
+     *
+     * @return average notes per second
+     */
+    public double getNotesPerSecond() {
+        return durationMillis == 0 ? 0 : noteCount * 1000d / durationMillis;
+    }
+
+    /**
+     * Returns the instruments the song uses.
+     *
+     * @return instruments
+     */
+    public Set<Instrument> getInstruments() {
+        return instruments;
+    }
+
+    @Override
+    public String toString() {
+        return "SongStats{duration=" + durationMillis + ", notes=" + noteCount + ", peakPolyphony=" + peakPolyphony
+                + ", peakNotesPerSecond=" + peakNotesPerSecond + ", instruments=" + instruments + "}";
+    }
+
+    /**
+     * Gathers the stats of a song as its note blocks are read in tick order.
+     */
+    static final class Collector {
+        private final double ticksPerSecond;
+        private final int window; // ticks in a second
+        private final int[] windowTicks, windowCounts; // ring of the ticks with notes in the last second
+        private int head, size, windowNotes;
+        private int noteCount, tickNotes, lastTick = -1;
+        private int peakPolyphony, peakNotesPerSecond;
+        private int instruments; // bit per instrument ordinal
+
+        Collector(double ticksPerSecond) {
+            this.ticksPerSecond = ticksPerSecond;
+            this.window = (int) Math.max(1, Math.min(1000, Math.ceil(ticksPerSecond)));
+            this.windowTicks = new int[window];
+            this.windowCounts = new int[window];
+        }
+
+        void note(Instrument instrument) {
+            tickNotes++;
+            instruments |= 1 << instrument.ordinal();
+        }
+
+        void endTick(int tick) {
+            if (tickNotes == 0)
+                return;
+            noteCount += tickNotes;
+            peakPolyphony = Math.max(peakPolyphony, tickNotes);
+            lastTick = tick;
+
+            // drop the ticks that are a second or more behind this one
+            while (size > 0 && windowTicks[head] <= tick - window) {
+                windowNotes -= windowCounts[head];
+                head = (head + 1) % window;
+                size--;
+            }
+            int tail = (head + size) % window;
+            windowTicks[tail] = tick;
+            windowCounts[tail] = tickNotes;
+            size++;
+            windowNotes += tickNotes;
+            peakNotesPerSecond = Math.max(peakNotesPerSecond, windowNotes);
+            tickNotes = 0;
+        }
+
+        SongStats build() {
+            long duration = ticksPerSecond > 0 ? (long) Math.ceil((lastTick + 1) * 1000 / ticksPerSecond) : 0;
+            Set<Instrument> used = EnumSet.noneOf(Instrument.class);
+            for (Instrument instrument : INSTRUMENTS) {
+                if ((instruments & 1 << instrument.ordinal()) != 0)
+                    used.add(instrument);
+            }
+            return new SongStats(duration, noteCount, peakPolyphony, peakNotesPerSecond, used);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package se.walkercrou.composer.nbs;
+
+/**
+ * The most notes a track may play before it is considered too dense for the server, judged by the
+ * {@link SongStats} gathered when the track was read. A limit of zero means no limit.
+ */
+public final class SoundBudget {
+    /**
+     * A budget that allows any track.
+     */
+    public static final SoundBudget UNLIMITED = new SoundBudget(0, 0);
+
+    private final int maxNotesPerTick;
+    private final int maxNotesPerSecond;
+
+    /**
+     * Creates a new budget.
+     *
+     * @param maxNotesPerTick most notes a track may play at once, zero for no limit
+     * @param maxNotesPerSecond most notes a track may play within a second, zero for no limit
+     */
+    public SoundBudget(int maxNotesPerTick, int maxNotesPerSecond) {
+        if (maxNotesPerTick < 0 || maxNotesPerSecond < 0)
+            throw new IllegalArgumentException("limits must not be negative");
+        this.maxNotesPerTick = maxNotesPerTick;
+        this.maxNotesPerSecond = maxNotesPerSecond;
+    }
+
+    /**
+     * Returns the most notes a track may play at once.
+     *
+     * @return notes per tick, zero for no limit
+     */
+    public int getMaxNotesPerTick() {
+        return maxNotesPerTick;
+    }
+
+    /**
+     * Returns the most notes a track may play within a second.
+     *
+     * @return notes per second, zero for no limit
+     */
+    public int getMaxNotesPerSecond() {
+        return maxNotesPerSecond;
+    }
+
+    /**
+     * Returns why the specified track goes over this budget, or null if it does not.
+     *
+     * @param track to check
+     * @return reason or null
+     */
+    public String check(NoteBlockStudioSong track) {
+        SongStats stats = track.stats;
+        if (stats == null)
+            return null;
+        if (maxNotesPerTick > 0 && stats.getPeakPolyphony() > maxNotesPerTick)
+            return stats.getPeakPolyphony() + " notes at once, budget is " + maxNotesPerTick;
+        if (maxNotesPerSecond > 0 && stats.getPeakNotesPerSecond() > maxNotesPerSecond)
+            return stats.getPeakNotesPerSecond() + " notes within a second, budget is " + maxNotesPerSecond;
+        return null;
+    }
+}
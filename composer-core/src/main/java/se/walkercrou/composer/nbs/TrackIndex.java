@@ -0,0 +1,261 @@
+package se.walkercrou.composer.nbs;
+
+import se.walkercrou.composer.util.Footprint;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * An in-memory inverted index over the name, author, original author and imported file name of the tracks in a
+ * {@link TrackLibrary}. Every query term is matched against the prefixes of the indexed words and results are ranked
+ * by which fields matched and whether the match was exact. The index is updated incrementally when the library is
+ * reloaded: only tracks that were added, removed or changed are touched.
+ */
+public class TrackIndex {
+    // name, author, original author, imported file name
+    private static final int[] FIELD_WEIGHTS = { 4, 2, 2, 1 };
+    // estimated sizes, see Footprint
+    private static final long DOCUMENT_SIZE = Footprint.object(2 * Footprint.REFERENCE) + Footprint.REFERENCE;
+    private static final long WORD_SIZE = Footprint.object(5 * Footprint.REFERENCE + 1) // tree map entry
+            + Footprint.object(Footprint.REFERENCE + 4); // postings, without their entries
+
+    private final NavigableMap<String, Postings> postings = new TreeMap<>();
+    private final Map<String, Integer> docBySource = new HashMap<>();
+    private final List<Document> docs = new ArrayList<>();
+    private final List<Integer> freeDocs = new ArrayList<>();
+
+    // scratch space for queries, indexed by document
+    private int[] scores = new int[0];
+    private int[] matches = new int[0];
+    private int[] touched = new int[16];
+
+    private long footprint; // of the documents and postings, kept up to date as they change
+
+    /**
+     * Updates this index to contain exactly the tracks in the specified library. Tracks are identified by
+     * {@link NoteBlockStudioSong#source}; tracks without a source are not indexed.
+     *
+     * @param library to index
+     */
+    public synchronized void update(TrackLibrary library) {
+        Set<String> present = new HashSet<>();
+        for (NoteBlockStudioSong track : library.getTracks()) {
+            if (track.source == null || !present.add(track.source))
+                continue;
+            Integer doc = docBySource.get(track.source);
+            if (doc != null) {
+                Document document = docs.get(doc);
+                if (document.hasSameFields(track)) {
+                    document.track = track;
+                    continue;
+                }
+                remove(doc);
+            }
+            docBySource.put(track.source, add(track));
+        }
+
+        Iterator<Map.Entry<String, Integer>> iter = docBySource.entrySet().iterator();
+        while (iter.hasNext()) {
+            Map.Entry<String, Integer> entry = iter.next();
+            if (!present.contains(entry.getKey())) {
+                remove(entry.getValue());
+                iter.remove();
+            }
+        }
+    }
+
+    /**
+     * Returns the amount of tracks in this index.
+     *
+     * @return amount of indexed tracks
+     */
+    public synchronized int size() {
+        return docBySource.size();
+    }
+
+    /**
+     * Returns an estimate of the bytes of heap this index holds, not counting the tracks themselves.
+     *
+     * @return bytes
+     * @see Footprint
+     */
+    public synchronized long getFootprint() {
+        return footprint + Footprint.array(scores.length, 4) + Footprint.array(matches.length, 4)
+                + Footprint.array(touched.length, 4);
+    }
+
+    /**
+     * Returns the tracks matching every word in the specified query, best match first.
+     *
+     * @param query to search for
+     * @param limit maximum amount of results
+     * @return matching tracks
+     */
+    public synchronized List<NoteBlockStudioSong> search(String query, int limit) {
+        List<String> terms = new ArrayList<>(tokenize(query));
+        if (terms.isEmpty() || limit <= 0)
+            return Collections.emptyList();
+        if (scores.length < docs.size()) {
+            scores = new int[docs.size()];
+            matches = new int[docs.size()];
+        }
+
+        // a document stays a candidate only while it has matched every term so far
+        int touchedCount = 0;
+        for (int t = 0; t < terms.size(); t++) {
+            String term = terms.get(t);
+            for (Map.Entry<String, Postings> entry
+                    : postings.subMap(term, true, term + Character.MAX_VALUE, true).entrySet()) {
+                int boost = entry.getKey().length() == term.length() ? 2 : 1;
+                Postings list = entry.getValue();
+                for (int i = 0; i < list.size; i++) {
+                    int posting = list.entries[i];
+                    int doc = posting >>> 2;
+                    if (matches[doc] < t)
+                        continue;
+                    if (matches[doc] == t) {
+                        if (t == 0) {
+                            if (touchedCount == touched.length)
+                                touched = Arrays.copyOf(touched, touchedCount * 2);
+                            touched[touchedCount++] = doc;
+                        }
+                        matches[doc] = t + 1;
+                    }
+                    scores[doc] += FIELD_WEIGHTS[posting & 3] * boost;
+                }
+            }
+        }
+
+        // rank by score, then by document, packed into longs so that sorting does not box
+        long[] ranked = new long[touchedCount];
+        int resultCount = 0;
+        for (int i = 0; i < touchedCount; i++) {
+            int doc = touched[i];
+            if (matches[doc] == terms.size())
+                ranked[resultCount++] = (long) (Integer.MAX_VALUE - scores[doc]) << 32 | doc;
+            scores[doc] = 0;
+            matches[doc] = 0;
+        }
+        Arrays.sort(ranked, 0, resultCount);
+
+        List<NoteBlockStudioSong> results = new ArrayList<>(Math.min(limit, resultCount));
+        for (int i = 0; i < resultCount && results.size() < limit; i++)
+            results.add(docs.get((int) ranked[i]).track);
+        return results;
+    }
+
+    private int add(NoteBlockStudioSong track) {
+        int doc = freeDocs.isEmpty() ? docs.size() : freeDocs.remove(freeDocs.size() - 1);
+        Document document = new Document(track);
+        if (doc == docs.size())
+            docs.add(document);
+        else
+            docs.set(doc, document);
+
+        String[] fields = { track.name, track.author, track.ogAuthor, track.importedFileName };
+        Set<String> words = new HashSet<>();
+        for (int field = 0; field < fields.length; field++) {
+            for (String word : tokenize(fields[field])) {
+                words.add(word);
+                Postings list = postings.get(word);
+                if (list == null) {
+                    postings.put(word, list = new Postings());
+                    footprint += WORD_SIZE + Footprint.string(word) + list.getFootprint();
+                }
+                long before = list.getFootprint();
+                list.add(doc << 2 | field);
+                footprint += list.getFootprint() - before;
+            }
+        }
+        document.words = words.toArray(new String[words.size()]);
+        footprint += DOCUMENT_SIZE + Footprint.array(document.words.length, Footprint.REFERENCE);
+        return doc;
+    }
+
+    private void remove(int doc) {
+        for (String word : docs.get(doc).words) {
+            Postings list = postings.get(word);
+            list.removeDocument(doc);
+            if (list.size == 0) {
+                postings.remove(word);
+                footprint -= WORD_SIZE + Footprint.string(word) + list.getFootprint();
+            }
+        }
+        footprint -= DOCUMENT_SIZE + Footprint.array(docs.get(doc).words.length, Footprint.REFERENCE);
+        docs.set(doc, null);
+        freeDocs.add(doc);
+    }
+
+    private static Set<String> tokenize(String str) {
+        Set<String> words = new LinkedHashSet<>();
+        if (str == null)
+            return words;
+        String lower = str.toLowerCase(Locale.ROOT);
+        int start = -1;
+        for (int i = 0; i <= lower.length(); i++) {
+            boolean wordChar = i < lower.length() && Character.isLetterOrDigit(lower.charAt(i));
+            if (wordChar && start == -1)
+                start = i;
+            else if (!wordChar && start != -1) {
+                words.add(lower.substring(start, i));
+                start = -1;
+            }
+        }
+        return words;
+    }
+
+    private static class Document {
+        private NoteBlockStudioSong track;
+        private String[] words;
+
+        private Document(NoteBlockStudioSong track) {
+            this.track = track;
+        }
+
+        private boolean hasSameFields(NoteBlockStudioSong other) {
+            return Objects.equals(track.name, other.name) && Objects.equals(track.author, other.author)
+                    && Objects.equals(track.ogAuthor, other.ogAuthor)
+                    && Objects.equals(track.importedFileName, other.importedFileName);
+        }
+    }
+
+    /**
+     * Documents containing a word, each entry packed as the document in the upper bits and the field it appeared in
+     * in the lower two.
+     */
+    private static class Postings {
+        private int[] entries = new int[4];
+        private int size;
+
+        private void add(int entry) {
+            if (size == entries.length)
+                entries = Arrays.copyOf(entries, size * 2);
+            entries[size++] = entry;
+        }
+
+        private void removeDocument(int doc) {
+            int kept = 0;
+            for (int i = 0; i < size; i++) {
+                if (entries[i] >>> 2 != doc)
+                    entries[kept++] = entries[i];
+            }
+            size = kept;
+        }
+
+        private long getFootprint() {
+            return Footprint.array(entries.length, 4);
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package se.walkercrou.composer.nbs;
+
+import se.walkercrou.composer.util.Footprint;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * An immutable snapshot of the loaded {@link NoteBlockStudioSong}s. A new snapshot is published every time the tracks
+ * are (re)loaded so that a {@link MusicPlayer} can keep referring to the one it was created with until it is ready to
+ * move on to the newer one.
+ */
+public final class TrackLibrary {
+    /**
+     * A library with no tracks.
+     */
+    public static final TrackLibrary EMPTY = new TrackLibrary(Collections.<NoteBlockStudioSong>emptyList());
+
+    // a hash map entry, its share of the table and a boxed value, see Footprint
+    private static final long ENTRY_SIZE = Footprint.object(4 + 3 * Footprint.REFERENCE) + 2 * Footprint.REFERENCE
+            + Footprint.object(4);
+
+    private final List<NoteBlockStudioSong> tracks;
+    private final Map<String, Integer> indexBySource = new HashMap<>();
+    private final Map<String, Integer> indexById = new HashMap<>();
+    private final Map<String, NoteBlockStudioSong> aliases;
+    private final long footprint;
+
+    /**
+     * Creates a new library snapshot of the specified tracks. Tracks that sound the same as an earlier track, going by
+     * {@link NoteBlockStudioSong#getNoteHash()}, are not listed again but become aliases of the earlier track: they
+     * are still found by source and id, see {@link #getAliases()}.
+     *
+     * @param tracks tracks in library
+     */
+    public TrackLibrary(List<NoteBlockStudioSong> tracks) {
+        List<NoteBlockStudioSong> unique = new ArrayList<>(tracks.size());
+        Map<Long, List<Integer>> indicesByHash = new HashMap<>();
+        Map<String, NoteBlockStudioSong> aliases = new LinkedHashMap<>();
+        long footprint = 0;
+        for (NoteBlockStudioSong track : tracks) {
+            List<Integer> sameHash = indicesByHash.computeIfAbsent(track.getNoteHash(), h -> new ArrayList<>(1));
+            int index = -1;
+            for (int candidate : sameHash) {
+                if (unique.get(candidate).hasSameNotes(track)) {
+                    index = candidate;
+                    break;
+                }
+            }
+            if (index == -1) {
+                index = unique.size();
+                unique.add(track);
+                sameHash.add(index);
+                footprint += track.footprint + Footprint.REFERENCE;
+            } else {
+                aliases.put(track.source == null ? getTrackId(track) : track.source, unique.get(index));
+                footprint += ENTRY_SIZE;
+            }
+            if (track.source != null && indexBySource.putIfAbsent(track.source, index) == null)
+                footprint += ENTRY_SIZE;
+            String trackId = getTrackId(track);
+            if (indexById.putIfAbsent(trackId, index) == null)
+                footprint += ENTRY_SIZE + Footprint.string(trackId);
+        }
+        this.tracks = Collections.unmodifiableList(unique);
+        this.aliases = Collections.unmodifiableMap(aliases);
+        this.footprint = footprint;
+    }
+
+    /**
+     * Returns the id of the specified track: the name of the file it was read from, without a .gz extension. Unlike
+     * the full path the id is the same on every server that has the track, loose, compressed or in a pack.
+     *
+     * @param track to get id of
+     * @return track id
+     */
+    public static String getTrackId(NoteBlockStudioSong track) {
+        if (track.source == null)
+            return String.valueOf(track.name);
+        String name = new File(track.source).getName();
+        return name.endsWith(".gz") ? name.substring(0, name.length() - 3) : name;
+    }
+
+    /**
+     * Returns the track at the specified index.
+     *
+     * @param index of track
+     * @return track
+     */
+    public NoteBlockStudioSong get(int index) {
+        return tracks.get(index);
+    }
+
+    /**
+     * Returns the amount of tracks in this library.
+     *
+     * @return amount of tracks
+     */
+    public int size() {
+        return tracks.size();
+    }
+
+    /**
+     * Returns the tracks in this library.
+     *
+     * @return unmodifiable list of tracks
+     */
+    public List<NoteBlockStudioSong> getTracks() {
+        return tracks;
+    }
+
+    /**
+     * Returns an estimate of the bytes of heap this library holds, its tracks included. Duplicates that were folded
+     * into another track are not held and not counted.
+     *
+     * @return bytes
+     * @see NoteBlockStudioSong#footprint
+     */
+    public long getFootprint() {
+        return footprint;
+    }
+
+    /**
+     * Returns the tracks that hold the most heap, largest first.
+     *
+     * @param limit maximum amount of tracks
+     * @return largest tracks
+     */
+    public List<NoteBlockStudioSong> getLargest(int limit) {
+        Comparator<NoteBlockStudioSong> bySize = Comparator.comparingLong(track -> track.footprint);
+        PriorityQueue<NoteBlockStudioSong> largest = new PriorityQueue<>(bySize);
+        for (NoteBlockStudioSong track : tracks) {
+            largest.add(track);
+            if (largest.size() > limit)
+                largest.poll();
+        }
+        List<NoteBlockStudioSong> result = new ArrayList<>(largest);
+        result.sort(bySize.reversed());
+        return result;
+    }
+
+    /**
+     * Returns the duplicate tracks that were folded into another track, by the source they were read from.
+     *
+     * @return unmodifiable map of alias source to the track it is a copy of
+     */
+    public Map<String, NoteBlockStudioSong> getAliases() {
+        return aliases;
+    }
+
+    /**
+     * Returns the index of the specified track in this library, or -1 if it is not in it. Tracks are matched by the
+     * file they were read from so that a track from an older snapshot can be found in a reloaded one.
+     *
+     * @param track to find
+     * @return index of track or -1
+     */
+    public int indexOf(NoteBlockStudioSong track) {
+        Integer index = track.source == null ? null : indexBySource.get(track.source);
+        return index == null ? tracks.indexOf(track) : index;
+    }
+
+    /**
+     * Returns the index of the track with the specified id in this library, or -1 if it is not in it.
+     *
+     * @param trackId to find
+     * @return index of track or -1
+     * @see #getTrackId(NoteBlockStudioSong)
+     */
+    public int indexOf(String trackId) {
+        Integer index = indexById.get(trackId);
+        return index == null ? -1 : index;
+    }
+}
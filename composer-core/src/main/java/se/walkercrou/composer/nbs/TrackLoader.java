@@ -0,0 +1,288 @@
+package se.walkercrou.composer.nbs;
+
+import se.walkercrou.composer.Score;
+import se.walkercrou.composer.midi.MidiReader;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Loads the tracks in a directory. Besides loose .nbs files, tracks may be gzip compressed (.nbs.gz) or bundled in
+ * .zip packs of .nbs and .nbs.gz entries, so that large libraries can be shipped as a handful of files. MIDI files
+ * (.mid and .midi) are imported with {@link MidiReader}. Packs are read through the zip {@link FileSystem}. Every
+ * track is read and parsed on a pool of worker threads. Tracks are read within {@link NbsLimits}, a file that is
+ * malformed or too large is reported and left out without reading more of it than needed. The notes of .nbs tracks
+ * may be packed into a {@link NoteArena} rather than kept on the heap, imported MIDI files keep their score.
+ */
+public class TrackLoader {
+    private final int parallelism;
+    private NbsLimits limits = NbsLimits.DEFAULT;
+    private NoteArena arena;
+    private BiConsumer<String, Exception> errorHandler = (source, e) -> {
+    };
+    private BiConsumer<Integer, Integer> progressHandler = (done, total) -> {
+    };
+
+    /**
+     * Creates a new loader that reads on as many threads as there are processors.
+     */
+    public TrackLoader() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a new loader that reads on the specified amount of threads.
+     *
+     * @param parallelism amount of threads
+     */
+    public TrackLoader(int parallelism) {
+        if (parallelism < 1)
+            throw new IllegalArgumentException("parallelism must be positive");
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Sets a handler to call with the source and cause of every track that could not be read. Tracks that cannot be
+     * read are left out.
+     *
+     * @param errorHandler handler
+     * @return this
+     */
+    public TrackLoader onError(BiConsumer<String, Exception> errorHandler) {
+        this.errorHandler = errorHandler;
+        return this;
+    }
+
+    /**
+     * Sets the limits tracks are read within. The default is {@link NbsLimits#DEFAULT}.
+     *
+     * @param limits to read within
+     * @return this
+     */
+    public TrackLoader limits(NbsLimits limits) {
+        this.limits = limits;
+        return this;
+    }
+
+    /**
+     * Sets the arena to pack the notes of the tracks into, or null to keep them on the heap, the default.
+     *
+     * @param arena to pack into
+     * @return this
+     * @see NoteBlockStudioSong#read(byte[], String, NbsLimits, NoteArena)
+     */
+    public TrackLoader arena(NoteArena arena) {
+        this.arena = arena;
+        return this;
+    }
+
+    /**
+     * Sets a handler to call with the amount of tracks done and the total amount every time a track is done. May be
+     * called from any of the worker threads.
+     *
+     * @param progressHandler handler
+     * @return this
+     */
+    public TrackLoader onProgress(BiConsumer<Integer, Integer> progressHandler) {
+        this.progressHandler = progressHandler;
+        return this;
+    }
+
+    /**
+     * Loads every track in the specified directory, ordered by source.
+     *
+     * @param dir to load from
+     * @return tracks
+     * @throws IOException if the directory cannot be listed
+     */
+    public List<NoteBlockStudioSong> load(Path dir) throws IOException {
+        List<FileSystem> packs = new ArrayList<>();
+        List<Path> files = new ArrayList<>();
+        try {
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+                for (Path path : stream) {
+                    String name = path.getFileName().toString();
+                    if (isTrack(name))
+                        files.add(path);
+                    else if (name.endsWith(".zip")) {
+                        try {
+                            FileSystem pack = FileSystems.newFileSystem(path, (ClassLoader) null);
+                            packs.add(pack);
+                            addPackEntries(pack, files);
+                        } catch (IOException e) {
+                            errorHandler.accept(path.toString(), e);
+                        }
+                    }
+                }
+            }
+            files.sort(Comparator.comparing(TrackLoader::sourceOf));
+            return readAll(files);
+        } finally {
+            for (FileSystem pack : packs) {
+                try {
+                    pack.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads only the first seconds of the track loaded from the specified source, which may be a loose file, a
+     * compressed one or an entry of a pack. The track is read within the limits of this loader.
+     *
+     * @param source of track
+     * @param seconds of the track to read
+     * @return start of track
+     * @throws IOException if the track cannot be read
+     * @see NoteBlockStudioSong#readPreview(byte[], String, double, NbsLimits)
+     * @see MidiReader#readPreview(ByteBuffer, int, double)
+     */
+    public NoteBlockStudioSong readPreview(String source, double seconds) throws IOException {
+        int entry = source.indexOf(".zip!/");
+        if (entry < 0)
+            return readPreview(readBytes(Paths.get(source), limits), source, seconds);
+        Path zip = Paths.get(source.substring(0, entry + 4));
+        try (FileSystem pack = FileSystems.newFileSystem(zip, (ClassLoader) null)) {
+            byte[] bytes = readBytes(pack.getPath(source.substring(entry + 5)), limits);
+            return readPreview(bytes, source, seconds);
+        }
+    }
+
+    private NoteBlockStudioSong readPreview(byte[] bytes, String source, double seconds) throws IOException {
+        if (isMidi(source)) {
+            Score score = MidiReader.readPreview(ByteBuffer.wrap(bytes), MidiReader.DEFAULT_STEP_MILLIS, seconds);
+            return NoteBlockStudioSong.of(score, source);
+        }
+        return NoteBlockStudioSong.readPreview(bytes, source, seconds, limits);
+    }
+
+    private void addPackEntries(FileSystem pack, List<Path> files) throws IOException {
+        for (Path root : pack.getRootDirectories()) {
+            try (Stream<Path> entries = Files.walk(root)) {
+                entries.filter(p -> p.getFileName() != null && isTrack(p.getFileName().toString()))
+                        .filter(Files::isRegularFile)
+                        .forEach(files::add);
+            }
+        }
+    }
+
+    private List<NoteBlockStudioSong> readAll(List<Path> files) throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, Math.max(1, files.size())),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "Composer track loader");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        try {
+            int total = files.size();
+            AtomicInteger done = new AtomicInteger();
+            List<Future<NoteBlockStudioSong>> futures = new ArrayList<>(total);
+            for (Path file : files) {
+                futures.add(executor.submit(() -> {
+                    try {
+                        return read(file);
+                    } catch (IOException | RuntimeException e) {
+                        errorHandler.accept(sourceOf(file), e);
+                        return null;
+                    } finally {
+                        progressHandler.accept(done.incrementAndGet(), total);
+                    }
+                }));
+            }
+
+            List<NoteBlockStudioSong> tracks = new ArrayList<>(total);
+            for (Future<NoteBlockStudioSong> future : futures) {
+                NoteBlockStudioSong track = future.get();
+                if (track != null)
+                    tracks.add(track);
+            }
+            return tracks;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while loading tracks", e);
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private NoteBlockStudioSong read(Path file) throws IOException {
+        byte[] bytes = readBytes(file, limits);
+        if (isMidi(file.getFileName().toString())) {
+            Score score = MidiReader.read(ByteBuffer.wrap(bytes), MidiReader.DEFAULT_STEP_MILLIS);
+            if (score.getTimeline().size() > limits.getMaxNotes()) {
+                throw new NbsFormatException(NbsFormatException.Problem.TOO_MANY_NOTES, "more than "
+                        + limits.getMaxNotes() + " notes");
+            }
+            return NoteBlockStudioSong.of(score, sourceOf(file));
+        }
+        return NoteBlockStudioSong.read(bytes, sourceOf(file), limits, arena);
+    }
+
+    private static byte[] readBytes(Path file, NbsLimits limits) throws IOException {
+        if (file.getFileName().toString().endsWith(".gz")) {
+            try (InputStream in = new GZIPInputStream(Files.newInputStream(file), 8192)) {
+                return readFully(in, limits.getMaxFileSize());
+            }
+        }
+        // the size a pack entry claims may not be true, so reads are capped either way
+        if (Files.size(file) > limits.getMaxFileSize())
+            throw fileTooLarge(limits.getMaxFileSize());
+        try (InputStream in = Files.newInputStream(file)) {
+            return readFully(in, limits.getMaxFileSize());
+        }
+    }
+
+    private static byte[] readFully(InputStream in, int maxSize) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(8192);
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            if (out.size() + read > maxSize)
+                throw fileTooLarge(maxSize);
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    private static NbsFormatException fileTooLarge(int maxSize) {
+        return new NbsFormatException(NbsFormatException.Problem.FILE_TOO_LARGE, "file is larger than the limit of "
+                + maxSize + " bytes");
+    }
+
+    private static boolean isTrack(String name) {
+        return name.endsWith(".nbs") || name.endsWith(".nbs.gz") || isMidi(name);
+    }
+
+    private static boolean isMidi(String name) {
+        return name.endsWith(".mid") || name.endsWith(".midi");
+    }
+
+    // entries of packs are named after the pack they are in
+    private static String sourceOf(Path file) {
+        if (file.getFileSystem() == FileSystems.getDefault())
+            return file.toString();
+        return file.getFileSystem() + "!" + file;
+    }
+}
@@ -0,0 +1,57 @@
+package se.walkercrou.composer.station;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * A {@link StationTransport} that connects stations in the same process. Messages are delivered immediately on the
+ * sending thread. Useful for tests and for running several stations headlessly.
+ */
+public class LoopbackTransport implements StationTransport {
+    private final Hub hub;
+    private volatile Consumer<byte[]> receiver;
+
+    private LoopbackTransport(Hub hub) {
+        this.hub = hub;
+    }
+
+    @Override
+    public void send(byte[] message) {
+        for (LoopbackTransport endpoint : hub.endpoints) {
+            Consumer<byte[]> target = endpoint.receiver;
+            if (endpoint != this && target != null)
+                target.accept(message.clone());
+        }
+    }
+
+    @Override
+    public void setReceiver(Consumer<byte[]> receiver) {
+        this.receiver = receiver;
+    }
+
+    /**
+     * Disconnects this transport from its {@link Hub}.
+     */
+    public void disconnect() {
+        hub.endpoints.remove(this);
+    }
+
+    /**
+     * Connects {@link LoopbackTransport}s to each other.
+     */
+    public static class Hub {
+        private final List<LoopbackTransport> endpoints = new CopyOnWriteArrayList<>();
+
+        /**
+         * Creates a new transport connected to every other transport of this hub.
+         *
+         * @return new transport
+         */
+        public LoopbackTransport connect() {
+            LoopbackTransport transport = new LoopbackTransport(this);
+            endpoints.add(transport);
+            return transport;
+        }
+    }
+}
@@ -0,0 +1,298 @@
+package se.walkercrou.composer.station;
+
+import se.walkercrou.composer.engine.Clock;
+import se.walkercrou.composer.engine.ScheduledTask;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+
+/**
+ * A music station shared by several servers. Servers only exchange the {@link StationState}: which track is playing,
+ * where it was at an anchor time and how fast it moves. Each server resolves the track from its own library and works
+ * out the position from its own clock, so no audio or per-note traffic goes over the {@link StationTransport}.
+ * <p>
+ * Any server may change the station. Every change is a new state with a higher version, all servers keep the newest
+ * state they have seen. To correct for clocks that are not in sync, servers ping each other and estimate each other's
+ * clock offset from the round trip, NTP style, keeping the sample with the shortest round trip.
+ * <p>
+ * On every sync interval a server pings the others and re-sends the current state if it authored it, which lets
+ * servers that joined late or missed a message catch up.
+ */
+public class Station {
+    /**
+     * How often servers ping each other and re-send the current state.
+     */
+    public static final long SYNC_INTERVAL_MILLIS = 10000;
+
+    private static final byte PROTOCOL_VERSION = 1;
+    private static final byte STATE = 1, PING = 2, PONG = 3;
+    // an offset sample this old is replaced by the next one even if its round trip was shorter, clocks drift
+    private static final long SKEW_SAMPLE_TTL_MILLIS = 60000;
+
+    private final String serverId;
+    private final Clock clock;
+    private final StationTransport transport;
+    private final AtomicReference<StationState> state = new AtomicReference<>(StationState.STOPPED);
+    private final Map<String, Skew> skews = new ConcurrentHashMap<>();
+    private final List<Consumer<StationState>> listeners = new CopyOnWriteArrayList<>();
+    private volatile ScheduledTask syncTask;
+
+    /**
+     * Creates a new station.
+     *
+     * @param serverId unique id of this server on the station
+     * @param clock to read epoch time from
+     * @param transport to talk to other servers over
+     */
+    public Station(String serverId, Clock clock, StationTransport transport) {
+        this.serverId = serverId;
+        this.clock = clock;
+        this.transport = transport;
+    }
+
+    /**
+     * Returns the id of this server on the station.
+     *
+     * @return server id
+     */
+    public String getServerId() {
+        return serverId;
+    }
+
+    /**
+     * Adds a listener to call whenever the station state changes, locally or from another server. Listeners may be
+     * called on the transport's thread.
+     *
+     * @param listener to add
+     */
+    public void addListener(Consumer<StationState> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Starts receiving from and syncing with the other servers.
+     */
+    public void start() {
+        transport.setReceiver(this::receive);
+        sync();
+        syncTask = clock.schedule(this::sync, SYNC_INTERVAL_MILLIS, "Composer station sync");
+    }
+
+    /**
+     * Stops receiving from and syncing with the other servers.
+     */
+    public void stop() {
+        ScheduledTask task = syncTask;
+        if (task != null)
+            task.cancel();
+        transport.setReceiver(null);
+    }
+
+    /**
+     * Returns the latest state of the station.
+     *
+     * @return station state
+     */
+    public StationState getState() {
+        return state.get();
+    }
+
+    /**
+     * Returns the current position in the current track, corrected for the clock of the server that authored the
+     * state.
+     *
+     * @return time from start of track in milliseconds
+     */
+    public long getPosition() {
+        return positionOf(state.get());
+    }
+
+    /**
+     * Returns the estimated offset of the specified server's clock from this server's clock.
+     *
+     * @param serverId server
+     * @return offset in milliseconds, zero if not known yet
+     */
+    public long getOffset(String serverId) {
+        Skew skew = skews.get(serverId);
+        return skew == null ? 0 : skew.offset;
+    }
+
+    /**
+     * Starts playing the specified track on every server.
+     *
+     * @param trackId track to play
+     * @param positionMillis position to start at
+     * @param rate speed to play at
+     */
+    public void play(String trackId, long positionMillis, double rate) {
+        if (!(rate > 0) || Double.isInfinite(rate))
+            throw new IllegalArgumentException("rate must be positive: " + rate);
+        change(current -> author(current, trackId, Math.max(0, positionMillis), rate, true));
+    }
+
+    /**
+     * Pauses the station at its current position.
+     */
+    public void pause() {
+        change(current -> author(current, current.getTrackId(), positionOf(current), current.getRate(), false));
+    }
+
+    /**
+     * Resumes the station from its current position.
+     */
+    public void resume() {
+        change(current -> author(current, current.getTrackId(), positionOf(current), current.getRate(), true));
+    }
+
+    /**
+     * Moves the station to the specified position in the current track.
+     *
+     * @param positionMillis time from start of track
+     */
+    public void seek(long positionMillis) {
+        change(current -> author(current, current.getTrackId(), Math.max(0, positionMillis), current.getRate(),
+                current.isPlaying()));
+    }
+
+    /**
+     * Changes the speed of the station from its current position.
+     *
+     * @param rate speed to play at
+     */
+    public void setRate(double rate) {
+        if (!(rate > 0) || Double.isInfinite(rate))
+            throw new IllegalArgumentException("rate must be positive: " + rate);
+        change(current -> author(current, current.getTrackId(), positionOf(current), rate, current.isPlaying()));
+    }
+
+    private StationState author(StationState current, String trackId, long positionMillis, double rate,
+                                boolean playing) {
+        return new StationState(current.getVersion() + 1, serverId, trackId, clock.millis(), positionMillis, rate,
+                playing);
+    }
+
+    private void change(UnaryOperator<StationState> change) {
+        StationState current, next;
+        do {
+            current = state.get();
+            next = change.apply(current);
+        } while (!state.compareAndSet(current, next));
+        sendState(next);
+        notifyListeners(next);
+    }
+
+    private long positionOf(StationState s) {
+        long offset = s.getOrigin().equals(serverId) ? 0 : getOffset(s.getOrigin());
+        return s.getPositionAt(clock.millis() + offset);
+    }
+
+    private void notifyListeners(StationState s) {
+        for (Consumer<StationState> listener : listeners)
+            listener.accept(s);
+    }
+
+    private void sync() {
+        send(PING, out -> out.writeLong(clock.millis()));
+        StationState current = state.get();
+        if (current.getOrigin().equals(serverId))
+            sendState(current);
+    }
+
+    private void sendState(StationState s) {
+        send(STATE, s::write);
+    }
+
+    private void send(byte type, Body body) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(PROTOCOL_VERSION);
+            out.writeByte(type);
+            out.writeUTF(serverId);
+            body.write(out);
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // writing to memory
+        }
+        transport.send(bytes.toByteArray());
+    }
+
+    private void receive(byte[] message) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(message))) {
+            if (in.readByte() != PROTOCOL_VERSION)
+                return;
+            byte type = in.readByte();
+            String from = in.readUTF();
+            if (from.equals(serverId))
+                return;
+            switch (type) {
+                case STATE:
+                    receiveState(StationState.read(in));
+                    break;
+                case PING:
+                    long sentAt = in.readLong();
+                    send(PONG, out -> {
+                        out.writeUTF(from);
+                        out.writeLong(sentAt);
+                        out.writeLong(clock.millis());
+                    });
+                    StationState current = state.get();
+                    if (current.getOrigin().equals(serverId))
+                        sendState(current); // bring a server that just joined up to date
+                    break;
+                case PONG:
+                    if (in.readUTF().equals(serverId))
+                        receivePong(from, in.readLong(), in.readLong());
+                    break;
+                default:
+                    break;
+            }
+        } catch (IOException e) {
+            // malformed message, the next sync brings us up to date
+        }
+    }
+
+    private void receiveState(StationState received) {
+        StationState current;
+        do {
+            current = state.get();
+            if (!received.isNewerThan(current))
+                return;
+        } while (!state.compareAndSet(current, received));
+        notifyListeners(received);
+    }
+
+    private void receivePong(String from, long sentAt, long remoteAt) {
+        long now = clock.millis();
+        long roundTrip = now - sentAt;
+        if (roundTrip < 0)
+            return;
+        // assume the pong was sent halfway through the round trip
+        Skew sample = new Skew(remoteAt - (sentAt + now) / 2, roundTrip, now);
+        skews.merge(from, sample, (old, next) -> next.roundTrip <= old.roundTrip
+                || next.sampledAt - old.sampledAt > SKEW_SAMPLE_TTL_MILLIS ? next : old);
+    }
+
+    private interface Body {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private static final class Skew {
+        private final long offset, roundTrip, sampledAt;
+
+        private Skew(long offset, long roundTrip, long sampledAt) {
+            this.offset = offset;
+            this.roundTrip = roundTrip;
+            this.sampledAt = sampledAt;
+        }
+    }
+}
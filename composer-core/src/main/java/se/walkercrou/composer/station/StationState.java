@@ -0,0 +1,153 @@
+package se.walkercrou.composer.station;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * What a {@link Station} is playing: a track, where in the track it was at an anchor time and the rate it moves at
+ * from there. The anchor time is on the clock of the server that authored the state, receivers correct it for their
+ * own clock. States are immutable and ordered by version so that servers agree on the latest one.
+ */
+public final class StationState {
+    /**
+     * The state of a station that has not played anything.
+     */
+    public static final StationState STOPPED = new StationState(0, "", null, 0, 0, 1, false);
+
+    private final long version;
+    private final String origin;
+    private final String trackId;
+    private final long anchorMillis;
+    private final long positionMillis;
+    private final double rate;
+    private final boolean playing;
+
+    StationState(long version, String origin, String trackId, long anchorMillis, long positionMillis, double rate,
+                 boolean playing) {
+        this.version = version;
+        this.origin = origin;
+        this.trackId = trackId;
+        this.anchorMillis = anchorMillis;
+        this.positionMillis = positionMillis;
+        this.rate = rate;
+        this.playing = playing;
+    }
+
+    /**
+     * Returns the version of this state, every change made to a station increases it.
+     *
+     * @return version
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns the id of the server that authored this state.
+     *
+     * @return server id
+     */
+    public String getOrigin() {
+        return origin;
+    }
+
+    /**
+     * Returns the id of the track being played, or null if nothing is.
+     *
+     * @return track id
+     */
+    public String getTrackId() {
+        return trackId;
+    }
+
+    /**
+     * Returns the time, on the clock of {@link #getOrigin()}, at which the track was at {@link #getPositionMillis()}.
+     *
+     * @return anchor time in epoch milliseconds
+     */
+    public long getAnchorMillis() {
+        return anchorMillis;
+    }
+
+    /**
+     * Returns the position in the track at {@link #getAnchorMillis()}.
+     *
+     * @return time from start of track in milliseconds
+     */
+    public long getPositionMillis() {
+        return positionMillis;
+    }
+
+    /**
+     * Returns the speed the track is played at, where 1 is its own tempo.
+     *
+     * @return rate
+     */
+    public double getRate() {
+        return rate;
+    }
+
+    /**
+     * Returns true if the track is playing rather than paused.
+     *
+     * @return true if playing
+     */
+    public boolean isPlaying() {
+        return playing;
+    }
+
+    /**
+     * Returns the position in the track at the specified time on the clock of {@link #getOrigin()}.
+     *
+     * @param originMillis time on origin's clock
+     * @return time from start of track in milliseconds
+     */
+    public long getPositionAt(long originMillis) {
+        if (!playing)
+            return positionMillis;
+        return Math.max(0, positionMillis + (long) ((originMillis - anchorMillis) * rate));
+    }
+
+    /**
+     * Returns true if this state supersedes the specified one. Ties between servers that changed the station at the
+     * same time are broken by server id so that every server picks the same state.
+     *
+     * @param other state to compare to
+     * @return true if newer
+     */
+    public boolean isNewerThan(StationState other) {
+        return version > other.version || version == other.version && origin.compareTo(other.origin) > 0;
+    }
+
+    void write(DataOutput out) throws IOException {
+        out.writeLong(version);
+        out.writeUTF(origin);
+        out.writeBoolean(trackId != null);
+        if (trackId != null)
+            out.writeUTF(trackId);
+        out.writeLong(anchorMillis);
+        out.writeLong(positionMillis);
+        out.writeDouble(rate);
+        out.writeBoolean(playing);
+    }
+
+    static StationState read(DataInput in) throws IOException {
+        long version = in.readLong();
+        String origin = in.readUTF();
+        String trackId = in.readBoolean() ? in.readUTF() : null;
+        long anchorMillis = in.readLong();
+        long positionMillis = in.readLong();
+        double rate = in.readDouble();
+        boolean playing = in.readBoolean();
+        if (!(rate > 0) || Double.isInfinite(rate) || positionMillis < 0)
+            throw new IOException("invalid station state");
+        return new StationState(version, origin, trackId, anchorMillis, positionMillis, rate, playing);
+    }
+
+    @Override
+    public String toString() {
+        return "StationState{version=" + version + ", origin=" + origin + ", trackId=" + trackId + ", anchor="
+                + anchorMillis + ", position=" + positionMillis + ", rate=" + rate + ", playing=" + playing + "}";
+    }
+}
@@ -0,0 +1,24 @@
+package se.walkercrou.composer.station;
+
+import java.util.function.Consumer;
+
+/**
+ * Carries {@link Station} messages between servers. A transport is a dumb broadcast pipe for small opaque messages,
+ * the protocol itself is handled by the station. Implementations may deliver messages on any thread, may drop them
+ * and may deliver them out of order, a station recovers from all of these on its next sync.
+ */
+public interface StationTransport {
+    /**
+     * Sends a message to every other server on the station. Should not block on the network.
+     *
+     * @param message to send
+     */
+    void send(byte[] message);
+
+    /**
+     * Sets where messages from other servers are delivered to.
+     *
+     * @param receiver of messages, or null to stop receiving
+     */
+    void setReceiver(Consumer<byte[]> receiver);
+}
@@ -0,0 +1,82 @@
+package se.walkercrou.composer.station;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * A {@link StationTransport} that sends every message as a UDP datagram to a fixed list of peers. Station messages are
+ * a few dozen bytes and the station recovers from lost ones, so there is no connection to keep up. Messages are
+ * received on a daemon thread of their own.
+ */
+public class UdpTransport implements StationTransport, Closeable {
+    private static final int MAX_DATAGRAM_SIZE = 65507;
+
+    private final DatagramSocket socket;
+    private final List<InetSocketAddress> peers;
+    private volatile Consumer<byte[]> receiver;
+
+    /**
+     * Creates a new transport that receives on the specified port and sends to the specified peers.
+     *
+     * @param port to receive on
+     * @param peers to send to
+     * @throws SocketException if the port could not be bound
+     */
+    public UdpTransport(int port, List<InetSocketAddress> peers) throws SocketException {
+        this.socket = new DatagramSocket(port);
+        this.peers = new ArrayList<>(peers);
+        Thread thread = new Thread(this::receiveLoop, "Composer station transport");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void send(byte[] message) {
+        for (InetSocketAddress peer : peers) {
+            if (peer.isUnresolved())
+                continue;
+            try {
+                socket.send(new DatagramPacket(message, message.length, peer));
+            } catch (IOException e) {
+                // peer unreachable or socket closed, the next sync tries again
+            }
+        }
+    }
+
+    @Override
+    public void setReceiver(Consumer<byte[]> receiver) {
+        this.receiver = receiver;
+    }
+
+    /**
+     * Stops receiving and releases the port.
+     */
+    @Override
+    public void close() {
+        socket.close();
+    }
+
+    private void receiveLoop() {
+        DatagramPacket packet = new DatagramPacket(new byte[MAX_DATAGRAM_SIZE], MAX_DATAGRAM_SIZE);
+        while (!socket.isClosed()) {
+            try {
+                packet.setLength(MAX_DATAGRAM_SIZE);
+                socket.receive(packet);
+            } catch (IOException e) {
+                continue; // closed, or a datagram that could not be read
+            }
+            Consumer<byte[]> target = receiver;
+            if (target != null)
+                target.accept(Arrays.copyOfRange(packet.getData(), packet.getOffset(),
+                        packet.getOffset() + packet.getLength()));
+        }
+    }
+}
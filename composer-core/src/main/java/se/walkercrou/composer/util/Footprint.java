@@ -0,0 +1,70 @@
+package se.walkercrou.composer.util;
+
+/**
+ * Estimates of how much heap objects take on a 64 bit JVM with compressed references, the default for heaps under
+ * 32 GiB. Footprints are added up as data is created, so reporting them never walks the heap, but they do not know
+ * about sharing: two things pointing at the same string both count it.
+ */
+public final class Footprint {
+    /**
+     * Size of a reference.
+     */
+    public static final int REFERENCE = 4;
+
+    private static final int OBJECT_HEADER = 12, ARRAY_HEADER = 16;
+    private static final String[] UNITS = { "B", "KiB", "MiB", "GiB" };
+
+    private Footprint() {
+    }
+
+    /**
+     * Returns the size of an object with the specified amount of bytes in fields.
+     *
+     * @param fieldBytes combined size of the fields
+     * @return bytes
+     */
+    public static long object(int fieldBytes) {
+        return align(OBJECT_HEADER + fieldBytes);
+    }
+
+    /**
+     * Returns the size of an array.
+     *
+     * @param length of array
+     * @param elementBytes size of an element, {@link #REFERENCE} for object arrays
+     * @return bytes
+     */
+    public static long array(int length, int elementBytes) {
+        return align(ARRAY_HEADER + (long) length * elementBytes);
+    }
+
+    /**
+     * Returns the size of a string including its characters, zero for null.
+     *
+     * @param str string
+     * @return bytes
+     */
+    public static long string(String str) {
+        return str == null ? 0 : object(REFERENCE + 4) + array(str.length(), 2);
+    }
+
+    /**
+     * Returns the specified amount of bytes in the largest unit it is at least one of, like "1.5 MiB".
+     *
+     * @param bytes to format
+     * @return formatted size
+     */
+    public static String format(long bytes) {
+        int unit = 0;
+        double value = bytes;
+        while (value >= 1024 && unit < UNITS.length - 1) {
+            value /= 1024;
+            unit++;
+        }
+        return unit == 0 ? bytes + " B" : String.format("%.1f %s", value, UNITS[unit]);
+    }
+
+    private static long align(long bytes) {
+        return bytes + 7 & ~7L;
+    }
+}
@@ -0,0 +1,125 @@
+package se.walkercrou.composer.util;
+
+import java.util.Arrays;
+
+/**
+ * A small open addressing hash map from non-negative int keys to int values. Used where boxing every entry into a
+ * {@link java.util.HashMap} would cost more than the data being stored.
+ */
+public final class IntIntMap {
+    private static final int FREE = -1;
+
+    private int[] keys;
+    private int[] values;
+    private int size;
+
+    /**
+     * Creates a new empty map.
+     */
+    public IntIntMap() {
+        this(8);
+    }
+
+    /**
+     * Creates a new empty map with room for roughly the specified amount of entries before resizing.
+     *
+     * @param expected amount of entries
+     */
+    public IntIntMap(int expected) {
+        int capacity = 8;
+        while (capacity < expected * 2)
+            capacity <<= 1;
+        allocate(capacity);
+    }
+
+    /**
+     * Returns the value mapped to the specified key or the default value if there is none.
+     *
+     * @param key to look up
+     * @param defaultValue returned if key is not mapped
+     * @return value
+     */
+    public int get(int key, int defaultValue) {
+        int mask = keys.length - 1;
+        for (int i = mix(key) & mask; ; i = (i + 1) & mask) {
+            int k = keys[i];
+            if (k == key)
+                return values[i];
+            if (k == FREE)
+                return defaultValue;
+        }
+    }
+
+    /**
+     * Maps the specified key to the specified value.
+     *
+     * @param key non-negative key
+     * @param value to map
+     */
+    public void put(int key, int value) {
+        if (key < 0)
+            throw new IllegalArgumentException("key must be non-negative");
+        int mask = keys.length - 1;
+        for (int i = mix(key) & mask; ; i = (i + 1) & mask) {
+            int k = keys[i];
+            if (k == key) {
+                values[i] = value;
+                return;
+            }
+            if (k == FREE) {
+                keys[i] = key;
+                values[i] = value;
+                if (++size * 2 > keys.length)
+                    rehash(keys.length << 1);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns the amount of entries in this map.
+     *
+     * @return size of map
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns an estimate of the bytes of heap this map holds.
+     *
+     * @return bytes
+     * @see Footprint
+     */
+    public long getFootprint() {
+        return Footprint.object(2 * Footprint.REFERENCE + 4) + 2 * Footprint.array(keys.length, 4);
+    }
+
+    /**
+     * Removes all entries and releases the memory held by them.
+     */
+    public void clear() {
+        allocate(8);
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        values = new int[capacity];
+        Arrays.fill(keys, FREE);
+        size = 0;
+    }
+
+    private void rehash(int capacity) {
+        int[] oldKeys = keys, oldValues = values;
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != FREE)
+                put(oldKeys[i], oldValues[i]);
+        }
+    }
+
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
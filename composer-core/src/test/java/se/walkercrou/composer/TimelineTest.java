@@ -0,0 +1,106 @@
+package se.walkercrou.composer;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.*;
+
+/**
+ * Lays out a {@link Score} on a {@link Timeline} and seeks through it.
+ */
+public class TimelineTest {
+    // two measures of common time at 120 bpm, the shortest note is a sixteenth so a step is 125ms
+    private final Score score = new Score.Builder()
+            .tempo(120)
+            .time(TimeSignature.COMMON)
+            .newLayer()
+            .measure(new Measure(new Note(Instrument.HARP, 1, Note.SIXTEENTH), Note.rest(Note.SIXTEENTH),
+                            new Note(Instrument.HARP, 1, Note.EIGHTH), new Note(Instrument.HARP, 1, Note.HALF),
+                            Note.rest(Note.QUARTER)),
+                    new Measure(new Note(Instrument.HARP, 1, Note.WHOLE)))
+            .saveLayer()
+            .newLayer()
+            .measure(new Measure(Note.rest(Note.EIGHTH), new Note(Instrument.BASS, 1, Note.EIGHTH),
+                    Note.rest(Note.HALF), Note.rest(Note.QUARTER)))
+            .saveLayer()
+            .build();
+
+    @Test
+    public void notesAreLaidOutByStep() {
+        Timeline timeline = score.getTimeline();
+        assertEquals(4, timeline.getStepsPerBeat());
+        assertEquals(125, timeline.getMillisPerStep(), 0);
+        assertEquals(32, timeline.getLength());
+        assertSteps(timeline, 0, 2, 2, 4, 16);
+        // notes on the same step keep the order of their layers
+        assertEquals(Instrument.HARP, timeline.getInstrument(1));
+        assertEquals(Instrument.BASS, timeline.getInstrument(2));
+    }
+
+    @Test
+    public void seekFindsTheFirstNoteAtOrAfterTheStep() {
+        Timeline timeline = score.getTimeline();
+        assertEquals(0, timeline.indexOf(0));
+        assertEquals(1, timeline.indexOf(1));
+        assertEquals(1, timeline.indexOf(2));
+        assertEquals(3, timeline.indexOf(3));
+        assertEquals(4, timeline.indexOf(5));
+        assertEquals(4, timeline.indexOf(16));
+        assertEquals(timeline.size(), timeline.indexOf(17));
+        assertEquals(timeline.size(), timeline.indexOf(Integer.MAX_VALUE));
+        assertEquals(0, timeline.indexOf(-1));
+    }
+
+    @Test
+    public void stepsAndTimes() {
+        Timeline timeline = score.getTimeline();
+        assertEquals(0, timeline.getStepAt(0));
+        assertEquals(0, timeline.getStepAt(124));
+        assertEquals(1, timeline.getStepAt(125));
+        assertEquals(16, timeline.getStepAt(2000));
+        assertEquals(32, timeline.getStepAt(Long.MAX_VALUE));
+        assertEquals(0, timeline.getStepAt(-1000));
+        assertEquals(2000, timeline.getMillisAt(16));
+        assertEquals(4000, score.getDuration());
+    }
+
+    @Test
+    public void builderSortsStably() {
+        Timeline timeline = new Timeline.Builder()
+                .note(5, Instrument.HARP, 1, 1)
+                .note(1, Instrument.BASS, 1, 1)
+                .note(5, Instrument.SNARE, 1, 1)
+                .note(1, Instrument.PLING, 1, 1)
+                .build(1, 100, 10);
+        assertSteps(timeline, 1, 1, 5, 5);
+        assertEquals(Instrument.BASS, timeline.getInstrument(0));
+        assertEquals(Instrument.PLING, timeline.getInstrument(1));
+        assertEquals(Instrument.HARP, timeline.getInstrument(2));
+        assertEquals(Instrument.SNARE, timeline.getInstrument(3));
+    }
+
+    @Test
+    public void packedTimelineSeeksTheSame() {
+        Timeline columns = score.getTimeline();
+        ByteBuffer records = ByteBuffer.allocate(columns.size() * Timeline.PACKED_NOTE_BYTES)
+                .order(ByteOrder.nativeOrder());
+        for (int i = 0; i < columns.size(); i++) {
+            records.putInt(columns.getStep(i)).putShort((short) 0).put((byte) columns.getInstrument(i).ordinal())
+                    .put((byte) 0);
+        }
+        Timeline packed = Timeline.packed(records, columns.size(), new float[]{1}, 4, 125, 32);
+        assertTrue(packed.isPacked());
+        for (int step = -1; step <= columns.getLength() + 1; step++)
+            assertEquals(columns.indexOf(step), packed.indexOf(step));
+        for (int i = 0; i < columns.size(); i++)
+            assertEquals(columns.getInstrument(i), packed.getInstrument(i));
+    }
+
+    private static void assertSteps(Timeline timeline, int... steps) {
+        assertEquals(steps.length, timeline.size());
+        for (int i = 0; i < steps.length; i++)
+            assertEquals(steps[i], timeline.getStep(i));
+    }
+}
@@ -0,0 +1,97 @@
+package se.walkercrou.composer.engine;
+
+import org.junit.Test;
+import se.walkercrou.composer.Instrument;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Packs {@link Mixer}s into longs and back, and checks the volumes they work out.
+ */
+public class MixerTest {
+    @Test
+    public void defaultPlaysEverythingAsWritten() {
+        assertSame(Mixer.DEFAULT, Mixer.fromLong(Mixer.DEFAULT.toLong()));
+        assertEquals(100, Mixer.DEFAULT.getMaster());
+        assertFalse(Mixer.DEFAULT.isSilent());
+        assertFalse(Mixer.DEFAULT.isDrumsOff());
+        for (Instrument instrument : Instrument.values()) {
+            assertEquals(100, Mixer.DEFAULT.getGain(instrument));
+            assertFalse(Mixer.DEFAULT.isMuted(instrument));
+            assertEquals(1, Mixer.DEFAULT.getVolume(instrument), 0);
+        }
+    }
+
+    @Test
+    public void everyFieldSurvivesPacking() {
+        Random random = new Random(42);
+        for (int i = 0; i < 1000; i++) {
+            Mixer mixer = Mixer.DEFAULT.withMaster(random.nextInt(Mixer.MAX_PERCENT + 1))
+                    .withDrumsOff(random.nextBoolean());
+            for (Instrument instrument : Instrument.values()) {
+                mixer = mixer.withGain(instrument, random.nextInt(Mixer.MAX_PERCENT + 1))
+                        .withMuted(instrument, random.nextBoolean());
+            }
+
+            Mixer unpacked = Mixer.fromLong(mixer.toLong());
+            assertEquals(mixer, unpacked);
+            assertEquals(mixer.hashCode(), unpacked.hashCode());
+            assertEquals(mixer.getMaster(), unpacked.getMaster());
+            assertEquals(mixer.isDrumsOff(), unpacked.isDrumsOff());
+            assertEquals(mixer.isSilent(), unpacked.isSilent());
+            for (Instrument instrument : Instrument.values()) {
+                assertEquals(mixer.getGain(instrument), unpacked.getGain(instrument));
+                assertEquals(mixer.isMuted(instrument), unpacked.isMuted(instrument));
+                assertEquals(mixer.getVolume(instrument), unpacked.getVolume(instrument), 0);
+            }
+        }
+    }
+
+    @Test
+    public void fieldsDoNotOverlap() {
+        Mixer mixer = Mixer.DEFAULT.withGain(Instrument.BASS, Mixer.MAX_PERCENT).withMuted(Instrument.PLING, true);
+        assertEquals(100, mixer.getMaster());
+        assertEquals(Mixer.MAX_PERCENT, mixer.getGain(Instrument.BASS));
+        assertEquals(100, mixer.getGain(Instrument.PLING));
+        assertTrue(mixer.isMuted(Instrument.PLING));
+        for (Instrument instrument : Instrument.values()) {
+            if (instrument != Instrument.BASS)
+                assertEquals(100, mixer.getGain(instrument));
+            if (instrument != Instrument.PLING)
+                assertFalse(mixer.isMuted(instrument));
+        }
+        assertEquals(Mixer.DEFAULT, mixer.withGain(Instrument.BASS, 100).withMuted(Instrument.PLING, false));
+    }
+
+    @Test
+    public void volumes() {
+        Mixer mixer = Mixer.DEFAULT.withMaster(50).withGain(Instrument.HARP, 200).withMuted(Instrument.BASS, true)
+                .withDrumsOff(true);
+        assertEquals(1, mixer.getVolume(Instrument.HARP), 0);
+        assertEquals(0, mixer.getVolume(Instrument.BASS), 0);
+        for (Instrument instrument : Instrument.values()) {
+            if (instrument.isDrum())
+                assertEquals(0, mixer.getVolume(instrument), 0);
+        }
+        assertFalse(mixer.isSilent());
+        assertTrue(mixer.withMaster(0).isSilent());
+        assertEquals(100, mixer.getGain(Instrument.BASS)); // muting keeps the gain
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void packedMasterOverTheMaximum() {
+        Mixer.fromLong(Mixer.DEFAULT.toLong() & ~0xFFL | Mixer.MAX_PERCENT + 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void packedGainOverTheMaximum() {
+        Mixer.fromLong(Mixer.DEFAULT.toLong() | 0xFFL << 56);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void gainOverTheMaximum() {
+        Mixer.DEFAULT.withGain(Instrument.HARP, Mixer.MAX_PERCENT + 1);
+    }
+}
@@ -0,0 +1,176 @@
+package se.walkercrou.composer.engine;
+
+import org.junit.Before;
+import org.junit.Test;
+import se.walkercrou.composer.Instrument;
+import se.walkercrou.composer.Pitch;
+import se.walkercrou.composer.Timeline;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Moves a {@link Playback} through its states on a {@link SimulatedClock}. The timeline has a note every 100ms for a
+ * second, and the sequencer's first run after a change is {@link Sequencer#DEFAULT_RESOLUTION_MILLIS} later.
+ */
+public class PlaybackTest {
+    private static final long RESOLUTION = Sequencer.DEFAULT_RESOLUTION_MILLIS;
+
+    private final SimulatedClock clock = new SimulatedClock();
+    private final Sequencer sequencer = new Sequencer(clock);
+    private final List<Long> heard = new ArrayList<>();
+    private final List<Double> pitches = new ArrayList<>();
+    private final Playback playback = new Playback(timeline(), sequencer, (instrument, volume, pitch) -> {
+        heard.add(clock.millis());
+        pitches.add(pitch);
+    });
+    private int finished;
+
+    @Before
+    public void setUp() {
+        playback.onFinish(() -> finished++);
+    }
+
+    @Test
+    public void playsEveryNoteOnTimeAndFinishes() {
+        assertEquals(Playback.State.IDLE, playback.getState());
+        assertTrue(playback.play());
+        assertEquals(Playback.State.PLAYING, playback.getState());
+        clock.advance(2000);
+        assertEquals(Arrays.asList(5L, 105L, 205L, 305L, 405L, 505L, 605L, 705L, 805L, 905L), heard);
+        assertEquals(Playback.State.FINISHED, playback.getState());
+        assertEquals(1, finished);
+        assertEquals(1000, playback.getPosition());
+    }
+
+    @Test
+    public void pauseHoldsThePositionUntilResumed() {
+        playback.play();
+        clock.advance(305);
+        assertEquals(300, playback.getPosition());
+        assertTrue(playback.pause());
+        assertFalse(playback.pause());
+        assertEquals(Playback.State.PAUSED, playback.getState());
+
+        clock.advance(1000);
+        assertEquals(300, playback.getPosition());
+        assertEquals(4, heard.size());
+
+        assertTrue(playback.play());
+        clock.advance(RESOLUTION + 100);
+        assertEquals(5, heard.size());
+        assertEquals(1305 + RESOLUTION + 100, (long) heard.get(4));
+        clock.advance(1000);
+        assertEquals(10, heard.size());
+        assertEquals(1, finished);
+    }
+
+    @Test
+    public void playOnlyStartsOnce() {
+        assertTrue(playback.play());
+        assertFalse(playback.play());
+        clock.advance(2000);
+        assertEquals(10, heard.size());
+    }
+
+    @Test
+    public void finishIsFinal() {
+        playback.play();
+        clock.advance(205);
+        playback.finish();
+        playback.finish();
+        assertEquals(1, finished);
+        assertEquals(Playback.State.FINISHED, playback.getState());
+        assertFalse(playback.play());
+        assertFalse(playback.pause());
+        clock.advance(2000);
+        assertEquals(3, heard.size());
+    }
+
+    @Test
+    public void stopDoesNotRunTheCallback() {
+        playback.play();
+        clock.advance(205);
+        playback.stop();
+        clock.advance(2000);
+        assertEquals(Playback.State.FINISHED, playback.getState());
+        assertEquals(0, finished);
+        assertEquals(3, heard.size());
+    }
+
+    @Test
+    public void seekWhilePlayingContinuesFromThere() {
+        playback.play();
+        clock.advance(205);
+        playback.seek(700);
+        assertEquals(700, playback.getPosition());
+        clock.advance(RESOLUTION);
+        assertEquals(4, heard.size()); // the note at 700 plays at once
+        clock.advance(2000);
+        assertEquals(6, heard.size());
+        assertEquals(1, finished);
+    }
+
+    @Test
+    public void seekWhilePausedTakesEffectWhenResumed() {
+        playback.play();
+        clock.advance(205);
+        playback.pause();
+        playback.seek(850);
+        playback.seek(5000); // clamped to the end
+        assertEquals(1000, playback.getPosition());
+        playback.seek(850);
+        assertEquals(850, playback.getPosition());
+        clock.advance(1000);
+        assertEquals(3, heard.size());
+
+        playback.play();
+        clock.advance(RESOLUTION);
+        assertEquals(850, playback.getPosition());
+        assertEquals(4, heard.size()); // the note of the step seeked into
+        clock.advance(50);
+        assertEquals(900, playback.getPosition());
+        assertEquals(5, heard.size());
+        clock.advance(2000);
+        assertEquals(1, finished);
+    }
+
+    @Test
+    public void speedChangesTakeEffectFromThePosition() {
+        playback.play();
+        clock.advance(205);
+        playback.setSpeed(2);
+        assertEquals(2, playback.getSpeed(), 0);
+        clock.advance(RESOLUTION); // continues from 200 at the next run
+        assertEquals(200, playback.getPosition());
+        clock.advance(1000);
+        assertEquals(Arrays.asList(5L, 105L, 205L, 260L, 310L, 360L, 410L, 460L, 510L, 560L), heard);
+        assertEquals(1000, playback.getPosition());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void speedMustBePositive() {
+        playback.setSpeed(0);
+    }
+
+    @Test
+    public void transposeMovesPitchesWithinRange() {
+        playback.setTranspose(12);
+        assertEquals(12, playback.getTranspose());
+        playback.play();
+        clock.advance(5);
+        playback.setTranspose(-24);
+        clock.advance(100);
+        assertEquals(Arrays.asList(2d, Pitch.MIN), pitches);
+    }
+
+    private static Timeline timeline() {
+        Timeline.Builder builder = new Timeline.Builder();
+        for (int step = 0; step < 10; step++)
+            builder.note(step, Instrument.HARP, 1, 1);
+        return builder.build(1, 100, 10);
+    }
+}
@@ -0,0 +1,166 @@
+package se.walkercrou.composer.engine;
+
+import org.junit.Test;
+import se.walkercrou.composer.Instrument;
+import se.walkercrou.composer.Timeline;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs {@link Playback}s on a {@link Sequencer} driven by a {@link SimulatedClock}.
+ */
+public class SequencerTest {
+    private static final long RESOLUTION = Sequencer.DEFAULT_RESOLUTION_MILLIS;
+
+    private final SimulatedClock clock = new SimulatedClock();
+    private final List<String> heard = new ArrayList<>(); // by every sink, as "name@millis"
+
+    @Test
+    public void sessionsWakeOnlyWhenTheirNextNoteIsDue() {
+        Sequencer sequencer = new Sequencer(clock);
+        TestSink sparse = new TestSink("sparse", null), dense = new TestSink("dense", null);
+        start(sequencer, sparse, 10, 0, 100); // notes at 0 and 1000ms, ends at 2010ms
+        start(sequencer, dense, 100, 0, 3, 6, 9, 12, 15, 18); // a note every 300ms
+        clock.advance(3000);
+
+        assertEquals(3, sparse.wakes); // once per note and once at the end
+        assertEquals(7, dense.wakes); // its end is still to come
+        assertEquals(Arrays.asList("sparse@5", "dense@5", "dense@305", "dense@605", "dense@905", "sparse@1005",
+                "dense@1205", "dense@1505", "dense@1805"), heard);
+    }
+
+    @Test
+    public void wakesInOrderOfDueTime() {
+        Sequencer sequencer = new Sequencer(clock);
+        start(sequencer, new TestSink("a", null), 100, 0, 7);
+        clock.advance(200);
+        start(sequencer, new TestSink("b", null), 100, 0, 1, 2);
+        clock.advance(RESOLUTION);
+        start(sequencer, new TestSink("c", null), 50, 0, 1, 12);
+        clock.advance(1000);
+        assertEquals(Arrays.asList("a@5", "b@205", "c@210", "c@260", "b@305", "b@405", "a@705", "c@810"), heard);
+    }
+
+    @Test
+    public void changesReplaceTheQueuedWake() {
+        Sequencer sequencer = new Sequencer(clock);
+        TestSink sink = new TestSink("a", null);
+        Playback playback = start(sequencer, sink, 100, 0, 5, 9);
+        clock.advance(105);
+        playback.seek(800); // the wake due at 505 is dropped
+        playback.seek(850);
+        clock.advance(100);
+        assertEquals(Arrays.asList("a@5", "a@160"), heard);
+
+        playback.setSpeed(2); // at 950, the end at 1900 is 475ms away
+        clock.advance(1000);
+        assertEquals(Playback.State.FINISHED, playback.getState());
+        assertEquals(1900, playback.getPosition());
+        assertEquals(5, sink.wakes); // the first note, the seek, the last note, the speed change and the end
+    }
+
+    @Test
+    public void failingSessionIsFinishedAndReported() {
+        List<Playback> failed = new ArrayList<>();
+        Sequencer sequencer = new Sequencer(clock).onError((playback, e) -> failed.add(playback));
+        TestSink broken = new TestSink("broken", null) {
+            @Override
+            public void playNote(Instrument instrument, double volume, double pitch) {
+                throw new IllegalStateException("sink failed");
+            }
+        };
+        int[] finished = new int[1];
+        Playback failing = start(sequencer, broken, 100, 0, 1).onFinish(() -> finished[0]++);
+        Playback healthy = start(sequencer, new TestSink("healthy", null), 100, 0, 1);
+        clock.advance(500);
+
+        assertEquals(Arrays.asList(failing), failed);
+        assertEquals(Playback.State.FINISHED, failing.getState());
+        assertEquals(1, finished[0]);
+        assertEquals(Playback.State.FINISHED, healthy.getState());
+        assertEquals(Arrays.asList("healthy@5", "healthy@105"), heard);
+    }
+
+    @Test
+    public void finishedRegionsNoLongerCountAgainstTheirShard() {
+        CountingExecutor executor = new CountingExecutor();
+        Sequencer sequencer = new Sequencer(clock, RESOLUTION, 2, executor);
+        Playback a = startEveryRun(sequencer, "a"), b = startEveryRun(sequencer, "b");
+        Playback c = startEveryRun(sequencer, "c");
+        clock.advance(RESOLUTION); // a and c on one shard, b on the other
+        a.stop();
+        c.stop();
+        clock.advance(100);
+
+        // the shard of a and c has no regions left, so d goes there rather than next to b
+        Playback d = startEveryRun(sequencer, "d");
+        clock.advance(RESOLUTION);
+        executor.executed = 0;
+        clock.advance(100);
+        assertTrue(b.isPlaying() && d.isPlaying());
+        assertEquals(100 / RESOLUTION, executor.executed);
+    }
+
+    // notes at the specified steps of a timeline that ends a step after twice the last one
+    private Playback start(Sequencer sequencer, TestSink sink, double millisPerStep, int... steps) {
+        Timeline.Builder builder = new Timeline.Builder();
+        for (int step : steps)
+            builder.note(step, Instrument.HARP, 1, 1);
+        Timeline timeline = builder.build(1, millisPerStep, steps[steps.length - 1] * 2 + 1);
+        Playback playback = new Playback(timeline, sequencer, sink);
+        playback.play();
+        return playback;
+    }
+
+    // a note every step of the resolution, so the session is due on every run
+    private Playback startEveryRun(Sequencer sequencer, Object region) {
+        int[] steps = new int[1000];
+        for (int i = 0; i < steps.length; i++)
+            steps[i] = i;
+        return start(sequencer, new TestSink(region.toString(), region), RESOLUTION, steps);
+    }
+
+    private class TestSink implements SoundSink {
+        private final String name;
+        private final Object region;
+        private int wakes;
+
+        private TestSink(String name, Object region) {
+            this.name = name;
+            this.region = region;
+        }
+
+        @Override
+        public void playNote(Instrument instrument, double volume, double pitch) {
+            if (region == null) // the sharded sessions play a note every run, too many to be worth listing
+                heard.add(name + "@" + clock.millis());
+        }
+
+        @Override
+        public boolean hasAudience() {
+            wakes++; // asked once every time the session is advanced
+            return true;
+        }
+
+        @Override
+        public Object getRegion() {
+            return region;
+        }
+    }
+
+    // runs shards on the calling thread, counting them
+    private static final class CountingExecutor implements Executor {
+        private int executed;
+
+        @Override
+        public void execute(Runnable command) {
+            executed++;
+            command.run();
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package se.walkercrou.composer.nbs;
+
+import org.junit.Test;
+import se.walkercrou.composer.nbs.NbsFormatException.Problem;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Feeds the .nbs parser hostile input and checks that it only ever fails with a {@link NbsFormatException}. Crafted
+ * files each fail with a specific problem, random mutations of a valid song may fail with any problem but nothing
+ * else. Every file is read both into note blocks and into a {@link NoteArena}.
+ */
+public class ParserFuzzTest {
+    private static final int MUTATIONS = 20000;
+    private static final long SEED = 42;
+    private static final int[][] NOTES = {{0, 0, 0, 33}, {0, 2, 1, 45}, {3, 1, 4, 20}, {7, 0, 2, 60}, {15, 2, 0, 33}};
+
+    private final NoteArena arena = NoteArena.direct();
+
+    @Test
+    public void validSongIsRead() throws IOException {
+        for (NoteBlockStudioSong song : readBoth(song(16, 3, 1000, NOTES), NbsLimits.DEFAULT)) {
+            assertEquals(NOTES.length, song.getTimeline().size());
+            assertEquals(100, song.getTimeline().getMillisPerStep(), 0);
+        }
+    }
+
+    @Test
+    public void oversizedHeight() {
+        expect(Problem.TOO_MANY_LAYERS, song(16, Short.MAX_VALUE, 1000), NbsLimits.DEFAULT);
+        expect(Problem.TOO_MANY_LAYERS, song(16, 3, 1000, NOTES), NbsLimits.DEFAULT.withMaxLayers(2));
+        expect(Problem.TOO_MANY_LAYERS, song(16, -1, 1000), NbsLimits.DEFAULT);
+    }
+
+    @Test
+    public void oversizedLength() {
+        expect(Problem.TOO_LONG, song(16, 3, 1000, NOTES), NbsLimits.DEFAULT.withMaxTicks(15));
+        expect(Problem.TOO_LONG, song(-1, 3, 1000), NbsLimits.DEFAULT);
+    }
+
+    @Test
+    public void notesOutsideTheSong() {
+        expect(Problem.NOTE_OUT_OF_BOUNDS, song(10, 3, 1000, new int[]{100, 0, 0, 33}), NbsLimits.DEFAULT);
+        expect(Problem.NOTE_OUT_OF_BOUNDS, song(10, 3, 1000, new int[]{0, 100, 0, 33}), NbsLimits.DEFAULT);
+        // a negative jump back to the first tick
+        byte[] backwards = song(10, 3, 1000, new int[]{5, 0, 0, 33});
+        ByteBuffer.wrap(backwards).order(ByteOrder.LITTLE_ENDIAN).putShort(headerSize(), (short) -5);
+        expect(Problem.NOTE_OUT_OF_BOUNDS, backwards, NbsLimits.DEFAULT);
+    }
+
+    @Test
+    public void tooManyNotes() {
+        expect(Problem.TOO_MANY_NOTES, song(16, 3, 1000, NOTES), NbsLimits.DEFAULT.withMaxNotes(NOTES.length - 1));
+    }
+
+    @Test
+    public void truncatedStrings() {
+        byte[] bytes = song(16, 3, 1000, NOTES);
+        ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).putInt(4, 1000); // the name claims more than is left
+        expect(Problem.TRUNCATED, bytes, NbsLimits.DEFAULT);
+        ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).putInt(4, -1);
+        expect(Problem.STRING_TOO_LONG, bytes, NbsLimits.DEFAULT);
+        ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).putInt(4, 100);
+        expect(Problem.STRING_TOO_LONG, bytes, NbsLimits.DEFAULT.withMaxStringLength(99));
+
+        // cut inside the name of the last layer
+        byte[] named = song(16, 3, 1000, NOTES);
+        ByteBuffer.wrap(named).order(ByteOrder.LITTLE_ENDIAN).putInt(named.length - 5, 3);
+        expect(Problem.TRUNCATED, named, NbsLimits.DEFAULT);
+    }
+
+    @Test
+    public void truncatedAnywhere() {
+        byte[] bytes = song(16, 3, 1000, NOTES);
+        for (int length = 0; length < bytes.length; length++)
+            expect(Problem.TRUNCATED, Arrays.copyOf(bytes, length), NbsLimits.DEFAULT);
+    }
+
+    @Test
+    public void tooLarge() {
+        expect(Problem.FILE_TOO_LARGE, song(16, 3, 1000, NOTES), NbsLimits.DEFAULT.withMaxFileSize(10));
+    }
+
+    @Test
+    public void tempoBelowOneTickPerSecond() throws IOException {
+        for (NoteBlockStudioSong song : readBoth(song(16, 3, 50, NOTES), NbsLimits.DEFAULT)) {
+            assertEquals(0.5, song.tempoTicksPerSecond, 0);
+            assertEquals(30, song.toScore().getTempo());
+            assertEquals(2000, song.getTimeline().getMillisPerStep(), 0);
+        }
+        // fractional tempos are not rounded down to whole ticks per second
+        for (NoteBlockStudioSong song : readBoth(song(16, 3, 250, NOTES), NbsLimits.DEFAULT))
+            assertEquals(400, song.getTimeline().getMillisPerStep(), 0);
+    }
+
+    @Test
+    public void tempoMustBePositive() {
+        expect(Problem.INVALID_HEADER, song(16, 3, 0, NOTES), NbsLimits.DEFAULT);
+        expect(Problem.INVALID_HEADER, song(16, 3, -100, NOTES), NbsLimits.DEFAULT);
+    }
+
+    @Test
+    public void mutationsOnlyFailWithFormatExceptions() throws IOException {
+        byte[] original = song(16, 3, 1000, NOTES);
+        Random random = new Random(SEED);
+        for (int i = 0; i < MUTATIONS; i++) {
+            byte[] bytes = mutate(original, random);
+            try {
+                for (NoteBlockStudioSong song : readBoth(bytes, NbsLimits.DEFAULT))
+                    song.toScore();
+            } catch (NbsFormatException e) {
+                // expected
+            } catch (RuntimeException e) {
+                throw new AssertionError("mutation " + i + ": " + Arrays.toString(bytes), e);
+            }
+        }
+    }
+
+    private NoteBlockStudioSong[] readBoth(byte[] bytes, NbsLimits limits) throws IOException {
+        return new NoteBlockStudioSong[]{
+                NoteBlockStudioSong.read(bytes, "test.nbs", limits),
+                NoteBlockStudioSong.read(bytes, "test.nbs", limits, arena)
+        };
+    }
+
+    private void expect(Problem expected, byte[] bytes, NbsLimits limits) {
+        try {
+            readBoth(bytes, limits);
+            fail("parsed, expected " + expected);
+        } catch (NbsFormatException e) {
+            assertEquals(expected, e.getProblem());
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static byte[] mutate(byte[] original, Random random) {
+        byte[] bytes = original.clone();
+        ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        switch (random.nextInt(4)) {
+            case 0: // flip a few bits anywhere
+                for (int i = random.nextInt(8) + 1; i > 0; i--)
+                    bytes[random.nextInt(bytes.length)] ^= 1 << random.nextInt(8);
+                return bytes;
+            case 1: // overwrite the length or height
+                buffer.putShort(random.nextInt(2) * 2, (short) random.nextInt());
+                return bytes;
+            case 2: // overwrite a random short, which hits the tempo and jumps
+                buffer.putShort(random.nextInt(bytes.length - 1), (short) random.nextInt());
+                return bytes;
+            default: // overwrite a random int, which hits string lengths
+                buffer.putInt(random.nextInt(bytes.length - 3), random.nextInt());
+                return bytes;
+        }
+    }
+
+    // length and height, four empty strings, tempo and the rest of the header
+    private static int headerSize() {
+        return 2 + 2 + 4 * 4 + 2 + 3 + 5 * 4 + 4;
+    }
+
+    // a file with empty strings, the specified notes as {tick, layer, instrument, key} in file order and a layer info
+    // with an empty name for every layer
+    private static byte[] song(int lengthTicks, int height, int tempo, int[]... notes) {
+        ByteBuffer buffer = ByteBuffer.allocate(1024 + 5 * Math.max(0, height)).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putShort((short) lengthTicks).putShort((short) height);
+        for (int i = 0; i < 4; i++)
+            buffer.putInt(0);
+        buffer.putShort((short) tempo).put((byte) 0).put((byte) 0).put((byte) 4);
+        for (int i = 0; i < 5; i++)
+            buffer.putInt(0);
+        buffer.putInt(0);
+
+        int tick = -1;
+        for (int i = 0; i < notes.length; ) {
+            buffer.putShort((short) (notes[i][0] - tick));
+            tick = notes[i][0];
+            int layer = -1;
+            for (; i < notes.length && notes[i][0] == tick; i++) {
+                buffer.putShort((short) (notes[i][1] - layer)).put((byte) notes[i][2]).put((byte) notes[i][3]);
+                layer = notes[i][1];
+            }
+            buffer.putShort((short) 0);
+        }
+        buffer.putShort((short) 0);
+
+        for (int i = 0; i < height; i++)
+            buffer.putInt(0).put((byte) 100);
+        return Arrays.copyOf(buffer.array(), buffer.position());
+    }
+}
@@ -0,0 +1,124 @@
+package se.walkercrou.composer.nbs;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Plays a {@link PlayQueue} in order and shuffled, with a seeded random so every run draws the same order.
+ */
+public class PlayQueueTest {
+    private static final int SIZE = 1000;
+
+    @Test
+    public void playsInLibraryOrderUntilShuffled() {
+        PlayQueue queue = new PlayQueue(SIZE);
+        assertFalse(queue.isShuffled());
+        assertEquals(SIZE, queue.getDrawn());
+        for (int i = 0; i < SIZE; i++)
+            assertEquals(i, queue.get(i));
+        assertEquals(5, queue.moveTo(5));
+        assertEquals(6, queue.next());
+        assertEquals(5, queue.previous());
+    }
+
+    @Test
+    public void shuffleIsAPermutation() {
+        PlayQueue queue = shuffled();
+        boolean[] seen = new boolean[SIZE];
+        boolean moved = false;
+        for (int i = 0; i < SIZE; i++) {
+            int track = queue.get(i);
+            assertFalse("track " + track + " twice", seen[track]);
+            seen[track] = true;
+            moved |= track != i;
+        }
+        assertTrue(moved);
+        assertEquals(SIZE, queue.getDrawn());
+    }
+
+    @Test
+    public void shuffleOnlyDrawsWhatIsPlayed() {
+        PlayQueue queue = shuffled();
+        assertEquals(0, queue.getDrawn());
+        long empty = queue.getFootprint();
+        queue.moveTo(9);
+        assertEquals(10, queue.getDrawn());
+        assertEquals(9, queue.getPosition());
+        assertTrue(queue.getFootprint() > empty);
+    }
+
+    @Test
+    public void peekDoesNotDraw() {
+        PlayQueue queue = shuffled();
+        int first = queue.get(0);
+        for (int i = 0; i < SIZE; i++)
+            assertEquals(i == 0 ? first : -1, queue.peek(i));
+        assertEquals(1, queue.getDrawn());
+
+        // the order drawn after peeking is the order drawn without peeking
+        PlayQueue unpeeked = shuffled();
+        for (int i = 0; i < SIZE; i++)
+            assertEquals(unpeeked.get(i), queue.get(i));
+    }
+
+    @Test
+    public void jumpToKeepsThePlayedPositions() {
+        PlayQueue queue = shuffled();
+        int[] played = new int[5];
+        for (int i = 0; i < played.length; i++)
+            played[i] = queue.moveTo(i);
+
+        int track = undrawn(queue);
+        queue.jumpTo(track);
+        assertEquals(played.length, queue.getPosition());
+        assertEquals(track, queue.current());
+        assertEquals(played.length + 1, queue.getDrawn());
+        for (int i = 0; i < played.length; i++)
+            assertEquals(played[i], queue.peek(i));
+
+        // a track already drawn is jumped back to where it is
+        queue.jumpTo(played[2]);
+        assertEquals(2, queue.getPosition());
+        assertEquals(played.length + 1, queue.getDrawn());
+    }
+
+    @Test
+    public void shuffleStartsOver() {
+        PlayQueue queue = shuffled();
+        queue.moveTo(20);
+        queue.shuffle();
+        assertEquals(0, queue.getPosition());
+        assertEquals(0, queue.getDrawn());
+        assertEquals(-1, queue.peek(0));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void positionPastTheEnd() {
+        new PlayQueue(SIZE).peek(SIZE);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void positionBeforeTheStart() {
+        new PlayQueue(SIZE).moveTo(-1);
+    }
+
+    private static PlayQueue shuffled() {
+        PlayQueue queue = new PlayQueue(SIZE, new Random(42));
+        queue.shuffle();
+        return queue;
+    }
+
+    private static int undrawn(PlayQueue queue) {
+        boolean[] drawn = new boolean[SIZE];
+        for (int i = 0; i < queue.getDrawn(); i++)
+            drawn[queue.peek(i)] = true;
+        for (int track = 0; track < SIZE; track++) {
+            if (!drawn[track])
+                return track;
+        }
+        throw new AssertionError("every track is drawn");
+    }
+}
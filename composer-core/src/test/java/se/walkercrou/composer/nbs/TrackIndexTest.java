@@ -0,0 +1,126 @@
+package se.walkercrou.composer.nbs;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+/**
+ * Searches a {@link TrackIndex} and updates it as its library changes.
+ */
+public class TrackIndexTest {
+    private final TrackIndex index = new TrackIndex();
+    private int tempo;
+
+    @Test
+    public void matchesWordPrefixesOfEveryField() {
+        NoteBlockStudioSong mario = track("mario.nbs", "Super Mario Theme", "Koji Kondo", null);
+        NoteBlockStudioSong zelda = track("zelda.nbs", "Zelda's Lullaby", "kondo", "zelda_lullaby.mid");
+        index.update(library(mario, zelda));
+        assertEquals(2, index.size());
+
+        assertEquals(Collections.singletonList(mario), index.search("mar", 10));
+        assertEquals(Collections.singletonList(zelda), index.search("LULL", 10));
+        assertEquals(Collections.singletonList(zelda), index.search("mid", 10)); // imported file name
+        assertEquals(2, index.search("kon", 10).size());
+        assertTrue(index.search("luigi", 10).isEmpty());
+        assertTrue(index.search("  -- ", 10).isEmpty());
+    }
+
+    @Test
+    public void everyTermMustMatch() {
+        NoteBlockStudioSong theme = track("a.nbs", "Overworld Theme", "Kondo", null);
+        index.update(library(theme, track("b.nbs", "Underworld Theme", "Kondo", null)));
+        assertEquals(Collections.singletonList(theme), index.search("theme over", 10));
+        assertEquals(2, index.search("theme kondo", 10).size());
+        assertTrue(index.search("theme luigi", 10).isEmpty());
+    }
+
+    @Test
+    public void rankedByFieldAndExactMatch() {
+        NoteBlockStudioSong byAuthor = track("a.nbs", "Something", "Oceanside", null);
+        NoteBlockStudioSong byNamePrefix = track("b.nbs", "Oceanic", null, null);
+        NoteBlockStudioSong byName = track("c.nbs", "Ocean", null, null);
+        index.update(library(byAuthor, byNamePrefix, byName));
+        assertEquals(Arrays.asList(byName, byNamePrefix, byAuthor), index.search("ocean", 10));
+        assertEquals(Collections.singletonList(byName), index.search("ocean", 1));
+        assertTrue(index.search("ocean", 0).isEmpty());
+    }
+
+    @Test
+    public void updateOnlyKeepsTheLibrary() {
+        NoteBlockStudioSong alpha = track("a.nbs", "Alpha", null, null);
+        NoteBlockStudioSong beta = track("b.nbs", "Beta", null, null);
+        index.update(library(alpha, beta));
+        long footprint = index.getFootprint();
+
+        index.update(library(beta));
+        assertEquals(1, index.size());
+        assertTrue(index.search("alpha", 10).isEmpty());
+        assertEquals(Collections.singletonList(beta), index.search("beta", 10));
+        assertTrue(index.getFootprint() < footprint);
+
+        // a renamed track is found by its new name only, a new track takes the place of the removed one
+        NoteBlockStudioSong gamma = track("b.nbs", "Gamma", null, null);
+        NoteBlockStudioSong delta = track("d.nbs", "Delta", null, null);
+        index.update(library(gamma, delta));
+        assertEquals(2, index.size());
+        assertTrue(index.search("beta", 10).isEmpty());
+        assertEquals(Collections.singletonList(gamma), index.search("gamma", 10));
+        assertEquals(Collections.singletonList(delta), index.search("delta", 10));
+    }
+
+    @Test
+    public void unchangedTrackIsReplacedByTheNewCopy() {
+        index.update(library(track("a.nbs", "Alpha", null, null)));
+        NoteBlockStudioSong reloaded = track("a.nbs", "Alpha", null, null);
+        index.update(library(reloaded));
+        assertEquals(1, index.size());
+        assertSame(reloaded, index.search("alpha", 10).get(0));
+    }
+
+    @Test
+    public void tracksWithoutSourceAreNotIndexed() {
+        NoteBlockStudioSong track = track("a.nbs", "Alpha", null, null);
+        track.source = null;
+        index.update(library(track));
+        assertEquals(0, index.size());
+        assertTrue(index.search("alpha", 10).isEmpty());
+    }
+
+    private static TrackLibrary library(NoteBlockStudioSong... tracks) {
+        return new TrackLibrary(Arrays.asList(tracks));
+    }
+
+    // a track without notes, every track has its own tempo so that none of them is an alias of another
+    private NoteBlockStudioSong track(String source, String name, String author, String importedFileName) {
+        ByteBuffer buffer = ByteBuffer.allocate(256).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putShort((short) 0).putShort((short) 0);
+        putString(buffer, name);
+        putString(buffer, author);
+        putString(buffer, null);
+        putString(buffer, null);
+        buffer.putShort((short) (++tempo * 100)).put((byte) 0).put((byte) 0).put((byte) 4);
+        for (int i = 0; i < 5; i++)
+            buffer.putInt(0);
+        putString(buffer, importedFileName);
+        buffer.putShort((short) 0);
+        try {
+            return NoteBlockStudioSong.read(Arrays.copyOf(buffer.array(), buffer.position()), source);
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static void putString(ByteBuffer buffer, String str) {
+        String value = str == null ? "" : str;
+        buffer.putInt(value.length());
+        for (int i = 0; i < value.length(); i++)
+            buffer.put((byte) value.charAt(i));
+    }
+}
@@ -0,0 +1,163 @@
+package se.walkercrou.composer.station;
+
+import org.junit.Before;
+import org.junit.Test;
+import se.walkercrou.composer.engine.SimulatedClock;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs two {@link Station}s over a {@link LoopbackTransport}. Server b's clock is {@link #SKEW} ahead of server a's.
+ */
+public class StationTest {
+    private static final long SKEW = 5000;
+
+    private final LoopbackTransport.Hub hub = new LoopbackTransport.Hub();
+    private final SimulatedClock clockA = new SimulatedClock(), clockB = new SimulatedClock();
+    private Station a, b;
+
+    @Before
+    public void setUp() {
+        clockB.advance(SKEW);
+        a = new Station("a", clockA, hub.connect());
+        b = new Station("b", clockB, hub.connect());
+    }
+
+    @Test
+    public void changesReachTheOtherServer() {
+        a.start();
+        b.start();
+        a.play("song.nbs", 1000, 1);
+        assertEquals("song.nbs", b.getState().getTrackId());
+        assertEquals(1, b.getState().getVersion());
+        assertEquals("a", b.getState().getOrigin());
+
+        b.pause();
+        assertFalse(a.getState().isPlaying());
+        assertEquals(2, a.getState().getVersion());
+        assertEquals("b", a.getState().getOrigin());
+    }
+
+    @Test
+    public void positionIsCorrectedForClockSkew() {
+        startBoth();
+        assertEquals(-SKEW, b.getOffset("a"));
+        assertEquals(SKEW, a.getOffset("b"));
+
+        a.play("song.nbs", 1000, 1);
+        advance(2000);
+        assertEquals(3000, a.getPosition());
+        assertEquals(3000, b.getPosition());
+    }
+
+    @Test
+    public void positionFollowsRate() {
+        startBoth();
+        a.play("song.nbs", 0, 2);
+        advance(1000);
+        assertEquals(2000, b.getPosition());
+
+        b.setRate(0.5); // anchored on b's clock this time
+        advance(2000);
+        assertEquals(3000, a.getPosition());
+        assertEquals(3000, b.getPosition());
+    }
+
+    @Test
+    public void pausedPositionStaysPut() {
+        a.start();
+        b.start();
+        a.play("song.nbs", 0, 1);
+        advance(1500);
+        b.pause();
+        advance(60000);
+        assertEquals(1500, a.getPosition());
+        assertEquals(1500, b.getPosition());
+    }
+
+    @Test
+    public void staleChangeIsIgnored() {
+        a.start();
+        b.start();
+        a.play("first.nbs", 0, 1);
+        b.stop(); // b misses the next two changes
+        a.seek(1000);
+        a.play("second.nbs", 0, 1);
+        assertEquals(3, a.getState().getVersion());
+
+        b.seek(5000); // version 2 from b's point of view, older than what a has
+        assertEquals("second.nbs", a.getState().getTrackId());
+        assertEquals(3, a.getState().getVersion());
+
+        b.start(); // a answers the ping with its newer state
+        assertEquals("second.nbs", b.getState().getTrackId());
+        assertEquals(3, b.getState().getVersion());
+        assertEquals("a", b.getState().getOrigin());
+    }
+
+    @Test
+    public void tieGoesToHigherServerIdWhicheverArrivesFirst() {
+        b.start();
+        b.play("from-b.nbs", 0, 1); // a is not listening yet
+        a.play("from-a.nbs", 0, 1); // same version, b keeps its own
+        assertEquals("from-b.nbs", b.getState().getTrackId());
+
+        a.start(); // b answers the ping with its state, which wins the tie
+        assertEquals("from-b.nbs", a.getState().getTrackId());
+        assertEquals(1, a.getState().getVersion());
+    }
+
+    @Test
+    public void tieIsBrokenTheSameWayInTheOtherOrder() {
+        a.start();
+        a.play("from-a.nbs", 0, 1); // b is not listening yet
+        b.play("from-b.nbs", 0, 1); // same version, a takes it
+        assertEquals("from-b.nbs", a.getState().getTrackId());
+
+        b.start();
+        assertEquals("from-b.nbs", b.getState().getTrackId());
+    }
+
+    @Test
+    public void listenersSeeRemoteAndLocalChanges() {
+        StringBuilder seen = new StringBuilder();
+        b.addListener(state -> seen.append(state.getVersion()));
+        a.start();
+        b.start();
+        a.play("song.nbs", 0, 1);
+        b.pause();
+        a.play("song.nbs", 0, 1); // delivered to b twice, as the change and again on the next sync
+        advance(Station.SYNC_INTERVAL_MILLIS);
+        assertEquals("123", seen.toString());
+    }
+
+    @Test
+    public void stateOrdering() {
+        StationState older = new StationState(1, "z", "t", 0, 0, 1, true);
+        StationState newer = new StationState(2, "a", "t", 0, 0, 1, true);
+        StationState tie = new StationState(2, "b", "t", 0, 0, 1, true);
+        assertTrue(newer.isNewerThan(older));
+        assertFalse(older.isNewerThan(newer));
+        assertTrue(tie.isNewerThan(newer));
+        assertFalse(newer.isNewerThan(tie));
+        assertFalse(tie.isNewerThan(tie));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rateMustBePositive() {
+        a.play("song.nbs", 0, 0);
+    }
+
+    // each station learns the other's clock offset from the ping it sends when it starts
+    private void startBoth() {
+        a.start();
+        b.start();
+        a.stop();
+        a.start();
+    }
+
+    private void advance(long millis) {
+        clockA.advance(millis);
+        clockB.advance(millis);
+    }
+}
@@ -0,0 +1,510 @@
+package se.walkercrou.composer;
+
+import com.google.inject.Inject;
+import ninja.leaping.configurate.ConfigurationNode;
+import ninja.leaping.configurate.commented.CommentedConfigurationNode;
+import ninja.leaping.configurate.loader.ConfigurationLoader;
+import org.slf4j.Logger;
+import org.spongepowered.api.Sponge;
+import org.spongepowered.api.config.DefaultConfig;
+import org.spongepowered.api.entity.living.player.Player;
+import org.spongepowered.api.event.Listener;
+import org.spongepowered.api.event.game.state.GameStartedServerEvent;
+import org.spongepowered.api.event.game.state.GameStoppingServerEvent;
+import org.spongepowered.api.event.network.ClientConnectionEvent;
+import org.spongepowered.api.plugin.Plugin;
+import se.walkercrou.composer.cmd.ComposerCommands;
+import se.walkercrou.composer.cmd.TestCommands;
+import se.walkercrou.composer.engine.Sequencer;
+import se.walkercrou.composer.nbs.MusicPlayer;
+import se.walkercrou.composer.nbs.NbsFormatException;
+import se.walkercrou.composer.nbs.NbsLimits;
+import se.walkercrou.composer.nbs.NoteArena;
+import se.walkercrou.composer.nbs.NoteBlockStudioSong;
+import se.walkercrou.composer.nbs.SoundBudget;
+import se.walkercrou.composer.nbs.TrackIndex;
+import se.walkercrou.composer.nbs.TrackLoader;
+import se.walkercrou.composer.nbs.TrackLibrary;
+import se.walkercrou.composer.sponge.AudienceTracker;
+import se.walkercrou.composer.sponge.MixerStore;
+import se.walkercrou.composer.sponge.SessionStore;
+import se.walkercrou.composer.sponge.SpongeClock;
+import se.walkercrou.composer.sponge.StationFollower;
+import se.walkercrou.composer.station.Station;
+import se.walkercrou.composer.station.UdpTransport;
+import se.walkercrou.composer.util.Footprint;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Main class for Composer plugin.
+ */
+@Plugin(id = "composer", authors = { "windy" })
+public class Composer {
+    private static final int DEFAULT_STATION_PORT = 25580;
+    private static final long SESSION_SNAPSHOT_SECONDS = 30;
+    private static final int WORKER_THREADS = 2;
+
+    @Inject public Logger log;
+    @Inject @DefaultConfig(sharedRoot = false) private Path configPath;
+    @Inject @DefaultConfig(sharedRoot = false) private ConfigurationLoader<CommentedConfigurationNode> configLoader;
+
+    private ConfigurationNode config;
+    private MixerStore mixers;
+    private SessionStore sessions;
+    private final SpongeClock clock = new SpongeClock(this);
+    private Sequencer sequencer;
+    private ExecutorService shardThreads; // advance all but one playback shard, null with a single shard
+    private final AudienceTracker audience = new AudienceTracker();
+    private final ExecutorService workers = Executors.newFixedThreadPool(WORKER_THREADS,
+            daemonThreads("Composer worker"));
+    private volatile TrackLibrary library = TrackLibrary.EMPTY;
+    private volatile NoteArena noteArena; // holds the notes of the library, null when they are on the heap
+    private volatile NbsLimits trackLimits = NbsLimits.DEFAULT;
+    private final TrackIndex trackIndex = new TrackIndex();
+    private final AtomicBoolean loadingTracks = new AtomicBoolean();
+    private final Map<UUID, MusicPlayer> musicPlayers = new HashMap<>();
+    private UdpTransport stationTransport;
+    private StationFollower stationFollower; // null unless this server is on a station
+
+    @Listener
+    public void onGameStarted(GameStartedServerEvent event) {
+        setupConfig();
+        setupSequencer();
+        audience.start(this);
+        mixers = new MixerStore(this, configPath.resolveSibling("mixers.conf"), log);
+        mixers.load();
+        long sessionExpiry = TimeUnit.DAYS.toMillis(Math.max(1, config.getNode("sessionExpiryDays").getInt(30)));
+        sessions = new SessionStore(this, configPath.resolveSibling("sessions.dat"), log, sessionExpiry);
+        sessions.load();
+        Sponge.getScheduler().createTaskBuilder()
+                .execute(() -> storeSessions(false))
+                .name("Composer session snapshot")
+                .interval(SESSION_SNAPSHOT_SECONDS, TimeUnit.SECONDS)
+                .submit(this);
+        setupStation();
+        if (config.getNode("debugMode").getBoolean())
+            new TestCommands(this).register();
+        new ComposerCommands(this).register();
+        reloadTracks();
+    }
+
+    @Listener
+    public void onJoin(ClientConnectionEvent.Join event) {
+        // only players that left while listening need their music player right away, the rest restore on first use
+        Player player = event.getTargetEntity();
+        SessionStore.Session session = sessions.get(player.getUniqueId());
+        if (session != null && session.isPlaying())
+            getMusicPlayer(player);
+    }
+
+    @Listener
+    public void onDisconnect(ClientConnectionEvent.Disconnect event) {
+        UUID playerId = event.getTargetEntity().getUniqueId();
+        MusicPlayer mp = musicPlayers.remove(playerId);
+        if (mp != null) {
+            storeSession(playerId, mp);
+            mp.pause();
+        }
+    }
+
+    @Listener
+    public void onGameStopping(GameStoppingServerEvent event) {
+        storeSessions(true);
+        sessions.save();
+        if (stationFollower != null) {
+            stationFollower.getStation().stop();
+            stationTransport.close();
+        }
+        workers.shutdownNow();
+        if (shardThreads != null)
+            shardThreads.shutdownNow();
+    }
+
+    /**
+     * Returns the {@link SpongeClock} playback is scheduled on.
+     *
+     * @return clock
+     */
+    public SpongeClock getClock() {
+        return clock;
+    }
+
+    /**
+     * Returns the follower of the station this server plays in sync with other servers, or null if the station is
+     * not enabled.
+     *
+     * @return station follower
+     */
+    public StationFollower getStationFollower() {
+        return stationFollower;
+    }
+
+    /**
+     * Returns the {@link Sequencer} that advances all playback.
+     *
+     * @return sequencer
+     */
+    public Sequencer getSequencer() {
+        return sequencer;
+    }
+
+    /**
+     * Returns who can hear music, for sound sinks to suspend playback nobody hears.
+     *
+     * @return audience tracker
+     */
+    public AudienceTracker getAudience() {
+        return audience;
+    }
+
+    /**
+     * Returns the worker pool heavy work, like preparing tracks, is done on so that it does not hold up the server
+     * thread.
+     *
+     * @return workers
+     */
+    public ExecutorService getWorkers() {
+        return workers;
+    }
+
+    /**
+     * Returns the persisted {@link se.walkercrou.composer.engine.Mixer}s of all players.
+     *
+     * @return mixer store
+     */
+    public MixerStore getMixers() {
+        return mixers;
+    }
+
+    /**
+     * Returns the specified player's {@link MusicPlayer}. If one does not exist a new one will be created.
+     *
+     * @param player player
+     * @return music player
+     */
+    public MusicPlayer getMusicPlayer(Player player) {
+        UUID playerId = player.getUniqueId();
+        MusicPlayer mp = musicPlayers.get(playerId);
+        if (mp == null) {
+            musicPlayers.put(playerId, mp = new MusicPlayer(this, library, mixers.get(playerId)));
+            SessionStore.Session session = sessions.get(playerId);
+            if (session != null)
+                mp.restore(player, session);
+        }
+        return mp;
+    }
+
+    /**
+     * Returns the {@link MusicPlayer}s that have been created, by the id of their player.
+     *
+     * @return unmodifiable map of music players
+     */
+    public Map<UUID, MusicPlayer> getMusicPlayers() {
+        return Collections.unmodifiableMap(musicPlayers);
+    }
+
+    /**
+     * Returns the persisted playback sessions of all players.
+     *
+     * @return session store
+     */
+    public SessionStore getSessions() {
+        return sessions;
+    }
+
+    private void storeSessions(boolean all) {
+        // skips and other changes only mark a player dirty, they are picked up here in one batch
+        for (Map.Entry<UUID, MusicPlayer> entry : musicPlayers.entrySet()) {
+            MusicPlayer mp = entry.getValue();
+            if (all || mp.isDirty() || mp.isPlaying())
+                storeSession(entry.getKey(), mp);
+        }
+    }
+
+    private void storeSession(UUID playerId, MusicPlayer mp) {
+        SessionStore.Session session = mp.snapshot();
+        if (session != null)
+            sessions.put(playerId, session);
+    }
+
+    /**
+     * Returns the currently loaded {@link NoteBlockStudioSong}s.
+     *
+     * @return list of tracks
+     */
+    public List<NoteBlockStudioSong> getNbsTracks() {
+        return library.getTracks();
+    }
+
+    /**
+     * Returns the most recently loaded {@link TrackLibrary} snapshot.
+     *
+     * @return track library
+     */
+    public TrackLibrary getLibrary() {
+        return library;
+    }
+
+    /**
+     * Returns the search index over the loaded tracks.
+     *
+     * @return track index
+     */
+    public TrackIndex getTrackIndex() {
+        return trackIndex;
+    }
+
+    /**
+     * Returns the limits tracks are read within, as configured when the tracks were last loaded.
+     *
+     * @return track limits
+     */
+    public NbsLimits getTrackLimits() {
+        return trackLimits;
+    }
+
+    /**
+     * Returns the arena the notes of the current {@link TrackLibrary} are packed into, or null if they are kept on
+     * the heap.
+     *
+     * @return note arena
+     */
+    public NoteArena getNoteArena() {
+        return noteArena;
+    }
+
+    /**
+     * Reloads the tracks in the background. The current {@link TrackLibrary} stays available until the new one has
+     * finished loading.
+     *
+     * @return false if the tracks are already being loaded
+     */
+    public boolean reloadTracks() {
+        if (!loadingTracks.compareAndSet(false, true))
+            return false;
+        loadTracks();
+        return true;
+    }
+
+    private void loadTracks() {
+        File file = new File(configPath.toFile().getParentFile(), "tracks");
+        if (!file.exists())
+            file.mkdirs();
+
+        new Thread(() -> {
+            AtomicInteger reported = new AtomicInteger(-1);
+            NbsLimits limits = readTrackLimits();
+            NoteArena arena = newNoteArena(); // every load gets its own, the previous one goes with its library
+            TrackLoader loader = new TrackLoader()
+                    .limits(limits)
+                    .arena(arena)
+                    .onError((source, e) -> {
+                        if (e instanceof NbsFormatException)
+                            log.warn("Could not read file (" + e.getMessage() + "): " + source);
+                        else
+                            log.error("Could not read file (file is likely malformed): " + source, e);
+                    })
+                    .onProgress((done, total) -> {
+                        // report every tenth
+                        int tenth = done * 10 / total;
+                        if (reported.getAndAccumulate(tenth, Math::max) < tenth)
+                            progress(tenth * 10);
+                    });
+            try {
+                progress(0);
+                TrackLibrary loaded = new TrackLibrary(applyBudget(loader.load(file.toPath())));
+                trackIndex.update(loaded);
+                library = loaded;
+                trackLimits = limits;
+                noteArena = arena;
+                log.info("Loaded " + loaded.size() + " tracks.");
+                if (arena != null) {
+                    log.info("Packed " + arena.getUsed() / Timeline.PACKED_NOTE_BYTES + " notes into "
+                            + Footprint.format(arena.getCapacity()) + (arena.isMapped() ? " mapped" : " direct")
+                            + " memory.");
+                }
+                if (!loaded.getAliases().isEmpty())
+                    reportDuplicates(loaded);
+            } catch (IOException e) {
+                log.error("An error occurred while loading the tracks.", e);
+            } finally {
+                if (arena != null)
+                    arena.seal();
+                loadingTracks.set(false);
+            }
+        }, "Composer track reload").start();
+    }
+
+    // the arena configured by offHeapNotes, null to keep the notes on the heap
+    private NoteArena newNoteArena() {
+        String mode = config.getNode("offHeapNotes").getString("off");
+        try {
+            switch (mode) {
+                case "off":
+                    return null;
+                case "direct":
+                    return NoteArena.direct();
+                case "mapped":
+                    return NoteArena.mapped(configPath.getParent());
+                default:
+                    log.warn("Ignoring unknown offHeapNotes mode: " + mode);
+                    return null;
+            }
+        } catch (IOException e) {
+            log.error("Could not create the note arena, keeping the notes on the heap.", e);
+            return null;
+        }
+    }
+
+    private NbsLimits readTrackLimits() {
+        ConfigurationNode node = config.getNode("trackLimits");
+        NbsLimits defaults = NbsLimits.DEFAULT;
+        try {
+            return defaults
+                    .withMaxFileSize(node.getNode("maxFileSize").getInt(defaults.getMaxFileSize()))
+                    .withMaxLayers(node.getNode("maxLayers").getInt(defaults.getMaxLayers()))
+                    .withMaxTicks(node.getNode("maxTicks").getInt(defaults.getMaxTicks()))
+                    .withMaxNotes(node.getNode("maxNotes").getInt(defaults.getMaxNotes()))
+                    .withMaxStringLength(node.getNode("maxStringLength").getInt(defaults.getMaxStringLength()));
+        } catch (IllegalArgumentException e) {
+            log.warn("Ignoring invalid track limits: " + e.getMessage());
+            return defaults;
+        }
+    }
+
+    private List<NoteBlockStudioSong> applyBudget(List<NoteBlockStudioSong> tracks) {
+        ConfigurationNode node = config.getNode("soundBudget");
+        SoundBudget budget = new SoundBudget(Math.max(0, node.getNode("maxNotesPerTick").getInt(0)),
+                Math.max(0, node.getNode("maxNotesPerSecond").getInt(0)));
+        boolean reject = node.getNode("rejectOverBudget").getBoolean(false);
+        List<NoteBlockStudioSong> allowed = new ArrayList<>(tracks.size());
+        for (NoteBlockStudioSong track : tracks) {
+            String reason = budget.check(track);
+            if (reason == null)
+                allowed.add(track);
+            else if (reject)
+                log.warn("Leaving out track over the sound budget (" + reason + "): " + track.source);
+            else {
+                log.warn("Track is over the sound budget (" + reason + "): " + track.source);
+                allowed.add(track);
+            }
+        }
+        return allowed;
+    }
+
+    private void reportDuplicates(TrackLibrary loaded) {
+        Map<NoteBlockStudioSong, List<String>> copies = new LinkedHashMap<>();
+        for (Map.Entry<String, NoteBlockStudioSong> alias : loaded.getAliases().entrySet())
+            copies.computeIfAbsent(alias.getValue(), t -> new ArrayList<>()).add(alias.getKey());
+        List<String> lines = new ArrayList<>();
+        for (Map.Entry<NoteBlockStudioSong, List<String>> entry : copies.entrySet()) {
+            lines.add(entry.getKey().source);
+            for (String alias : entry.getValue())
+                lines.add("    = " + alias);
+        }
+
+        Path report = configPath.resolveSibling("duplicates.txt");
+        try {
+            Files.write(report, lines);
+        } catch (IOException e) {
+            log.error("Could not write the duplicate report.", e);
+        }
+        log.info(loaded.getAliases().size() + " duplicate tracks were folded into " + copies.size() + " tracks, see "
+                + report + ".");
+    }
+
+    private void progress(int p) {
+        log.info("Loading tracks: " + p + "%");
+    }
+
+    private void setupSequencer() {
+        // playback of different worlds is advanced in parallel, one shard on the sequencer's own task
+        int shards = Math.max(1, config.getNode("playbackShards").getInt(1));
+        if (shards > 1)
+            shardThreads = Executors.newFixedThreadPool(shards - 1, daemonThreads("Composer playback"));
+        sequencer = new Sequencer(clock, Sequencer.DEFAULT_RESOLUTION_MILLIS, shards, shardThreads)
+                .onError((playback, e) -> log.error("A playback session failed and was stopped.", e));
+    }
+
+    private void setupStation() {
+        ConfigurationNode node = config.getNode("station");
+        if (!node.getNode("enabled").getBoolean(false))
+            return;
+        String serverId = node.getNode("serverId").getString("");
+        if (serverId.isEmpty())
+            serverId = UUID.randomUUID().toString();
+        List<InetSocketAddress> peers = new ArrayList<>();
+        for (ConfigurationNode peer : node.getNode("peers").getChildrenList()) {
+            String address = peer.getString("");
+            int colon = address.lastIndexOf(':');
+            InetSocketAddress resolved;
+            try {
+                resolved = new InetSocketAddress(address.substring(0, colon),
+                        Integer.parseInt(address.substring(colon + 1)));
+            } catch (IllegalArgumentException | StringIndexOutOfBoundsException e) {
+                log.warn("Ignoring invalid station peer, expected host:port: " + address);
+                continue;
+            }
+            if (resolved.isUnresolved())
+                log.warn("Ignoring station peer that could not be resolved: " + address);
+            else
+                peers.add(resolved);
+        }
+        try {
+            stationTransport = new UdpTransport(node.getNode("port").getInt(DEFAULT_STATION_PORT), peers);
+        } catch (IOException e) {
+            log.error("Could not open the station port, the station is disabled.", e);
+            return;
+        }
+        Station station = new Station(serverId, clock, stationTransport);
+        stationFollower = new StationFollower(this, station);
+        stationFollower.start();
+        station.start();
+        log.info("Joined the station as " + serverId + " with " + peers.size() + " other servers.");
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private void setupConfig() {
+        File file = configPath.toFile();
+        if (!file.exists())
+            createDefaultConfig(file);
+        try {
+            config = configLoader.load();
+        } catch (IOException e) {
+            e.printStackTrace();
+            log.error("An error occurred while loading the config file.", e);
+        }
+    }
+
+    private void createDefaultConfig(File file) {
+        try {
+            file.getParentFile().mkdirs();
+            file.createNewFile();
+            Files.copy(Composer.class.getResourceAsStream("/assets/se/walkercrou/composer/default.conf"), configPath,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            e.printStackTrace();
+            log.error("An error occurred while creating default config.", e);
+        }
+    }
+}
@@ -0,0 +1,479 @@
+package se.walkercrou.composer.cmd;
+
+import org.spongepowered.api.Sponge;
+import org.spongepowered.api.command.CommandException;
+import org.spongepowered.api.command.CommandPermissionException;
+import org.spongepowered.api.command.CommandResult;
+import org.spongepowered.api.command.CommandSource;
+import org.spongepowered.api.command.args.CommandContext;
+import org.spongepowered.api.command.spec.CommandSpec;
+import org.spongepowered.api.entity.living.player.Player;
+import org.spongepowered.api.text.Text;
+import se.walkercrou.composer.Composer;
+import se.walkercrou.composer.Instrument;
+import se.walkercrou.composer.engine.Mixer;
+import se.walkercrou.composer.util.TextUtil;
+import se.walkercrou.composer.nbs.MusicPlayer;
+import se.walkercrou.composer.nbs.NoteBlockStudioSong;
+import se.walkercrou.composer.nbs.TrackLibrary;
+import se.walkercrou.composer.sponge.StationFollower;
+import se.walkercrou.composer.station.Station;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+
+import static org.spongepowered.api.command.args.GenericArguments.*;
+
+/**
+ * Main commands for plugin.
+ */
+public class ComposerCommands {
+    private static final double MIN_SPEED = 0.25, MAX_SPEED = 4;
+    private static final int MAX_TRANSPOSE = 24;
+    private static final int DEFAULT_PREVIEW_SECONDS = 10, MAX_PREVIEW_SECONDS = 30;
+    private static final int DEFAULT_MEMORY_ENTRIES = 5;
+
+    private final Composer plugin;
+    private final CommandSpec list = CommandSpec.builder()
+            .arguments(optional(integer(Text.of("page"))))
+            .description(Text.of("Lists the currently loaded tracks."))
+            .executor(this::listTracks)
+            .build();
+    private final CommandSpec play = CommandSpec.builder()
+            .arguments(flags()
+                    .valueFlag(player(Text.of("player")), "p")
+                    .buildWith(integer(Text.of("trackNumber")))
+            )
+            .description(Text.of("Plays the specified track."))
+            .executor(this::playTrack)
+            .build();
+    private final CommandSpec preview = CommandSpec.builder()
+            .arguments(integer(Text.of("trackNumber")), optional(integer(Text.of("seconds"))))
+            .description(Text.of("Plays the first seconds of the specified track."))
+            .executor(this::previewTrack)
+            .build();
+    private final CommandSpec pause = CommandSpec.builder()
+            .arguments(optional(player(Text.of("player"))))
+            .description(Text.of("Pauses the track that is currently playing."))
+            .executor(this::pauseTrack)
+            .build();
+    private final CommandSpec resume = CommandSpec.builder()
+            .arguments(optional(player(Text.of("player"))))
+            .description(Text.of("Resumes playing or starts playing the first track."))
+            .executor(this::resumeTrack)
+            .build();
+    private final CommandSpec shuffle = CommandSpec.builder()
+            .arguments(optional(player(Text.of("player"))))
+            .description(Text.of("Shuffles the tracks and starts playing."))
+            .executor(this::shuffleTracks)
+            .build();
+    private final CommandSpec queue = CommandSpec.builder()
+            .arguments(optional(player(Text.of("player"))), optional(integer(Text.of("page"))))
+            .description(Text.of("Prints the specified player's play queue."))
+            .executor(this::printPlayQueue)
+            .build();
+    private final CommandSpec next = CommandSpec.builder()
+            .arguments(optional(player(Text.of("player"))))
+            .description(Text.of("Starts the next song in the queue."))
+            .executor(this::nextTrack)
+            .build();
+    private final CommandSpec previous = CommandSpec.builder()
+            .arguments(optional(player(Text.of("player"))))
+            .description(Text.of("Goes back to the previous song in the queue."))
+            .executor(this::previousTrack)
+            .build();
+    private final CommandSpec seek = CommandSpec.builder()
+            .arguments(string(Text.of("position")), optional(player(Text.of("player"))))
+            .description(Text.of("Jumps to a position (mm:ss) in the current track."))
+            .executor(this::seekTrack)
+            .build();
+    private final CommandSpec speed = CommandSpec.builder()
+            .arguments(doubleNum(Text.of("speed")), optional(player(Text.of("player"))))
+            .description(Text.of("Sets the speed music is played at, 1 is normal speed."))
+            .executor(this::setSpeed)
+            .build();
+    private final CommandSpec transpose = CommandSpec.builder()
+            .arguments(integer(Text.of("semitones")), optional(player(Text.of("player"))))
+            .description(Text.of("Moves music up or down by semitones, 0 is the original key."))
+            .executor(this::setTranspose)
+            .build();
+    private final CommandSpec mixer = CommandSpec.builder()
+            .arguments(optional(player(Text.of("player"))))
+            .description(Text.of("Shows or changes how instruments are mixed for you."))
+            .executor(this::showMixer)
+            .child(CommandSpec.builder()
+                    .arguments(integer(Text.of("percent")), optional(player(Text.of("player"))))
+                    .description(Text.of("Sets the master volume in percent."))
+                    .executor((src, context) -> updateMixer(src, context,
+                            m -> m.withMaster(getPercent(context))))
+                    .build(), "volume", "master")
+            .child(CommandSpec.builder()
+                    .arguments(enumValue(Text.of("instrument"), Instrument.class), integer(Text.of("percent")),
+                            optional(player(Text.of("player"))))
+                    .description(Text.of("Sets the volume of an instrument in percent."))
+                    .executor((src, context) -> updateMixer(src, context,
+                            m -> m.withGain(getInstrument(context), getPercent(context))))
+                    .build(), "gain")
+            .child(CommandSpec.builder()
+                    .arguments(enumValue(Text.of("instrument"), Instrument.class), optional(player(Text.of("player"))))
+                    .description(Text.of("Mutes an instrument."))
+                    .executor((src, context) -> updateMixer(src, context,
+                            m -> m.withMuted(getInstrument(context), true)))
+                    .build(), "mute")
+            .child(CommandSpec.builder()
+                    .arguments(enumValue(Text.of("instrument"), Instrument.class), optional(player(Text.of("player"))))
+                    .description(Text.of("Unmutes an instrument."))
+                    .executor((src, context) -> updateMixer(src, context,
+                            m -> m.withMuted(getInstrument(context), false)))
+                    .build(), "unmute")
+            .child(CommandSpec.builder()
+                    .arguments(bool(Text.of("on")), optional(player(Text.of("player"))))
+                    .description(Text.of("Turns all drums on or off."))
+                    .executor((src, context) -> updateMixer(src, context,
+                            m -> m.withDrumsOff(!context.<Boolean>getOne("on").get())))
+                    .build(), "drums")
+            .child(CommandSpec.builder()
+                    .arguments(optional(player(Text.of("player"))))
+                    .description(Text.of("Resets the mixer."))
+                    .executor((src, context) -> updateMixer(src, context, m -> Mixer.DEFAULT))
+                    .build(), "reset")
+            .build();
+    private final CommandSpec search = CommandSpec.builder()
+            .arguments(remainingJoinedStrings(Text.of("query")))
+            .description(Text.of("Searches the loaded tracks by name, author and file name."))
+            .executor(this::searchTracks)
+            .build();
+    private final CommandSpec reload = CommandSpec.builder()
+            .permission("composer.reload")
+            .description(Text.of("Reloads the tracks from the tracks directory."))
+            .executor(this::reloadTracks)
+            .build();
+    private final CommandSpec memory = CommandSpec.builder()
+            .permission("composer.memory")
+            .arguments(optional(integer(Text.of("count"))))
+            .description(Text.of("Shows an estimate of the heap used by tracks and sessions."))
+            .executor(this::showMemory)
+            .build();
+    private final CommandSpec station = CommandSpec.builder()
+            .description(Text.of("Follows the station played in sync on every server."))
+            .executor(this::joinStation)
+            .child(CommandSpec.builder()
+                    .description(Text.of("Stops following the station."))
+                    .executor(this::leaveStation)
+                    .build(), "leave")
+            .child(CommandSpec.builder()
+                    .permission("composer.station")
+                    .arguments(integer(Text.of("trackNumber")))
+                    .description(Text.of("Plays the specified track on the station."))
+                    .executor(this::playStation)
+                    .build(), "play")
+            .child(CommandSpec.builder()
+                    .permission("composer.station")
+                    .description(Text.of("Pauses the station."))
+                    .executor((src, context) -> updateStation(src, Station::pause))
+                    .build(), "pause")
+            .child(CommandSpec.builder()
+                    .permission("composer.station")
+                    .description(Text.of("Resumes the station."))
+                    .executor((src, context) -> updateStation(src, Station::resume))
+                    .build(), "resume")
+            .child(CommandSpec.builder()
+                    .permission("composer.station")
+                    .arguments(string(Text.of("position")))
+                    .description(Text.of("Jumps to a position (mm:ss) in the station's track."))
+                    .executor(this::seekStation)
+                    .build(), "seek")
+            .child(CommandSpec.builder()
+                    .permission("composer.station")
+                    .arguments(doubleNum(Text.of("speed")))
+                    .description(Text.of("Sets the speed the station plays at."))
+                    .executor(this::setStationSpeed)
+                    .build(), "speed")
+            .build();
+    private final CommandSpec base = CommandSpec.builder()
+            .permission("composer.musicplayer")
+            .description(Text.of("Main parent command for plugin."))
+            .executor(this::listTracks)
+            .child(list, "list", "list-tracks", "tracks", "track-list")
+            .child(play, "play", "start", ">")
+            .child(preview, "preview", "sample")
+            .child(pause, "pause", "stop", "||")
+            .child(resume, "resume")
+            .child(shuffle, "shuffle")
+            .child(queue, "queue", "order")
+            .child(next, "next", "skip", ">|")
+            .child(previous, "previous", "back", "|<")
+            .child(seek, "seek", "jump")
+            .child(speed, "speed", "tempo")
+            .child(transpose, "transpose", "key")
+            .child(mixer, "mixer", "mix")
+            .child(search, "search", "find")
+            .child(reload, "reload")
+            .child(memory, "memory", "mem")
+            .child(station, "station", "radio")
+            .build();
+
+    public ComposerCommands(Composer plugin) {
+        this.plugin = plugin;
+    }
+
+    public void register() {
+        Sponge.getCommandManager().register(plugin, base, "music", "composer");
+    }
+
+    public CommandResult reloadTracks(CommandSource src, CommandContext context) throws CommandException {
+        if (!plugin.reloadTracks())
+            throw new CommandException(Text.of("Tracks are already being loaded."));
+        src.sendMessage(Text.of("Reloading tracks..."));
+        return CommandResult.success();
+    }
+
+    public CommandResult showMemory(CommandSource src, CommandContext context) throws CommandException {
+        int count = context.<Integer>getOne("count").orElse(DEFAULT_MEMORY_ENTRIES);
+        if (count < 0)
+            throw new CommandException(Text.of("Count must not be negative."));
+        Map<String, MusicPlayer> players = new LinkedHashMap<>();
+        for (Map.Entry<UUID, MusicPlayer> entry : plugin.getMusicPlayers().entrySet()) {
+            String name = Sponge.getServer().getPlayer(entry.getKey()).map(Player::getName)
+                    .orElse(entry.getKey().toString());
+            players.put(name, entry.getValue());
+        }
+        long indexBytes = plugin.getTrackIndex().getFootprint();
+        src.sendMessage(TextUtil.memory(plugin.getLibrary(), plugin.getNoteArena(), indexBytes, players, count));
+        return CommandResult.success();
+    }
+
+    public CommandResult seekTrack(CommandSource src, CommandContext context) throws CommandException {
+        long millis = parseTime(context.<String>getOne("position").get());
+        Player player = getPlayer(src, context);
+        MusicPlayer mp = plugin.getMusicPlayer(player);
+        if (mp.getLibrary().size() == 0)
+            throw new CommandException(Text.of("There are no tracks currently loaded."));
+        mp.seek(player, millis);
+        return CommandResult.success();
+    }
+
+    public CommandResult setSpeed(CommandSource src, CommandContext context) throws CommandException {
+        double speed = context.<Double>getOne("speed").get();
+        if (speed < MIN_SPEED || speed > MAX_SPEED)
+            throw new CommandException(Text.of("Speed must be between " + MIN_SPEED + " and " + MAX_SPEED + "."));
+        Player player = getPlayer(src, context);
+        plugin.getMusicPlayer(player).setSpeed(speed);
+        src.sendMessage(Text.of("Speed set to " + speed + "x."));
+        return CommandResult.success();
+    }
+
+    public CommandResult setTranspose(CommandSource src, CommandContext context) throws CommandException {
+        int semitones = context.<Integer>getOne("semitones").get();
+        if (Math.abs(semitones) > MAX_TRANSPOSE)
+            throw new CommandException(Text.of("Can only transpose by up to " + MAX_TRANSPOSE + " semitones."));
+        Player player = getPlayer(src, context);
+        plugin.getMusicPlayer(player).setTranspose(semitones);
+        src.sendMessage(Text.of("Transposed by " + semitones + " semitones."));
+        return CommandResult.success();
+    }
+
+    public CommandResult showMixer(CommandSource src, CommandContext context) throws CommandException {
+        Player player = getPlayer(src, context);
+        src.sendMessage(TextUtil.mixer(plugin.getMusicPlayer(player).getMixer()));
+        return CommandResult.success();
+    }
+
+    private CommandResult updateMixer(CommandSource src, CommandContext context, UnaryOperator<Mixer> update)
+            throws CommandException {
+        Player player = getPlayer(src, context);
+        MusicPlayer mp = plugin.getMusicPlayer(player);
+        Mixer mixer;
+        try {
+            mixer = update.apply(mp.getMixer());
+        } catch (IllegalArgumentException e) {
+            throw new CommandException(Text.of("Volume must be between 0 and " + Mixer.MAX_PERCENT + "%."));
+        }
+        mp.setMixer(mixer);
+        plugin.getMixers().set(player.getUniqueId(), mixer);
+        src.sendMessage(TextUtil.mixer(mixer));
+        return CommandResult.success();
+    }
+
+    public CommandResult searchTracks(CommandSource src, CommandContext context) throws CommandException {
+        String query = context.<String>getOne("query").get();
+        TrackLibrary library = plugin.getLibrary();
+        List<NoteBlockStudioSong> results = plugin.getTrackIndex().search(query, TextUtil.TRACKS_PER_PAGE);
+        TextUtil.searchResults(library, results, query).sendTo(src);
+        return CommandResult.success();
+    }
+
+    public CommandResult previousTrack(CommandSource src, CommandContext context) throws CommandException {
+        Player player = getPlayer(src, context);
+        plugin.getMusicPlayer(player).previous(player);
+        return CommandResult.success();
+    }
+
+    public CommandResult nextTrack(CommandSource src, CommandContext context) throws CommandException {
+        Player player = getPlayer(src, context);
+        plugin.getMusicPlayer(player).next(player);
+        return CommandResult.success();
+    }
+
+    public CommandResult printPlayQueue(CommandSource src, CommandContext context) throws CommandException {
+        Player player = getPlayer(src, context);
+        MusicPlayer mp = plugin.getMusicPlayer(player);
+        String command = player == src ? "/music queue" : "/music queue " + player.getName();
+        TextUtil.trackList(mp.getLibrary(), mp.getQueue(), getPage(context), command).sendTo(src);
+        return CommandResult.success();
+    }
+
+    public CommandResult shuffleTracks(CommandSource src, CommandContext context) throws CommandException {
+        Player player = getPlayer(src, context);
+        plugin.getMusicPlayer(player).shuffle(player);
+        return CommandResult.success();
+    }
+
+    public CommandResult resumeTrack(CommandSource src, CommandContext context) throws CommandException {
+        Player player = getPlayer(src, context);
+        MusicPlayer mp = plugin.getMusicPlayer(player);
+        if (mp.isPlaying())
+            throw new CommandException(Text.of("Music already playing."));
+        mp.play(player);
+        return CommandResult.success();
+    }
+
+    public CommandResult pauseTrack(CommandSource src, CommandContext context) throws CommandException {
+        Player player = getPlayer(src, context);
+        MusicPlayer mp = plugin.getMusicPlayer(player);
+        if (!mp.isPlaying())
+            throw new CommandException(Text.of("No music playing."));
+        mp.pause();
+        return CommandResult.success();
+    }
+
+    public CommandResult playTrack(CommandSource src, CommandContext context) throws CommandException {
+        int trackIndex = context.<Integer>getOne("trackNumber").get() - 1;
+        Player player = getPlayer(src, context);
+        MusicPlayer mp = plugin.getMusicPlayer(player);
+        if (trackIndex < 0 || trackIndex >= mp.getLibrary().size())
+            throw new CommandException(Text.of("There is no track with that number."));
+        mp.play(player, trackIndex);
+        return CommandResult.success();
+    }
+
+    public CommandResult previewTrack(CommandSource src, CommandContext context) throws CommandException {
+        int trackIndex = context.<Integer>getOne("trackNumber").get() - 1;
+        int seconds = context.<Integer>getOne("seconds").orElse(DEFAULT_PREVIEW_SECONDS);
+        if (seconds < 1 || seconds > MAX_PREVIEW_SECONDS)
+            throw new CommandException(Text.of("Previews last between 1 and " + MAX_PREVIEW_SECONDS + " seconds."));
+        Player player = getPlayer(src, context);
+        MusicPlayer mp = plugin.getMusicPlayer(player);
+        if (trackIndex < 0 || trackIndex >= mp.getLibrary().size())
+            throw new CommandException(Text.of("There is no track with that number."));
+        mp.preview(player, trackIndex, seconds);
+        return CommandResult.success();
+    }
+
+    public CommandResult listTracks(CommandSource source, CommandContext context) throws CommandException {
+        TextUtil.trackList(plugin.getLibrary(), getPage(context), "/music list").sendTo(source);
+        return CommandResult.success();
+    }
+
+    public CommandResult joinStation(CommandSource src, CommandContext context) throws CommandException {
+        if (!(src instanceof Player))
+            throw new CommandException(Text.of("Only players can follow the station."));
+        if (!getStationFollower().join((Player) src))
+            throw new CommandException(Text.of("The station is playing a track this server does not have."));
+        src.sendMessage(Text.of("Following the station."));
+        return CommandResult.success();
+    }
+
+    public CommandResult leaveStation(CommandSource src, CommandContext context) throws CommandException {
+        if (!(src instanceof Player))
+            throw new CommandException(Text.of("Only players can follow the station."));
+        MusicPlayer mp = plugin.getMusicPlayer((Player) src);
+        if (!mp.isFollowing())
+            throw new CommandException(Text.of("You are not following the station."));
+        mp.unfollow();
+        src.sendMessage(Text.of("Stopped following the station."));
+        return CommandResult.success();
+    }
+
+    public CommandResult playStation(CommandSource src, CommandContext context) throws CommandException {
+        int trackIndex = context.<Integer>getOne("trackNumber").get() - 1;
+        TrackLibrary library = plugin.getLibrary();
+        if (trackIndex < 0 || trackIndex >= library.size())
+            throw new CommandException(Text.of("There is no track with that number."));
+        Station s = getStationFollower().getStation();
+        s.play(TrackLibrary.getTrackId(library.get(trackIndex)), 0, s.getState().getRate());
+        src.sendMessage(Text.of("Station updated."));
+        return CommandResult.success();
+    }
+
+    public CommandResult seekStation(CommandSource src, CommandContext context) throws CommandException {
+        long millis = parseTime(context.<String>getOne("position").get());
+        return updateStation(src, s -> s.seek(millis));
+    }
+
+    public CommandResult setStationSpeed(CommandSource src, CommandContext context) throws CommandException {
+        double speed = context.<Double>getOne("speed").get();
+        if (speed < MIN_SPEED || speed > MAX_SPEED)
+            throw new CommandException(Text.of("Speed must be between " + MIN_SPEED + " and " + MAX_SPEED + "."));
+        return updateStation(src, s -> s.setRate(speed));
+    }
+
+    private CommandResult updateStation(CommandSource src, Consumer<Station> update) throws CommandException {
+        Station s = getStationFollower().getStation();
+        if (s.getState().getTrackId() == null)
+            throw new CommandException(Text.of("The station is not playing anything, start a track first."));
+        update.accept(s);
+        src.sendMessage(Text.of("Station updated."));
+        return CommandResult.success();
+    }
+
+    private long parseTime(String str) throws CommandException {
+        long seconds = 0;
+        try {
+            for (String part : str.split(":", 3)) {
+                int value = Integer.parseInt(part);
+                if (value < 0)
+                    throw new NumberFormatException();
+                seconds = seconds * 60 + value;
+            }
+        } catch (NumberFormatException e) {
+            throw new CommandException(Text.of("Invalid position, expected mm:ss."));
+        }
+        return seconds * 1000;
+    }
+
+    private int getPercent(CommandContext context) {
+        return context.<Integer>getOne("percent").get();
+    }
+
+    private Instrument getInstrument(CommandContext context) {
+        return context.<Instrument>getOne("instrument").get();
+    }
+
+    private int getPage(CommandContext context) {
+        return context.<Integer>getOne("page").orElse(1);
+    }
+
+    private StationFollower getStationFollower() throws CommandException {
+        StationFollower follower = plugin.getStationFollower();
+        if (follower == null)
+            throw new CommandException(Text.of("There is no station on this server."));
+        return follower;
+    }
+
+    private Player getPlayer(CommandSource src, CommandContext context) throws CommandException {
+        Player player = context.<Player>getOne("player").orElse(null);
+        if (player == null) {
+            if (!(src instanceof Player))
+                throw new CommandException(Text.of("Cannot run command as non-player without player argument."));
+            player = (Player) src;
+        } else if (!src.hasPermission("composer.musicplayer.others"))
+            throw new CommandPermissionException(
+                    Text.of("You do not have permission to control other player's music"));
+        return player;
+    }
+}
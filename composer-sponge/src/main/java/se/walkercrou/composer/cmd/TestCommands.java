@@ -1,6 +1,6 @@
 package se.walkercrou.composer.cmd;
 
-import static org.spongepowered.api.effect.sound.SoundTypes.BLOCK_NOTE_BASS;
+import static se.walkercrou.composer.Instrument.BASS;
 import static se.walkercrou.composer.Note.HALF;
 import static se.walkercrou.composer.Note.QUARTER;
 import static se.walkercrou.composer.Note.WHOLE;
@@ -29,7 +29,9 @@ import se.walkercrou.composer.Measure;
 import se.walkercrou.composer.Note;
 import se.walkercrou.composer.Score;
 import se.walkercrou.composer.TimeSignature;
+import se.walkercrou.composer.midi.MidiReader;
 import se.walkercrou.composer.nbs.NoteBlockStudioSong;
+import se.walkercrou.composer.sponge.ViewerSoundSink;
 
 import java.io.File;
 import java.io.IOException;
@@ -47,7 +49,7 @@ public class TestCommands {
     private final CommandSpec bass = CommandSpec.builder()
             .description(Text.of("Plays a bass note"))
             .arguments(GenericArguments.onlyOne(GenericArguments.doubleNum(Text.of("pitch"))))
-            .executor((src, args) -> playNote(src, args, BLOCK_NOTE_BASS))
+            .executor((src, args) -> playNote(src, args, SoundTypes.BLOCK_NOTE_BASS))
             .build();
     private final CommandSpec pig = CommandSpec.builder()
             .description(Text.of("Plays a pig note"))
@@ -63,6 +65,11 @@ public class TestCommands {
             .arguments(GenericArguments.onlyOne(GenericArguments.string(Text.of("file"))))
             .executor(this::readNbsFile)
             .build();
+    private final CommandSpec midi = CommandSpec.builder()
+            .description(Text.of("Reads the specified .mid file and plays it"))
+            .arguments(GenericArguments.onlyOne(GenericArguments.string(Text.of("file"))))
+            .executor(this::readMidiFile)
+            .build();
 
     public TestCommands(Composer plugin) {
         this.plugin = plugin;
@@ -75,6 +82,7 @@ public class TestCommands {
         cm.register(plugin, pig, "pig");
         cm.register(plugin, mary, "mary");
         cm.register(plugin, nbs, "nbs");
+        cm.register(plugin, midi, "midi");
     }
 
     public CommandResult readNbsFile(CommandSource src, CommandContext context) throws CommandException {
@@ -90,7 +98,27 @@ public class TestCommands {
         }
 
         Player player = (Player) src;
-        nbs.toScore().play(plugin, player.getWorld(), player.getLocation().getPosition());
+        nbs.toScore().play(plugin.getSequencer(),
+                new ViewerSoundSink(player.getWorld(), player.getLocation().getPosition(), plugin.getAudience()));
+
+        return CommandResult.success();
+    }
+
+    public CommandResult readMidiFile(CommandSource src, CommandContext context) throws CommandException {
+        if (!(src instanceof Player))
+            throw new CommandException(Text.of("Only players may run this command."));
+
+        Score score;
+        try {
+            score = MidiReader.read(new File(context.<String>getOne("file").get()));
+        } catch (IOException e) {
+            e.printStackTrace();
+            throw new CommandException(Text.of("Error reading MIDI file"), e);
+        }
+
+        Player player = (Player) src;
+        score.play(plugin.getSequencer(),
+                new ViewerSoundSink(player.getWorld(), player.getLocation().getPosition(), plugin.getAudience()));
 
         return CommandResult.success();
     }
@@ -118,8 +146,8 @@ public class TestCommands {
         Measure m7 = new Measure(qa1, qa1, qb1, qa1); // fleece was white as
         Measure m8 = new Measure(new Note(G1, WHOLE));
 
-        Measure bbass = new Measure(new Note(BLOCK_NOTE_BASS, B0, WHOLE));
-        Measure abass = new Measure(new Note(BLOCK_NOTE_BASS, A0, WHOLE));
+        Measure bbass = new Measure(new Note(BASS, B0, WHOLE));
+        Measure abass = new Measure(new Note(BASS, A0, WHOLE));
 
         Player player = (Player) src;
         new Score.Builder()
@@ -134,7 +162,8 @@ public class TestCommands {
                 .measure(bbass, bbass, abass, bbass, bbass, bbass, abass, new Measure(new Note(G0, WHOLE)))
                 .saveLayer()
                 .build()
-                .play(plugin, player.getWorld(), player.getLocation().getPosition());
+                .play(plugin.getSequencer(), new ViewerSoundSink(player.getWorld(),
+                        player.getLocation().getPosition(), plugin.getAudience()));
 
         return CommandResult.success();
     }
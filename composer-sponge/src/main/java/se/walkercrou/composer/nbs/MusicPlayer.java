@@ -0,0 +1,606 @@
+package se.walkercrou.composer.nbs;
+
+import org.spongepowered.api.Sponge;
+import org.spongepowered.api.entity.living.player.Player;
+import org.spongepowered.api.text.Text;
+import org.spongepowered.api.text.format.TextColors;
+import se.walkercrou.composer.Composer;
+import se.walkercrou.composer.Score;
+import se.walkercrou.composer.Timeline;
+import se.walkercrou.composer.engine.Mixer;
+import se.walkercrou.composer.engine.Playback;
+import se.walkercrou.composer.sponge.SessionStore.Session;
+import se.walkercrou.composer.sponge.ViewerSoundSink;
+import se.walkercrou.composer.util.Footprint;
+import se.walkercrou.composer.util.TextUtil;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.LongSupplier;
+
+/**
+ * Plays music for a {@link Player}. A MusicPlayer is only used from the server thread, the {@link Playback} sessions
+ * it starts hand the end of a track back to the server thread before moving on. Tracks are turned into a
+ * {@link Score} on the plugin's workers, playing a track that is not prepared yet returns right away and starts once
+ * it is. Tracks packed into a {@link NoteArena} are already laid out and start right away.
+ * <p>
+ * A player may follow a {@link se.walkercrou.composer.station.Station} instead of its own queue, until it plays,
+ * skips or previews a track of its own. While following, tracks play at the rate of the station rather than the
+ * player's speed.
+ */
+public class MusicPlayer {
+    private static final int LARGE_TRACK_CELLS = 100000; // layers times ticks before the player is told to wait
+    // estimated sizes, see Footprint
+    private static final long PLAYER_SIZE = Footprint.object(7 * Footprint.REFERENCE + 8 + 4 + 8 + 2 * 4 + 2);
+    private static final long SESSION_SIZE = Footprint.object(10 * Footprint.REFERENCE + 42) // playback
+            + 3 * Footprint.object(8) + Footprint.object(4 + 3 * 8) // its atomics and anchor
+            + Footprint.object(4 * Footprint.REFERENCE + 8); // sound sink
+
+    private final Composer plugin;
+    private TrackLibrary library;
+    private PlayQueue queue;
+    private Playback playback;
+    private double speed = 1;
+    private int transpose = 0;
+    private Mixer mixer;
+    private long resumeAt = -1; // position to start the next session at
+    private boolean dirty;
+    private int preparation; // increased whenever a running preparation no longer applies
+    private boolean preparing;
+    private Runnable whenPrepared;
+    private Playback preview;
+    private int previewRequest; // increased whenever a preview being read no longer applies
+    private boolean following; // in step with the station, does not move on by itself
+
+    /**
+     * Creates a new MusicPlayer with the specified tracks.
+     *
+     * @param plugin context
+     * @param library tracks
+     * @param mixer to play through
+     */
+    public MusicPlayer(Composer plugin, TrackLibrary library, Mixer mixer) {
+        this.plugin = plugin;
+        this.library = library;
+        this.queue = new PlayQueue(library.size());
+        this.mixer = mixer;
+    }
+
+    /**
+     * Returns this player's current track.
+     *
+     * @return current track
+     */
+    public NoteBlockStudioSong getCurrentTrack() {
+        return library.get(queue.current());
+    }
+
+    /**
+     * Returns the library snapshot this player is playing from.
+     *
+     * @return track library
+     */
+    public TrackLibrary getLibrary() {
+        refresh();
+        return library;
+    }
+
+    /**
+     * Returns the play order of this player over {@link #getLibrary()}.
+     *
+     * @return play queue
+     */
+    public PlayQueue getQueue() {
+        refresh();
+        return queue;
+    }
+
+    /**
+     * Returns true if currently playing
+     *
+     * @return true if playing
+     */
+    public boolean isPlaying() {
+        return playback != null && playback.isPlaying();
+    }
+
+    /**
+     * Returns an estimate of the bytes of heap this player holds: its queue and the compiled score of its current
+     * track and preview. The tracks themselves belong to the library and are not counted, nor is the timeline of a
+     * packed track, which every player of the track shares.
+     *
+     * @return bytes
+     * @see Footprint
+     */
+    public long getFootprint() {
+        long bytes = PLAYER_SIZE + queue.getFootprint();
+        if (playback != null)
+            bytes += SESSION_SIZE + getFootprint(playback.getTimeline());
+        if (preview != null)
+            bytes += SESSION_SIZE + getFootprint(preview.getTimeline());
+        return bytes;
+    }
+
+    private static long getFootprint(Timeline timeline) {
+        return timeline.isPacked() ? 0 : timeline.getFootprint();
+    }
+
+    /**
+     * Returns the amount of compiled scores this player holds, one for its current track unless it is packed and one
+     * for a preview.
+     *
+     * @return amount of scores
+     */
+    public int getScoreCount() {
+        return (playback != null && !playback.getTimeline().isPacked() ? 1 : 0) + (preview != null ? 1 : 0);
+    }
+
+    /**
+     * Starts playing or resumes the specified track.
+     *
+     * @param player player
+     * @param trackIndex index of track in the library
+     */
+    public void play(Player player, int trackIndex) {
+        refresh();
+        stopPreview();
+        stopFollowing();
+        if (trackIndex != queue.current()) {
+            queue.jumpTo(trackIndex);
+            stop();
+        }
+
+        prepare(player, () -> {
+            if (!playback.play())
+                return; // already playing
+            dirty = true;
+            player.sendMessage(Text.builder("Now playing: ")
+                    .color(TextColors.GOLD)
+                    .append(TextUtil.track(getCurrentTrack()).build())
+                    .build());
+        });
+    }
+
+    /**
+     * Starts playing or resumes the current track.
+     *
+     * @param player player
+     */
+    public void play(Player player) {
+        refresh();
+        play(player, queue.current());
+    }
+
+    /**
+     * Pauses the player and stops any preview. A track that is still being prepared will not start.
+     */
+    public void pause() {
+        whenPrepared = null;
+        stopPreview();
+        if (playback != null && playback.pause())
+            dirty = true;
+    }
+
+    /**
+     * Returns the speed tracks are played at, where 1 is their own tempo.
+     *
+     * @return speed
+     */
+    public double getSpeed() {
+        return speed;
+    }
+
+    /**
+     * Sets the speed tracks are played at, where 1 is their own tempo. Applies to the current track right away.
+     *
+     * @param speed to play at
+     */
+    public void setSpeed(double speed) {
+        this.speed = speed;
+        dirty = true;
+        if (playback != null && !following)
+            playback.setSpeed(speed);
+    }
+
+    /**
+     * Returns the amount of semitones tracks are moved by.
+     *
+     * @return semitones
+     */
+    public int getTranspose() {
+        return transpose;
+    }
+
+    /**
+     * Moves tracks by the specified amount of semitones. Applies to the current track right away.
+     *
+     * @param semitones to move tracks by
+     */
+    public void setTranspose(int semitones) {
+        transpose = semitones;
+        dirty = true;
+        if (playback != null)
+            playback.setTranspose(semitones);
+    }
+
+    /**
+     * Returns the {@link Mixer} tracks are played through.
+     *
+     * @return mixer
+     */
+    public Mixer getMixer() {
+        return mixer;
+    }
+
+    /**
+     * Sets the {@link Mixer} tracks are played through. Applies to the current track right away.
+     *
+     * @param mixer to play through
+     */
+    public void setMixer(Mixer mixer) {
+        this.mixer = mixer;
+        if (playback != null)
+            playback.setMixer(mixer);
+    }
+
+    /**
+     * Moves the current track to the specified time. If the player is paused it stays paused at the new position.
+     *
+     * @param player player
+     * @param millis time from the start of the track
+     */
+    public void seek(Player player, long millis) {
+        refresh();
+        dirty = true;
+        if (playback == null || playback.getState() == Playback.State.FINISHED)
+            resumeAt = Math.max(0, millis); // applied once the track is prepared
+        else
+            playback.seek(millis);
+    }
+
+    /**
+     * Returns the current position in the current track.
+     *
+     * @return time from the start of the track in milliseconds
+     */
+    public long getPosition() {
+        if (playback != null)
+            return playback.getPosition();
+        return resumeAt < 0 ? 0 : resumeAt;
+    }
+
+    /**
+     * Shuffles the player tracks and starts playing track zero.
+     *
+     * @param player player
+     */
+    public void shuffle(Player player) {
+        refresh();
+        stopFollowing();
+        queue.shuffle();
+        dirty = true;
+        stop();
+        play(player);
+    }
+
+    /**
+     * Skips the specified amount of tracks and starts playing.
+     *
+     * @param player player
+     * @param jumps tracks to skip
+     */
+    public void skip(Player player, int jumps) {
+        refresh();
+        stopFollowing();
+        int newPosition = queue.getPosition() + jumps;
+        dirty = true;
+        if (newPosition < 0 || newPosition >= queue.size()) {
+            stop();
+            if (queue.size() > 0)
+                queue.moveTo(0);
+            return;
+        }
+        stop();
+        play(player, queue.moveTo(newPosition));
+    }
+
+    /**
+     * Skips one track.
+     *
+     * @param player player
+     */
+    public void next(Player player) {
+        skip(player, 1);
+    }
+
+    /**
+     * Goes back one track.
+     *
+     * @param player player
+     */
+    public void previous(Player player) {
+        skip(player, -1);
+    }
+
+    /**
+     * Returns true if this player follows a station rather than its own queue.
+     *
+     * @return true if following
+     */
+    public boolean isFollowing() {
+        return following;
+    }
+
+    /**
+     * Puts this player in step with a station: plays or pauses the specified track at the rate of the station. The
+     * position is read once the track is prepared, so that preparing does not put the player behind. When the track
+     * ends the player waits for the station to move on rather than moving on by itself. The player's own speed is kept
+     * for when it stops following.
+     *
+     * @param player player
+     * @param trackIndex index of track in the library, or -1 to stop
+     * @param rate speed of the station
+     * @param playing false to stay paused
+     * @param position of the station, in milliseconds from the start of the track
+     */
+    public void follow(Player player, int trackIndex, double rate, boolean playing, LongSupplier position) {
+        refresh();
+        stopPreview();
+        following = true;
+        dirty = true;
+        if (trackIndex < 0) {
+            stop();
+            return;
+        }
+        if (trackIndex != queue.current()) {
+            queue.jumpTo(trackIndex);
+            stop();
+        }
+        prepare(player, () -> {
+            playback.setSpeed(rate);
+            playback.seek(position.getAsLong());
+            if (playing)
+                playback.play();
+            else
+                playback.pause();
+        });
+    }
+
+    /**
+     * Stops following the station and pauses the player where it is.
+     */
+    public void unfollow() {
+        pause();
+        stopFollowing();
+    }
+
+    private void stopFollowing() {
+        if (!following)
+            return;
+        following = false;
+        if (playback != null)
+            playback.setSpeed(speed);
+    }
+
+    /**
+     * Pauses the player and plays the first seconds of the specified track. Only the start of the track is read, on
+     * the plugin's workers, so a preview costs the same however long the track is.
+     *
+     * @param player player
+     * @param trackIndex index of track in the library
+     * @param seconds to play
+     */
+    public void preview(Player player, int trackIndex, double seconds) {
+        refresh();
+        pause();
+        stopFollowing();
+        int request = previewRequest;
+        NoteBlockStudioSong track = library.get(trackIndex);
+        CompletableFuture.supplyAsync(() -> {
+            try {
+                TrackLoader loader = new TrackLoader(1).limits(plugin.getTrackLimits());
+                return loader.readPreview(track.source, seconds).toScore();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, plugin.getWorkers()).whenComplete((score, e) -> Sponge.getScheduler().createTaskBuilder()
+                .execute(() -> {
+                    if (request != previewRequest)
+                        return; // replaced by another preview or by playing
+                    if (e != null) {
+                        plugin.log.error("Could not preview track: " + track.source, e);
+                        player.sendMessage(Text.builder("Could not preview this track.").color(TextColors.RED).build());
+                        return;
+                    }
+                    preview = score.play(plugin.getSequencer(), new ViewerSoundSink(player, plugin.getAudience()));
+                    preview.setMixer(mixer);
+                    player.sendMessage(Text.builder("Previewing: ")
+                            .color(TextColors.GOLD)
+                            .append(TextUtil.track(track).build())
+                            .build());
+                })
+                .submit(plugin));
+    }
+
+    private void stopPreview() {
+        previewRequest++;
+        if (preview != null) {
+            preview.stop();
+            preview = null;
+        }
+    }
+
+    /**
+     * Returns true if anything worth saving has changed since the last {@link #snapshot()}. The position moving on
+     * while playing is not counted as a change.
+     *
+     * @return true if changed
+     */
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    /**
+     * Captures where this player is in their music.
+     *
+     * @return session, or null if there are no tracks
+     */
+    public Session snapshot() {
+        refresh();
+        dirty = false;
+        if (queue.size() == 0)
+            return null;
+        List<String> drawn = new ArrayList<>();
+        if (queue.isShuffled()) {
+            // only the tracks played before the current one, whatever comes after it is drawn again on restore
+            for (int i = 0; i < queue.getPosition(); i++)
+                drawn.add(TrackLibrary.getTrackId(library.get(queue.peek(i))));
+        }
+        boolean playing = isPlaying() || whenPrepared != null; // about to start once prepared
+        return new Session(TrackLibrary.getTrackId(getCurrentTrack()), queue.isShuffled(), drawn, playing,
+                getPosition(), speed, transpose, System.currentTimeMillis());
+    }
+
+    /**
+     * Puts this player back where a {@link #snapshot()} left it and resumes playing if it was. The track is not
+     * prepared until it is played, a paused session only remembers its position until then.
+     *
+     * @param player player
+     * @param session to restore
+     * @return false if the session's track is not in the library
+     */
+    public boolean restore(Player player, Session session) {
+        refresh();
+        int index = library.indexOf(session.getTrackId());
+        if (index < 0)
+            return false;
+        stopFollowing();
+        stop();
+        queue = new PlayQueue(library.size());
+        if (session.isShuffled()) {
+            // drawing the same tracks again restores the played part of the order
+            queue.shuffle();
+            for (String trackId : session.getDrawn()) {
+                int drawnIndex = library.indexOf(trackId);
+                if (drawnIndex >= 0)
+                    queue.jumpTo(drawnIndex);
+            }
+        }
+        queue.jumpTo(index);
+        setSpeed(session.getSpeed());
+        setTranspose(session.getTranspose());
+        resumeAt = session.getPosition();
+        dirty = false;
+        if (session.isPlaying())
+            play(player);
+        return true;
+    }
+
+    /**
+     * Runs the specified action once there is a session for the current track. If there is none the track is
+     * prepared on the plugin's workers and the action runs on the server thread afterwards, unless it is replaced by
+     * another action or the track changes in the meantime.
+     */
+    private void prepare(Player player, Runnable then) {
+        if (playback != null && playback.getState() != Playback.State.FINISHED) {
+            then.run();
+            return;
+        }
+        NoteBlockStudioSong track = getCurrentTrack();
+        if (track.isPacked()) {
+            preparation++; // a track packed into the arena is laid out already
+            preparing = false;
+            whenPrepared = null;
+            start(player, track.getTimeline());
+            then.run();
+            return;
+        }
+        whenPrepared = then;
+        if (preparing)
+            return; // the running preparation picks up the new action
+        preparing = true;
+        int token = ++preparation;
+        if (track.height * track.lengthTicks >= LARGE_TRACK_CELLS) {
+            player.sendMessage(Text.builder("Preparing ")
+                    .color(TextColors.GRAY)
+                    .append(TextUtil.track(track).build())
+                    .append(Text.of("..."))
+                    .build());
+        }
+        CompletableFuture.supplyAsync(() -> {
+            Score score = track.toScore();
+            return score.getTimeline(); // lay out the notes here rather than on first play
+        }, plugin.getWorkers()).whenComplete((timeline, e) -> Sponge.getScheduler().createTaskBuilder()
+                .execute(() -> {
+                    if (token != preparation)
+                        return; // stopped or moved on while preparing
+                    preparing = false;
+                    Runnable action = whenPrepared;
+                    whenPrepared = null;
+                    if (e != null) {
+                        plugin.log.error("Could not prepare track: " + track.source, e);
+                        player.sendMessage(Text.builder("Could not play this track.").color(TextColors.RED).build());
+                        return;
+                    }
+                    start(player, timeline);
+                    if (action != null)
+                        action.run();
+                })
+                .submit(plugin));
+    }
+
+    private void start(Player player, Timeline timeline) {
+        ViewerSoundSink sink = new ViewerSoundSink(player, plugin.getAudience());
+        Playback created = new Playback(timeline, plugin.getSequencer(), sink)
+                .setUnheard(Playback.Unheard.HOLD)
+                .setSpeed(speed)
+                .setTranspose(transpose)
+                .setMixer(mixer);
+        // the session finishes on the sequencer's thread, only move on if it is still this player's current session
+        created.onFinish(() -> Sponge.getScheduler().createTaskBuilder()
+                .execute(() -> {
+                    if (playback == created && !following)
+                        next(player);
+                })
+                .submit(plugin));
+        if (resumeAt >= 0) {
+            created.seek(resumeAt);
+            resumeAt = -1;
+        }
+        playback = created;
+    }
+
+    private void stop() {
+        resumeAt = -1;
+        preparation++;
+        preparing = false;
+        whenPrepared = null;
+        if (playback != null) {
+            playback.stop();
+            playback = null;
+        }
+    }
+
+    /**
+     * Moves this player over to the latest library snapshot if the tracks have been reloaded, keeping its place in
+     * the queue when the current track is still in the library.
+     */
+    private void refresh() {
+        TrackLibrary latest = plugin.getLibrary();
+        if (latest == library)
+            return;
+        int index = queue.size() == 0 ? -1 : latest.indexOf(getCurrentTrack());
+        boolean shuffled = queue.isShuffled();
+        library = latest;
+        queue = new PlayQueue(latest.size());
+        if (shuffled)
+            queue.shuffle();
+        if (index >= 0)
+            queue.jumpTo(index);
+        else
+            stop();
+    }
+}
@@ -0,0 +1,125 @@
+package se.walkercrou.composer.sponge;
+
+import com.flowpowered.math.vector.Vector3d;
+import org.spongepowered.api.Sponge;
+import org.spongepowered.api.entity.living.player.Player;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Keeps track of who can hear music. Players are looked at on the server thread about once a second and the result
+ * is published as an immutable snapshot, so {@link ViewerSoundSink}s can ask from the sequencer's thread without
+ * touching the game. A player is listening while online and not away, they are away once they have neither moved nor
+ * looked around for {@link #AWAY_MILLIS}. A place is heard while a listening player is in its world and in range.
+ */
+public class AudienceTracker {
+    /**
+     * How long a player has to stand still before they are considered away.
+     */
+    public static final long AWAY_MILLIS = 5 * 60 * 1000;
+    /**
+     * How far from a place a player can hear what is played there.
+     */
+    public static final double HEARING_RANGE = 48;
+
+    private static final long UPDATE_TICKS = 20;
+    private static final Snapshot EMPTY = new Snapshot(Collections.emptySet(), Collections.emptyMap());
+
+    private final Map<UUID, Presence> presence = new HashMap<>(); // only touched on the server thread
+    private volatile Snapshot snapshot = EMPTY;
+
+    /**
+     * Starts looking at the players on the server thread.
+     *
+     * @param plugin context
+     */
+    public void start(Object plugin) {
+        Sponge.getScheduler().createTaskBuilder()
+                .execute(this::update)
+                .name("Composer audience")
+                .intervalTicks(UPDATE_TICKS)
+                .submit(plugin);
+    }
+
+    /**
+     * Looks at every online player and publishes who is listening. Must be called on the server thread.
+     */
+    public void update() {
+        long now = System.currentTimeMillis();
+        Set<UUID> online = new HashSet<>();
+        Set<UUID> listening = new HashSet<>();
+        Map<UUID, List<Vector3d>> positions = new HashMap<>();
+        for (Player player : Sponge.getServer().getOnlinePlayers()) {
+            UUID playerId = player.getUniqueId();
+            Vector3d position = player.getLocation().getPosition();
+            Vector3d rotation = player.getRotation();
+            online.add(playerId);
+
+            Presence last = presence.get(playerId);
+            if (last == null || !position.equals(last.position) || !rotation.equals(last.rotation))
+                presence.put(playerId, last = new Presence(position, rotation, now));
+            if (now - last.since < AWAY_MILLIS) {
+                listening.add(playerId);
+                positions.computeIfAbsent(player.getWorld().getUniqueId(), id -> new ArrayList<>()).add(position);
+            }
+        }
+        presence.keySet().retainAll(online);
+        snapshot = new Snapshot(listening, positions);
+    }
+
+    /**
+     * Returns true if the specified player is online and not away.
+     *
+     * @param playerId player
+     * @return true if listening
+     */
+    public boolean isListening(UUID playerId) {
+        return snapshot.listening.contains(playerId);
+    }
+
+    /**
+     * Returns true if a listening player is in range of the specified place.
+     *
+     * @param worldId world of place
+     * @param position of place
+     * @return true if heard
+     */
+    public boolean isHeardAt(UUID worldId, Vector3d position) {
+        List<Vector3d> players = snapshot.positions.get(worldId);
+        if (players == null)
+            return false;
+        for (Vector3d player : players) {
+            if (player.distanceSquared(position) <= HEARING_RANGE * HEARING_RANGE)
+                return true;
+        }
+        return false;
+    }
+
+    private static final class Presence {
+        private final Vector3d position, rotation;
+        private final long since;
+
+        private Presence(Vector3d position, Vector3d rotation, long since) {
+            this.position = position;
+            this.rotation = rotation;
+            this.since = since;
+        }
+    }
+
+    private static final class Snapshot {
+        private final Set<UUID> listening;
+        private final Map<UUID, List<Vector3d>> positions;
+
+        private Snapshot(Set<UUID> listening, Map<UUID, List<Vector3d>> positions) {
+            this.listening = listening;
+            this.positions = positions;
+        }
+    }
+}
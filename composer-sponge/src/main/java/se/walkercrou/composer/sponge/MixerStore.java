@@ -0,0 +1,104 @@
+package se.walkercrou.composer.sponge;
+
+import ninja.leaping.configurate.ConfigurationNode;
+import ninja.leaping.configurate.commented.CommentedConfigurationNode;
+import ninja.leaping.configurate.hocon.HoconConfigurationLoader;
+import org.slf4j.Logger;
+import se.walkercrou.composer.engine.Mixer;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps every player's {@link Mixer} and persists them to a HOCON file, one packed long per player. Players on the
+ * default mix are not stored. Changes are written in the background, a burst of changes results in a single write.
+ */
+public class MixerStore {
+    private static final long SAVE_DELAY_MILLIS = 1000;
+
+    private final Path path;
+    private final Logger log;
+    private final Map<UUID, Mixer> mixers = new ConcurrentHashMap<>();
+    private final WriteBehind writeBehind;
+
+    /**
+     * Creates a new store that persists to the specified file.
+     *
+     * @param plugin context
+     * @param path of file
+     * @param log to report errors to
+     */
+    public MixerStore(Object plugin, Path path, Logger log) {
+        this.path = path;
+        this.log = log;
+        this.writeBehind = new WriteBehind(plugin, "Composer mixer save", SAVE_DELAY_MILLIS, this::write);
+    }
+
+    /**
+     * Loads the stored mixers, replacing any in memory.
+     */
+    public void load() {
+        mixers.clear();
+        if (!path.toFile().exists())
+            return;
+        try {
+            ConfigurationNode root = HoconConfigurationLoader.builder().setPath(path).build().load();
+            for (Map.Entry<Object, ? extends ConfigurationNode> entry : root.getNode("mixers").getChildrenMap()
+                    .entrySet()) {
+                try {
+                    Mixer mixer = Mixer.fromLong(entry.getValue().getLong());
+                    if (!mixer.equals(Mixer.DEFAULT))
+                        mixers.put(UUID.fromString(entry.getKey().toString()), mixer);
+                } catch (IllegalArgumentException e) {
+                    log.warn("Ignoring invalid mixer entry: " + entry.getKey());
+                }
+            }
+        } catch (IOException e) {
+            log.error("An error occurred while loading the mixers.", e);
+        }
+    }
+
+    /**
+     * Returns the specified player's mixer.
+     *
+     * @param playerId player
+     * @return mixer
+     */
+    public Mixer get(UUID playerId) {
+        return mixers.getOrDefault(playerId, Mixer.DEFAULT);
+    }
+
+    /**
+     * Sets the specified player's mixer and saves it in the background.
+     *
+     * @param playerId player
+     * @param mixer to set
+     */
+    public void set(UUID playerId, Mixer mixer) {
+        Mixer previous = mixer.equals(Mixer.DEFAULT) ? mixers.remove(playerId) : mixers.put(playerId, mixer);
+        if (!mixer.equals(previous == null ? Mixer.DEFAULT : previous))
+            writeBehind.changed();
+    }
+
+    /**
+     * Writes all mixers to the file now.
+     */
+    public void save() {
+        writeBehind.save();
+    }
+
+    private void write() {
+        HoconConfigurationLoader loader = HoconConfigurationLoader.builder().setPath(path).build();
+        CommentedConfigurationNode root = loader.createEmptyNode();
+        for (Map.Entry<UUID, Mixer> entry : mixers.entrySet())
+            root.getNode("mixers", entry.getKey().toString()).setValue(entry.getValue().toLong());
+        try {
+            loader.save(root);
+        } catch (IOException e) {
+            log.error("An error occurred while saving the mixers.", e);
+        }
+    }
+}
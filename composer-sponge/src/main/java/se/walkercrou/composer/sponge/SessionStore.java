@@ -0,0 +1,293 @@
+package se.walkercrou.composer.sponge;
+
+import org.slf4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the last known {@link Session} of every player and persists them to a small binary file. Sessions are written
+ * behind: storing one only replaces it in memory and queues a save in the background, so any amount of changes in
+ * the save delay results in a single write and the server thread never waits on the disk. Sessions of players that
+ * have not been back for longer than the expiry are left out when loading and saving.
+ */
+public class SessionStore {
+    private static final int VERSION = 2; // version 1 sessions have no time, they count as captured when loaded
+    private static final long SAVE_DELAY_MILLIS = 5000;
+
+    private final Path path;
+    private final Logger log;
+    private final long expiryMillis;
+    private final Map<UUID, Session> sessions = new ConcurrentHashMap<>();
+    private final WriteBehind writeBehind;
+
+    /**
+     * Creates a new store that persists to the specified file.
+     *
+     * @param plugin context
+     * @param path of file
+     * @param log to report errors to
+     * @param expiryMillis how long a session is kept after it was captured
+     */
+    public SessionStore(Object plugin, Path path, Logger log, long expiryMillis) {
+        this.path = path;
+        this.log = log;
+        this.expiryMillis = expiryMillis;
+        this.writeBehind = new WriteBehind(plugin, "Composer session save", SAVE_DELAY_MILLIS, this::write);
+    }
+
+    /**
+     * Loads the stored sessions that have not expired, replacing any in memory.
+     */
+    public void load() {
+        sessions.clear();
+        if (!path.toFile().exists())
+            return;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            int version = in.readInt();
+            if (version != 1 && version != VERSION) {
+                log.warn("Ignoring sessions saved by an unknown version: " + version);
+                return;
+            }
+            long now = System.currentTimeMillis();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                UUID playerId = new UUID(in.readLong(), in.readLong());
+                Session session = Session.read(in, version, now);
+                if (!isExpired(session, now))
+                    sessions.put(playerId, session);
+            }
+        } catch (IOException e) {
+            log.error("An error occurred while loading the sessions.", e);
+        }
+    }
+
+    /**
+     * Returns the specified player's last stored session, or null if there is none.
+     *
+     * @param playerId player
+     * @return session or null
+     */
+    public Session get(UUID playerId) {
+        return sessions.get(playerId);
+    }
+
+    /**
+     * Stores the specified player's session and saves it in the background. Storing a session equal to the current
+     * one only updates the time it was captured, which is saved with the next change.
+     *
+     * @param playerId player
+     * @param session to store
+     */
+    public void put(UUID playerId, Session session) {
+        if (!session.equals(sessions.put(playerId, session)))
+            writeBehind.changed();
+    }
+
+    /**
+     * Writes all sessions that have not expired to the file now, forgetting the expired ones. The file is replaced at
+     * once so a crash mid-write keeps the previous one.
+     */
+    public void save() {
+        writeBehind.save();
+    }
+
+    private void write() {
+        long now = System.currentTimeMillis();
+        sessions.values().removeIf(session -> isExpired(session, now));
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                List<Map.Entry<UUID, Session>> entries = new ArrayList<>(sessions.entrySet());
+                out.writeInt(VERSION);
+                out.writeInt(entries.size());
+                for (Map.Entry<UUID, Session> entry : entries) {
+                    out.writeLong(entry.getKey().getMostSignificantBits());
+                    out.writeLong(entry.getKey().getLeastSignificantBits());
+                    entry.getValue().write(out);
+                }
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.error("An error occurred while saving the sessions.", e);
+        }
+    }
+
+    private boolean isExpired(Session session, long now) {
+        return now - session.getTime() > expiryMillis;
+    }
+
+    /**
+     * Where a player was in their music. Tracks are referred to by their id so that a session can be restored into
+     * any library that still has them. Sessions are immutable.
+     */
+    public static final class Session {
+        private final String trackId;
+        private final List<String> drawn;
+        private final boolean shuffled, playing;
+        private final long position;
+        private final double speed;
+        private final int transpose;
+        private final long time;
+
+        /**
+         * Creates a new session.
+         *
+         * @param trackId id of the current track
+         * @param shuffled true if the queue is shuffled
+         * @param drawn ids of the tracks a shuffled queue played before the current one, in order
+         * @param playing true if playing
+         * @param position in the current track in milliseconds
+         * @param speed tracks are played at
+         * @param transpose semitones tracks are moved by
+         * @param time the session was captured at, in milliseconds since the epoch
+         */
+        public Session(String trackId, boolean shuffled, List<String> drawn, boolean playing, long position,
+                       double speed, int transpose, long time) {
+            this.trackId = trackId;
+            this.shuffled = shuffled;
+            this.drawn = Collections.unmodifiableList(new ArrayList<>(drawn));
+            this.playing = playing;
+            this.position = position;
+            this.speed = speed;
+            this.transpose = transpose;
+            this.time = time;
+        }
+
+        /**
+         * Returns the id of the current track.
+         *
+         * @return track id
+         */
+        public String getTrackId() {
+            return trackId;
+        }
+
+        /**
+         * Returns true if the queue is shuffled.
+         *
+         * @return true if shuffled
+         */
+        public boolean isShuffled() {
+            return shuffled;
+        }
+
+        /**
+         * Returns the ids of the tracks a shuffled queue played before the current one, in queue order.
+         *
+         * @return drawn track ids
+         */
+        public List<String> getDrawn() {
+            return drawn;
+        }
+
+        /**
+         * Returns true if the player was playing.
+         *
+         * @return true if playing
+         */
+        public boolean isPlaying() {
+            return playing;
+        }
+
+        /**
+         * Returns the position in the current track.
+         *
+         * @return time from start in milliseconds
+         */
+        public long getPosition() {
+            return position;
+        }
+
+        /**
+         * Returns the speed tracks are played at.
+         *
+         * @return speed
+         */
+        public double getSpeed() {
+            return speed;
+        }
+
+        /**
+         * Returns the amount of semitones tracks are moved by.
+         *
+         * @return semitones
+         */
+        public int getTranspose() {
+            return transpose;
+        }
+
+        /**
+         * Returns the time this session was captured at. Sessions that only differ in their time are equal.
+         *
+         * @return milliseconds since the epoch
+         */
+        public long getTime() {
+            return time;
+        }
+
+        void write(DataOutput out) throws IOException {
+            out.writeUTF(trackId);
+            out.writeBoolean(shuffled);
+            out.writeInt(drawn.size());
+            for (String id : drawn)
+                out.writeUTF(id);
+            out.writeBoolean(playing);
+            out.writeLong(position);
+            out.writeDouble(speed);
+            out.writeInt(transpose);
+            out.writeLong(time);
+        }
+
+        static Session read(DataInput in, int version, long now) throws IOException {
+            String trackId = in.readUTF();
+            boolean shuffled = in.readBoolean();
+            int count = in.readInt();
+            if (count < 0)
+                throw new IOException("invalid session");
+            List<String> drawn = new ArrayList<>(Math.min(count, 1024));
+            for (int i = 0; i < count; i++)
+                drawn.add(in.readUTF());
+            boolean playing = in.readBoolean();
+            long position = in.readLong();
+            double speed = in.readDouble();
+            int transpose = in.readInt();
+            long time = version == 1 ? now : in.readLong();
+            if (!(speed > 0) || Double.isInfinite(speed) || position < 0)
+                throw new IOException("invalid session");
+            return new Session(trackId, shuffled, drawn, playing, position, speed, transpose, time);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o)
+                return true;
+            if (!(o instanceof Session))
+                return false;
+            Session other = (Session) o;
+            return shuffled == other.shuffled && playing == other.playing && position == other.position
+                    && Double.compare(speed, other.speed) == 0 && transpose == other.transpose
+                    && trackId.equals(other.trackId) && drawn.equals(other.drawn);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(trackId, shuffled, drawn, playing, position, speed, transpose);
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package se.walkercrou.composer.sponge;
+
+import org.spongepowered.api.Sponge;
+import org.spongepowered.api.scheduler.Task;
+import se.walkercrou.composer.engine.Clock;
+import se.walkercrou.composer.engine.ScheduledTask;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link Clock} that runs tasks asynchronously on the Sponge scheduler.
+ */
+public class SpongeClock implements Clock {
+    private final Object plugin;
+
+    /**
+     * Creates a new clock that schedules tasks for the specified plugin.
+     *
+     * @param plugin context
+     */
+    public SpongeClock(Object plugin) {
+        this.plugin = plugin;
+    }
+
+    @Override
+    public long millis() {
+        return System.currentTimeMillis();
+    }
+
+    @Override
+    public ScheduledTask schedule(Runnable task, long intervalMillis, String name) {
+        Task spongeTask = Sponge.getScheduler().createTaskBuilder().async()
+                .execute(task)
+                .name(name)
+                .delay(intervalMillis, TimeUnit.MILLISECONDS)
+                .interval(intervalMillis, TimeUnit.MILLISECONDS)
+                .submit(plugin);
+        return spongeTask::cancel;
+    }
+}
@@ -0,0 +1,90 @@
+package se.walkercrou.composer.sponge;
+
+import org.spongepowered.api.Sponge;
+import org.spongepowered.api.entity.living.player.Player;
+import org.spongepowered.api.text.Text;
+import org.spongepowered.api.text.format.TextColors;
+import se.walkercrou.composer.Composer;
+import se.walkercrou.composer.nbs.MusicPlayer;
+import se.walkercrou.composer.station.Station;
+import se.walkercrou.composer.station.StationState;
+
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Keeps the {@link MusicPlayer}s that follow a {@link Station} in step with it. The station only shares the id of the
+ * track, which is looked up in this server's own library, and the position is worked out from this server's clock
+ * corrected for the clock of the server that changed the station. Station changes can arrive on any thread, they are
+ * applied on the server thread.
+ */
+public class StationFollower {
+    private final Composer plugin;
+    private final Station station;
+    private long missingVersion = -1; // last state whose track was reported missing, only touched on the server thread
+
+    /**
+     * Creates a new follower of the specified station.
+     *
+     * @param plugin context
+     * @param station to follow
+     */
+    public StationFollower(Composer plugin, Station station) {
+        this.plugin = plugin;
+        this.station = station;
+    }
+
+    /**
+     * Starts applying station changes to the players that follow it.
+     */
+    public void start() {
+        station.addListener(state -> Sponge.getScheduler().createTaskBuilder()
+                .execute(this::update)
+                .submit(plugin));
+    }
+
+    /**
+     * Returns the station that is followed.
+     *
+     * @return station
+     */
+    public Station getStation() {
+        return station;
+    }
+
+    /**
+     * Makes the specified player follow the station. Must be called on the server thread.
+     *
+     * @param player to follow the station
+     * @return false if the station plays a track that is not in this server's library
+     */
+    public boolean join(Player player) {
+        return follow(player, plugin.getMusicPlayer(player), station.getState());
+    }
+
+    private void update() {
+        // changes may be applied out of order, the latest state is always the one to be in step with
+        StationState state = station.getState();
+        boolean missing = false;
+        for (Map.Entry<UUID, MusicPlayer> entry : plugin.getMusicPlayers().entrySet()) {
+            MusicPlayer mp = entry.getValue();
+            Player player = Sponge.getServer().getPlayer(entry.getKey()).orElse(null);
+            if (player != null && mp.isFollowing() && !follow(player, mp, state)) {
+                missing = true;
+                player.sendMessage(Text.builder("The station is playing a track this server does not have.")
+                        .color(TextColors.RED)
+                        .build());
+            }
+        }
+        if (missing && missingVersion != state.getVersion()) {
+            missingVersion = state.getVersion();
+            plugin.log.warn("The station is playing a track that is not in the library: " + state.getTrackId());
+        }
+    }
+
+    private boolean follow(Player player, MusicPlayer mp, StationState state) {
+        int index = state.getTrackId() == null ? -1 : plugin.getLibrary().indexOf(state.getTrackId());
+        mp.follow(player, index, state.getRate(), state.isPlaying(), station::getPosition);
+        return index >= 0 || state.getTrackId() == null;
+    }
+}
@@ -0,0 +1,132 @@
+package se.walkercrou.composer.sponge;
+
+import com.flowpowered.math.vector.Vector3d;
+import org.spongepowered.api.effect.Viewer;
+import org.spongepowered.api.effect.sound.SoundType;
+import org.spongepowered.api.effect.sound.SoundTypes;
+import org.spongepowered.api.entity.living.player.Player;
+import org.spongepowered.api.world.World;
+import se.walkercrou.composer.Instrument;
+import se.walkercrou.composer.engine.SoundSink;
+
+/**
+ * A {@link SoundSink} that plays sounds for a {@link Viewer}. When following a {@link Player}, their location is looked
+ * up at most once per server tick and reused for every note played in between, since looking it up allocates. Given an
+ * {@link AudienceTracker}, the sink has no audience while the player is away or, when playing at a position in a
+ * {@link World}, while no player is in range of it. The region of a sink is the world it plays in.
+ */
+public class ViewerSoundSink implements SoundSink {
+    private static final long TICK_NANOS = 50_000_000;
+    private static final SoundType[] SOUND_TYPES = new SoundType[Instrument.values().length];
+
+    static {
+        for (Instrument instrument : Instrument.values())
+            SOUND_TYPES[instrument.ordinal()] = getSoundType(instrument);
+    }
+
+    private final Viewer viewer;
+    private final Vector3d pos;
+    private final AudienceTracker audience;
+    private Vector3d lastPos;
+    private long lastPosNanos;
+
+    /**
+     * Creates a new sink that plays for the specified {@link Viewer} at the specified {@link Vector3d} position.
+     *
+     * @param viewer to play for
+     * @param pos position to play at, or null to follow a player's location
+     */
+    public ViewerSoundSink(Viewer viewer, Vector3d pos) {
+        this(viewer, pos, null);
+    }
+
+    /**
+     * Creates a new sink that plays for the specified {@link Viewer} at the specified {@link Vector3d} position.
+     *
+     * @param viewer to play for
+     * @param pos position to play at, or null to follow a player's location
+     * @param audience to ask whether anyone is listening, or null to always play
+     */
+    public ViewerSoundSink(Viewer viewer, Vector3d pos, AudienceTracker audience) {
+        this.viewer = viewer;
+        this.pos = pos;
+        this.audience = audience;
+    }
+
+    /**
+     * Creates a new sink that plays for the specified {@link Player} at their current location.
+     *
+     * @param player to play for
+     */
+    public ViewerSoundSink(Player player) {
+        this(player, (AudienceTracker) null);
+    }
+
+    /**
+     * Creates a new sink that plays for the specified {@link Player} at their current location.
+     *
+     * @param player to play for
+     * @param audience to ask whether the player is listening, or null to always play
+     */
+    public ViewerSoundSink(Player player, AudienceTracker audience) {
+        this(player, null, audience);
+    }
+
+    @Override
+    public void playNote(Instrument instrument, double volume, double pitch) {
+        viewer.playSound(SOUND_TYPES[instrument.ordinal()], getPosition(), volume, pitch);
+    }
+
+    @Override
+    public boolean hasAudience() {
+        if (audience == null)
+            return true;
+        if (viewer instanceof Player)
+            return audience.isListening(((Player) viewer).getUniqueId());
+        if (viewer instanceof World && pos != null)
+            return audience.isHeardAt(((World) viewer).getUniqueId(), pos);
+        return true;
+    }
+
+    @Override
+    public Object getRegion() {
+        if (viewer instanceof Player)
+            return ((Player) viewer).getWorld().getUniqueId();
+        if (viewer instanceof World)
+            return ((World) viewer).getUniqueId();
+        return null;
+    }
+
+    private Vector3d getPosition() {
+        if (pos != null || !(viewer instanceof Player))
+            return pos;
+        long now = System.nanoTime();
+        if (lastPos == null || now - lastPosNanos >= TICK_NANOS) {
+            lastPos = ((Player) viewer).getLocation().getPosition();
+            lastPosNanos = now;
+        }
+        return lastPos;
+    }
+
+    /**
+     * Returns the {@link SoundType} of the specified {@link Instrument}.
+     *
+     * @param instrument to get sound of
+     * @return sound type
+     */
+    public static SoundType getSoundType(Instrument instrument) {
+        switch (instrument) {
+            default:
+            case HARP:
+                return SoundTypes.BLOCK_NOTE_HARP;
+            case BASS:
+                return SoundTypes.BLOCK_NOTE_BASS;
+            case BASEDRUM:
+                return SoundTypes.BLOCK_NOTE_BASEDRUM;
+            case SNARE:
+                return SoundTypes.BLOCK_NOTE_SNARE;
+            case PLING:
+                return SoundTypes.BLOCK_NOTE_PLING;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package se.walkercrou.composer.sponge;
+
+import org.spongepowered.api.Sponge;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Saves a store in the background some time after it changes. Only one save is queued at a time, so any amount of
+ * changes within the delay results in a single write and the thread that made them never waits on the disk. Saves
+ * never run at the same time.
+ */
+public class WriteBehind {
+    private final Object plugin;
+    private final String name;
+    private final long delayMillis;
+    private final Runnable write;
+    private final AtomicBoolean saveQueued = new AtomicBoolean();
+
+    /**
+     * Creates a new write-behind for a store.
+     *
+     * @param plugin context
+     * @param name of the save task
+     * @param delayMillis between a change and the save
+     * @param write writes the store
+     */
+    public WriteBehind(Object plugin, String name, long delayMillis, Runnable write) {
+        this.plugin = plugin;
+        this.name = name;
+        this.delayMillis = delayMillis;
+        this.write = write;
+    }
+
+    /**
+     * Queues a save unless one is queued already.
+     */
+    public void changed() {
+        if (!saveQueued.compareAndSet(false, true))
+            return;
+        Sponge.getScheduler().createTaskBuilder().async()
+                .execute(() -> {
+                    saveQueued.set(false);
+                    save();
+                })
+                .name(name)
+                .delay(delayMillis, TimeUnit.MILLISECONDS)
+                .submit(plugin);
+    }
+
+    /**
+     * Writes the store now, after any save that is running.
+     */
+    public synchronized void save() {
+        write.run();
+    }
+}
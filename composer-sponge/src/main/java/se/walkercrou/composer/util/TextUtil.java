@@ -0,0 +1,334 @@
+package se.walkercrou.composer.util;
+
+import org.spongepowered.api.Sponge;
+import org.spongepowered.api.command.CommandException;
+import org.spongepowered.api.service.pagination.PaginationList;
+import org.spongepowered.api.service.pagination.PaginationService;
+import org.spongepowered.api.text.Text;
+import org.spongepowered.api.text.action.TextActions;
+import org.spongepowered.api.text.format.TextColors;
+import org.spongepowered.api.text.format.TextStyles;
+import se.walkercrou.composer.Instrument;
+import se.walkercrou.composer.Timeline;
+import se.walkercrou.composer.engine.Mixer;
+import se.walkercrou.composer.nbs.MusicPlayer;
+import se.walkercrou.composer.nbs.NoteArena;
+import se.walkercrou.composer.nbs.NoteBlockStudioSong;
+import se.walkercrou.composer.nbs.PlayQueue;
+import se.walkercrou.composer.nbs.SongStats;
+import se.walkercrou.composer.nbs.TrackLibrary;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Utility class for text handling.
+ */
+public final class TextUtil {
+    private TextUtil() {
+    }
+
+    /**
+     * The amount of tracks rendered on a single page of a track list.
+     */
+    public static final int TRACKS_PER_PAGE = 10;
+
+    private static volatile TrackListing listing;
+
+    /**
+     * Returns a pagination builder for a page of the specified tracks in library order.
+     *
+     * @param library to build list for
+     * @param page page number starting at one
+     * @param command command that lists a page when given the page number as its last argument
+     * @return pagination builder
+     * @throws CommandException if list is empty or the page does not exist
+     */
+    public static PaginationList.Builder trackList(TrackLibrary library, int page, String command)
+            throws CommandException {
+        return trackList(library, library.size(), i -> i, page, command, "Tracks");
+    }
+
+    /**
+     * Returns a pagination builder for a page of the specified tracks in the order of the specified
+     * {@link PlayQueue}. Listing a queue does not change it, so a shuffled queue only lists the tracks drawn so far.
+     *
+     * @param library to build list for
+     * @param queue order of tracks
+     * @param page page number starting at one
+     * @param command command that lists a page when given the page number as its last argument
+     * @return pagination builder
+     * @throws CommandException if list is empty or the page does not exist
+     */
+    public static PaginationList.Builder trackList(TrackLibrary library, PlayQueue queue, int page, String command)
+            throws CommandException {
+        int drawn = queue.getDrawn();
+        if (drawn == 0)
+            throw new CommandException(Text.of("The queue is shuffled and no track has been drawn yet."));
+        return trackList(library, drawn, queue::peek, page, command, drawn < queue.size() ? "Queue so far" : "Queue");
+    }
+
+    /**
+     * Returns a pagination builder for the results of a track search.
+     *
+     * @param library to build list for
+     * @param results tracks found, best match first
+     * @param query that was searched for
+     * @return pagination builder
+     * @throws CommandException if none of the results are in the library
+     */
+    public static PaginationList.Builder searchResults(TrackLibrary library, List<NoteBlockStudioSong> results,
+                                                       String query) throws CommandException {
+        int[] indices = new int[results.size()];
+        int size = 0;
+        for (NoteBlockStudioSong track : results) {
+            int index = library.indexOf(track);
+            if (index != -1)
+                indices[size++] = index;
+        }
+        if (size == 0)
+            throw new CommandException(Text.of("No tracks found for \"" + query + "\"."));
+        return trackList(library, size, i -> indices[i], 1, "/music search " + query,
+                "Results for \"" + query + "\"");
+    }
+
+    private static PaginationList.Builder trackList(TrackLibrary library, int size, IntUnaryOperator order, int page,
+                                                    String command, String title) throws CommandException {
+        if (size == 0)
+            throw new CommandException(Text.of("There are no tracks currently loaded."));
+        int pages = (size + TRACKS_PER_PAGE - 1) / TRACKS_PER_PAGE;
+        if (page < 1 || page > pages)
+            throw new CommandException(Text.of("Page " + page + " does not exist."));
+
+        // only the entries on the requested page are looked up, rendering each one the first time it is listed
+        TrackListing listing = getListing(library);
+        int start = (page - 1) * TRACKS_PER_PAGE;
+        int end = Math.min(size, start + TRACKS_PER_PAGE);
+        List<Text> trackListings = new ArrayList<>(end - start);
+        for (int i = start; i < end; i++)
+            trackListings.add(listing.get(order.applyAsInt(i)));
+
+        return Sponge.getServiceManager().provide(PaginationService.class).get().builder()
+                .contents(trackListings)
+                .title(Text.builder(title + " (" + page + "/" + pages + ")").color(TextColors.GOLD).build())
+                .header(Text.builder("Play")
+                        .color(TextColors.DARK_GREEN)
+                        .style(TextStyles.BOLD)
+                        .onClick(TextActions.runCommand("/music resume"))
+                        .append(Text.of("  "))
+                        .append(Text.builder("Pause")
+                                .color(TextColors.YELLOW)
+                                .onClick(TextActions.runCommand("/music ||"))
+                                .build())
+                        .append(Text.of("  "))
+                        .append(Text.builder("Shuffle")
+                                .color(TextColors.AQUA)
+                                .onClick(TextActions.runCommand("/music shuffle"))
+                                .build())
+                        .append(Text.of("  "))
+                        .append(Text.builder("«")
+                                .color(TextColors.LIGHT_PURPLE)
+                                .style(TextStyles.RESET)
+                                .onClick(TextActions.runCommand("/music |<"))
+                                .build())
+                        .append(Text.of(" "))
+                        .append(Text.builder("»")
+                                .color(TextColors.LIGHT_PURPLE)
+                                .style(TextStyles.RESET)
+                                .onClick(TextActions.runCommand("/music >|"))
+                                .build())
+                        .build())
+                .footer(Text.builder()
+                        .append(pageLink("«", page - 1, pages, command))
+                        .append(Text.builder(" Click a track to start playing. ").color(TextColors.GRAY).build())
+                        .append(pageLink("»", page + 1, pages, command))
+                        .build())
+                .padding(Text.of("-"));
+    }
+
+    /**
+     * Returns a track listing Text for the specified track.
+     *
+     * @param track listing
+     * @return listing
+     */
+    public static Text.Builder track(NoteBlockStudioSong track) {
+        return Text.builder(strOrUnknown(track.name))
+                .color(TextColors.GREEN)
+                .append(Text.builder(" by ").color(TextColors.GRAY).build())
+                .append(Text.builder(strOrUnknown(track.ogAuthor).equals("Unknown")
+                        ? strOrUnknown(track.author) : track.ogAuthor)
+                        .color(TextColors.GREEN)
+                        .build());
+    }
+
+    /**
+     * Returns a summary Text of the specified {@link Mixer}.
+     *
+     * @param mixer to summarize
+     * @return summary
+     */
+    public static Text mixer(Mixer mixer) {
+        Text.Builder builder = Text.builder("Mixer: ")
+                .color(TextColors.GOLD)
+                .append(Text.builder("master " + mixer.getMaster() + "%").color(TextColors.GREEN).build());
+        for (Instrument instrument : Instrument.values()) {
+            boolean off = mixer.getVolume(instrument) == 0;
+            String name = instrument.name().toLowerCase();
+            builder.append(Text.builder(", ").color(TextColors.GRAY).build())
+                    .append(Text.builder(mixer.isMuted(instrument) ? name + " muted" : name + " "
+                            + mixer.getGain(instrument) + "%")
+                            .color(off ? TextColors.DARK_GRAY : TextColors.GREEN)
+                            .build());
+        }
+        if (mixer.isDrumsOff())
+            builder.append(Text.builder(", drums off").color(TextColors.GRAY).build());
+        return builder.build();
+    }
+
+    /**
+     * Returns a report of the estimated heap held by the specified library, search index and music players, with the
+     * largest tracks and players. Notes packed into an arena are listed apart, they are not on the heap.
+     *
+     * @param library loaded tracks
+     * @param arena the notes of the tracks are packed into, or null
+     * @param indexBytes estimated size of the search index
+     * @param players music players by the name of their player
+     * @param limit amount of largest tracks and players to list
+     * @return report
+     * @see Footprint
+     */
+    public static Text memory(TrackLibrary library, NoteArena arena, long indexBytes, Map<String, MusicPlayer> players,
+                              int limit) {
+        long playerBytes = 0;
+        int scores = 0;
+        for (MusicPlayer mp : players.values()) {
+            playerBytes += mp.getFootprint();
+            scores += mp.getScoreCount();
+        }
+        Runtime runtime = Runtime.getRuntime();
+        long total = library.getFootprint() + indexBytes + playerBytes;
+        Text.Builder builder = Text.builder("Memory (estimated)").color(TextColors.GOLD)
+                .append(Text.NEW_LINE, memoryLine("Tracks", library.size() + " tracks, "
+                        + Footprint.format(library.getFootprint())))
+                .append(Text.NEW_LINE, memoryLine("Search index", Footprint.format(indexBytes)))
+                .append(Text.NEW_LINE, memoryLine("Sessions", players.size() + " players, " + scores
+                        + " compiled scores, " + Footprint.format(playerBytes)))
+                .append(Text.NEW_LINE, memoryLine("Total", Footprint.format(total) + " of "
+                        + Footprint.format(runtime.totalMemory() - runtime.freeMemory()) + " heap in use"));
+        if (arena != null) {
+            builder.append(Text.NEW_LINE, memoryLine("Off-heap notes", arena.getUsed() / Timeline.PACKED_NOTE_BYTES
+                    + " notes, " + Footprint.format(arena.getCapacity()) + (arena.isMapped() ? " mapped" : " direct")));
+        }
+
+        List<NoteBlockStudioSong> tracks = library.getLargest(limit);
+        if (!tracks.isEmpty())
+            builder.append(Text.NEW_LINE, Text.builder("Largest tracks:").color(TextColors.GOLD).build());
+        for (NoteBlockStudioSong track : tracks) {
+            builder.append(Text.NEW_LINE, Text.builder("  " + Footprint.format(track.footprint) + " ")
+                    .color(TextColors.GRAY)
+                    .append(track(track).build())
+                    .append(stats(track.stats))
+                    .build());
+        }
+
+        List<Map.Entry<String, MusicPlayer>> largest = new ArrayList<>(players.entrySet());
+        largest.sort(Comparator.comparingLong(e -> -e.getValue().getFootprint()));
+        if (!largest.isEmpty())
+            builder.append(Text.NEW_LINE, Text.builder("Largest sessions:").color(TextColors.GOLD).build());
+        for (Map.Entry<String, MusicPlayer> entry : largest.subList(0, Math.min(limit, largest.size()))) {
+            MusicPlayer mp = entry.getValue();
+            Text.Builder line = Text.builder("  " + Footprint.format(mp.getFootprint()) + " ")
+                    .color(TextColors.GRAY)
+                    .append(Text.builder(entry.getKey()).color(TextColors.GREEN).build());
+            if (mp.getScoreCount() > 0)
+                line.append(Text.of(", "), track(mp.getCurrentTrack()).build());
+            builder.append(Text.NEW_LINE, line.build());
+        }
+        return builder.build();
+    }
+
+    private static Text memoryLine(String label, String value) {
+        return Text.builder(label + ": ")
+                .color(TextColors.GRAY)
+                .append(Text.builder(value).color(TextColors.GREEN).build())
+                .build();
+    }
+
+    private static Text pageLink(String label, int page, int pages, String command) {
+        if (page < 1 || page > pages)
+            return Text.builder(label).color(TextColors.DARK_GRAY).build();
+        return Text.builder(label)
+                .color(TextColors.LIGHT_PURPLE)
+                .onClick(TextActions.runCommand(command + " " + page))
+                .build();
+    }
+
+    private static TrackListing getListing(TrackLibrary library) {
+        TrackListing current = listing;
+        if (current == null || current.library != library)
+            listing = current = new TrackListing(library);
+        return current;
+    }
+
+    private static Text stats(SongStats stats) {
+        if (stats == null)
+            return Text.EMPTY;
+        Text.Builder details = Text.builder(stats.getNoteCount() + " notes, "
+                + String.format("%.1f", stats.getNotesPerSecond()) + " per second on average")
+                .append(Text.of("\nPeak: " + stats.getPeakPolyphony() + " at once, " + stats.getPeakNotesPerSecond()
+                        + " within a second"));
+        List<String> instruments = new ArrayList<>();
+        for (Instrument instrument : stats.getInstruments())
+            instruments.add(instrument.name().toLowerCase());
+        if (!instruments.isEmpty())
+            details.append(Text.of("\nInstruments: " + String.join(", ", instruments)));
+        return Text.builder(" " + time(stats.getDurationMillis()))
+                .color(TextColors.GRAY)
+                .onHover(TextActions.showText(details.build()))
+                .build();
+    }
+
+    private static String time(long millis) {
+        long seconds = millis / 1000;
+        return String.format("%d:%02d", seconds / 60, seconds % 60);
+    }
+
+    private static String strOrUnknown(String str) {
+        return str == null || str.isEmpty() ? "Unknown" : str;
+    }
+
+    /**
+     * Rendered track entries of a single {@link TrackLibrary} snapshot. Entries are built the first time they are
+     * listed and reused until the library is reloaded.
+     */
+    private static final class TrackListing {
+        private final TrackLibrary library;
+        private final Text[] entries;
+
+        private TrackListing(TrackLibrary library) {
+            this.library = library;
+            this.entries = new Text[library.size()];
+        }
+
+        private Text get(int index) {
+            Text entry = entries[index];
+            if (entry == null) {
+                entries[index] = entry = Text.builder()
+                        .append(track(library.get(index))
+                                .onClick(TextActions.runCommand("/music > " + (index + 1)))
+                                .build())
+                        .append(stats(library.get(index).stats))
+                        .append(Text.builder(" [preview]")
+                                .color(TextColors.GRAY)
+                                .onClick(TextActions.runCommand("/music preview " + (index + 1)))
+                                .build())
+                        .build();
+            }
+            return entry;
+        }
+    }
+}